@@ -0,0 +1,27 @@
+import java.util.ArrayList;
+
+/**
+ * Benchmarks of the per-frame {@link AudioUtils} functions, on a 20 ms frame at 8 kHz.
+ */
+public class AudioUtilsBenchmark {
+    public static void addTo(Bench bench) {
+        float[] audio = SyntheticAudio.speech(WAVProcessor.SAMPLE_RATE, 1, 42);
+        final float[] frame = SyntheticAudio.frame(audio, 0, WAVProcessor.BUFFER_SIZE);
+        final byte[] bytes = AudioUtils.floats2Bytes(frame);
+
+        bench.add("AudioUtils.bytes2Floats", bh -> bh.consume(AudioUtils.bytes2Floats(bytes)));
+        bench.add("AudioUtils.floats2Bytes", bh -> bh.consume(AudioUtils.floats2Bytes(frame)));
+        bench.add("AudioUtils.computedBSPL", bh -> bh.consume(AudioUtils.computedBSPL(frame)));
+        bench.add("AudioUtils.squaredPower", bh -> bh.consume(AudioUtils.squaredPower(frame)));
+
+        // the 9 frames around one, of which the newest has no delta MFCCs yet, as in a running pipeline
+        final ArrayList<AudioProcessingResult> window = FrameBenchmark.frames(9, 42);
+        AudioUtils.computeDeltaMFCC(window);
+        final AudioProcessingResult newest = window.get(window.size() - 1 - window.size() / 4);
+        bench.add("AudioUtils.computeDeltaMFCC", bh -> {
+            newest.setDMFCC(null);
+            AudioUtils.computeDeltaMFCC(window);
+            bh.consume(window.get(window.size() / 2).getDDMFCC());
+        });
+    }
+}
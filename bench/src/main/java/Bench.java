@@ -0,0 +1,170 @@
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the benchmarks of the feature extraction and classification hot path, and reports the time and the bytes
+ * allocated per operation of each, like JMH with its GC profiler.
+ * <p>
+ * JMH itself cannot be used: it requires benchmarks in a named package, and a named package cannot see the classes
+ * of the default package that are measured. So this does the essentials of it. Each benchmark runs in a JVM of its
+ * own, so that the JIT profiles of one do not slow down the next; it is warmed up, then timed over several
+ * iterations, each operation's result consumed by a {@link Blackhole} so that the JIT cannot drop the work.
+ * Allocation is counted per thread, so an operation is measured on the calling thread only.
+ * <p>
+ * Usage: {@code Bench [--iterations n] [--seconds s] [--no-fork] [name filter...]}, e.g. {@code ./gradlew :bench:run
+ * -Pargs="GuidanceEventMonitor"}, or from the distribution of {@code ./gradlew :bench:installDist}, which needs
+ * nothing but a JRE.
+ */
+public class Bench {
+    /**
+     * An operation to measure.
+     */
+    public interface Operation {
+        void run(Blackhole bh) throws Exception;
+    }
+
+    /**
+     * Consumes results, where the JIT cannot see that they are not used.
+     */
+    public static class Blackhole {
+        private Object object;
+        private double number;
+        private int count;
+
+        public void consume(Object o) {
+            object = o;
+        }
+
+        public void consume(double d) {
+            number += d;
+        }
+
+        public void consume(boolean b) {
+            if (b) {
+                count++;
+            }
+        }
+    }
+
+    private static final long BATCH_NANOS = 1000000;  // operations are run in batches of about 1 ms
+    private static final Blackhole bh = new Blackhole();    // static, so that what it consumes escapes
+
+    private final Map<String, Operation> benchmarks = new LinkedHashMap<>();
+    private int iterations = 5;
+    private double seconds = 1;     // per iteration, and for the warm-up
+
+    public void add(String name, Operation operation) {
+        benchmarks.put(name, operation);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Bench bench = new Bench();
+        AudioUtilsBenchmark.addTo(bench);
+        FrameBenchmark.addTo(bench);
+        GuidanceEventMonitorBenchmark.addTo(bench);
+        WAVProcessorBenchmark.addTo(bench);
+
+        boolean fork = true;
+        List<String> filters = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--iterations":
+                    bench.iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--seconds":
+                    bench.seconds = Double.parseDouble(args[++i]);
+                    break;
+                case "--no-fork":
+                    fork = false;
+                    break;
+                default:
+                    filters.add(args[i]);
+            }
+        }
+
+        if (filters.stream().noneMatch(filter -> filter.startsWith("="))) {   // not a forked run
+            System.out.println(String.format("%-60s %24s %12s %12s", "Benchmark", "ns/op", "B/op", "MB/s"));
+        }
+        for (Map.Entry<String, Operation> benchmark : bench.benchmarks.entrySet()) {
+            String name = benchmark.getKey();
+            if (!filters.isEmpty() && filters.stream().noneMatch(filter -> matches(name, filter))) {
+                continue;
+            }
+            if (fork) {
+                bench.fork(name);
+            } else {
+                bench.measure(name, benchmark.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param filter part of the name, or "=" and the whole name
+     */
+    private static boolean matches(String name, String filter) {
+        return filter.startsWith("=") ? name.equals(filter.substring(1)) : name.contains(filter);
+    }
+
+    /**
+     * Runs a benchmark in a JVM of its own.
+     */
+    private void fork(String name) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                Bench.class.getName(), "--no-fork", "--iterations", Integer.toString(iterations),
+                "--seconds", Double.toString(seconds), "=" + name).inheritIO().start();
+        if (process.waitFor() != 0) {
+            System.out.println(name + " failed");
+        }
+    }
+
+    private void measure(String name, Operation operation) throws Exception {
+        // warm up, finding how many operations take about BATCH_NANOS
+        long batch = 1;
+        for (long start = System.nanoTime(); System.nanoTime() - start < seconds * 1e9; ) {
+            long batchStart = System.nanoTime();
+            for (long i = 0; i < batch; i++) {
+                operation.run(bh);
+            }
+            if (System.nanoTime() - batchStart < BATCH_NANOS) {
+                batch *= 2;
+            }
+        }
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        double[] nanosPerOp = new double[iterations];
+        double totalNanos = 0, totalOps = 0, totalBytes = 0;
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            long ops = 0, elapsed;
+            long bytes = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            do {
+                for (long i = 0; i < batch; i++) {
+                    operation.run(bh);
+                }
+                ops += batch;
+            } while ((elapsed = System.nanoTime() - start) < seconds * 1e9);
+            bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+
+            nanosPerOp[iteration] = (double) elapsed / ops;
+            totalNanos += elapsed;
+            totalOps += ops;
+            totalBytes += bytes;
+        }
+
+        double mean = totalNanos / totalOps, variance = 0;
+        for (double n : nanosPerOp) {
+            variance += (n - mean) * (n - mean);
+        }
+        double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+        System.out.println(String.format("%-60s %24s %12.1f %12.1f", name,
+                String.format("%.1f +- %.1f", mean, error), totalBytes / totalOps,
+                totalBytes / (totalNanos / 1e9) / (1 << 20)));
+    }
+}
@@ -0,0 +1,86 @@
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import weka.classifiers.Classifier;
+import weka.classifiers.trees.J48;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Benchmarks of the work done per frame: voice activity detection, the ARFF feature vector, the Weka instance and
+ * its classification.
+ */
+public class FrameBenchmark {
+    public static void addTo(Bench bench) throws Exception {
+        // Voice Activity Detector, over a second of frames
+        float[] audio = SyntheticAudio.speech(WAVProcessor.SAMPLE_RATE, 1, 42);
+        final AudioEvent[] events = new AudioEvent[audio.length / WAVProcessor.BUFFER_SIZE];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new AudioEvent(new TarsosDSPAudioFormat(WAVProcessor.SAMPLE_RATE, 16, 1, true, false));
+            events[i].setFloatBuffer(SyntheticAudio.frame(audio, i * WAVProcessor.BUFFER_SIZE,
+                    WAVProcessor.BUFFER_SIZE));
+        }
+        final VoiceActivityDetector vad = new VoiceActivityDetector(WAVProcessor.SAMPLE_RATE,
+                WAVProcessor.BUFFER_SIZE);
+        final int[] next = {0};
+        bench.add("VoiceActivityDetector.isVoiced", bh -> {
+            bh.consume(vad.isVoiced(events[next[0]]));
+            next[0] = (next[0] + 1) % events.length;
+        });
+
+        // Features of a frame
+        final AudioProcessingResult frame = frames(1, 7).get(0);
+        bench.add("AudioProcessingResult.getFeatureVector", bh -> bh.consume(frame.getFeatureVector()));
+        bench.add("AudioProcessingResult.getInstance", bh -> bh.consume(frame.getInstance()));
+
+        // Classification, by a J48 tree of labelled random frames
+        final Classifier classifier = j48(frames(2000, 11));
+        bench.add("AudioProcessingResult.runClassifier, J48", bh -> bh.consume(frame.runClassifier(classifier)));
+        final FrameClassifier frameClassifier = new FrameClassifier(classifier);
+        bench.add("FrameClassifier.classify, J48", bh -> bh.consume(frameClassifier.classify(frame)));
+    }
+
+    /**
+     * Generates frames with random features, labelled by their dbSPL and first MFCC.
+     *
+     * @param count number of frames, 10 ms apart
+     * @param seed  seed of the features
+     */
+    public static ArrayList<AudioProcessingResult> frames(int count, long seed) {
+        Random random = new Random(seed);
+        ArrayList<AudioProcessingResult> frames = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            AudioProcessingResult frame = new AudioProcessingResult();
+            frame.setStartTime(i * 0.01f);
+            frame.setDbSPL(30 + 50 * random.nextFloat());
+            frame.setMFCC(gaussians(random, 13));
+            frame.setDMFCC(gaussians(random, 12));
+            frame.setDDMFCC(gaussians(random, 12));
+            frame.setUser(frame.getDbSPL() < 45 ? User.NONE : frame.getMFCC()[1] > 0 ? User.ADULT : User.CHILD);
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    private static float[] gaussians(Random random, int count) {
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = (float) random.nextGaussian();
+        }
+        return values;
+    }
+
+    private static Classifier j48(ArrayList<AudioProcessingResult> frames) throws Exception {
+        Instances train = new Instances(AudioProcessingResult.getInstancesHeader(), frames.size());
+        for (AudioProcessingResult frame : frames) {
+            double[] values = frame.getInstanceValues(new double[AudioProcessingResult.NUM_INSTANCE_VALUES]);
+            values[train.classIndex()] = frame.getUser().ordinal();
+            train.add(new DenseInstance(1, values));
+        }
+        J48 j48 = new J48();
+        j48.buildClassifier(train);
+        return j48;
+    }
+}
@@ -0,0 +1,58 @@
+import java.util.Random;
+
+/**
+ * Benchmarks of {@link GuidanceEventMonitor#checkResult(AudioProcessingResult)} after synthetic sessions of different
+ * lengths, each operation a new frame of the session.
+ */
+public class GuidanceEventMonitorBenchmark {
+    public static void addTo(Bench bench) {
+        for (final int numTurns : new int[]{100, 10000, 100000}) {
+            final Session session = new Session(42);
+            final GuidanceEventMonitor monitor = new GuidanceEventMonitor();
+            while (monitor.getTurns().size() < numTurns) {
+                monitor.checkResult(session.next());
+            }
+            bench.add("GuidanceEventMonitor.checkResult, " + numTurns + " turns",
+                    bh -> bh.consume(monitor.checkResult(session.next())));
+        }
+
+        final Session session = new Session(42);
+        final GuidanceEventMonitor monitor = new GuidanceEventMonitor(null, null);
+        while (monitor.getTurns().getNumTurns() < 100000) {
+            monitor.checkResult(session.next());
+        }
+        bench.add("GuidanceEventMonitor.checkResult, 100000 turns, latest kept",
+                bh -> bh.consume(monitor.checkResult(session.next())));
+    }
+
+    /**
+     * Classified frames of a conversation: adult and child turns of up to 3 s with onsets, and pauses of up to 1 s.
+     */
+    public static class Session {
+        private final Random random;
+        private int frame = 0;
+        private int framesLeft = 0;
+        private User user = User.NONE;
+
+        public Session(long seed) {
+            random = new Random(seed);
+        }
+
+        public AudioProcessingResult next() {
+            if (framesLeft == 0) {
+                user = user != User.NONE ? User.NONE : random.nextBoolean() ? User.ADULT : User.CHILD;
+                framesLeft = 1 + random.nextInt(user == User.NONE ? 100 : 300);
+            }
+            framesLeft--;
+
+            AudioProcessingResult result = new AudioProcessingResult();
+            result.setStartTime(frame * 0.01f);
+            result.setUser(user);
+            if (user != User.NONE && frame % 20 == 0) {
+                result.addOnset(frame * 0.01, 1);
+            }
+            frame++;
+            return result;
+        }
+    }
+}
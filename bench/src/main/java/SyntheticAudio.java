@@ -0,0 +1,51 @@
+import java.util.Random;
+
+/**
+ * Generated test input, so that the benchmarks need no recordings.
+ */
+public class SyntheticAudio {
+    /**
+     * Generates speech-like audio: syllables of a few harmonics on a gliding pitch, separated by pauses, over a
+     * little noise.
+     *
+     * @param sampleRate samples per second
+     * @param seconds    length of the audio
+     * @param seed       seed of the random syllables and noise
+     * @return samples in [-1, 1]
+     */
+    public static float[] speech(int sampleRate, double seconds, long seed) {
+        Random random = new Random(seed);
+        float[] samples = new float[(int) (sampleRate * seconds)];
+        int i = 0;
+        while (i < samples.length) {
+            // a syllable of 100 to 300 ms, at 100 to 300 Hz
+            int length = Math.min(samples.length - i, sampleRate * (100 + random.nextInt(200)) / 1000);
+            double pitch = 100 + 200 * random.nextDouble(), glide = (random.nextDouble() - 0.5) * pitch / length;
+            double amplitude = 0.05 + 0.3 * random.nextDouble(), phase = 0;
+            for (int j = 0; j < length; j++, i++) {
+                phase += 2 * Math.PI * (pitch + glide * j) / sampleRate;
+                double envelope = Math.sin(Math.PI * j / length);
+                double sample = 0;
+                for (int harmonic = 1; harmonic <= 5; harmonic++) {
+                    sample += Math.sin(harmonic * phase) / harmonic;
+                }
+                samples[i] = (float) (amplitude * envelope * sample / 2);
+            }
+            // a pause of up to 400 ms
+            i += sampleRate * random.nextInt(400) / 1000;
+        }
+        for (i = 0; i < samples.length; i++) {
+            samples[i] += (float) (0.002 * random.nextGaussian());
+        }
+        return samples;
+    }
+
+    /**
+     * @return the frame of the samples starting at the index
+     */
+    public static float[] frame(float[] samples, int start, int length) {
+        float[] frame = new float[length];
+        System.arraycopy(samples, start, frame, 0, length);
+        return frame;
+    }
+}
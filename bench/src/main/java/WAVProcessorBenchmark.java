@@ -0,0 +1,49 @@
+import be.tarsos.dsp.writer.WaveHeader;
+
+import java.io.File;
+
+/**
+ * Benchmark of the whole feature extraction of a WAV file, as {@link WAVProcessor#processWAVFileForFeatures(String,
+ * int, int, int, int, int, float, float)} does it, on 10 s of generated speech.
+ */
+public class WAVProcessorBenchmark {
+    public static void addTo(Bench bench) throws Exception {
+        File wav = File.createTempFile("bench", ".wav");
+        wav.deleteOnExit();
+        AudioUtils.writeWAVFile(wav.getPath(), SyntheticAudio.speech(WAVProcessor.SAMPLE_RATE, 10, 42),
+                WaveHeader.FORMAT_PCM, (short) 1, WAVProcessor.SAMPLE_RATE, (short) 16);
+        final String inputFilename = wav.getPath().substring(0, wav.getPath().length() - ".wav".length());
+        new File(inputFilename + ".arff").deleteOnExit();
+
+        // the dispatcher that processWAVFileForFeatures starts a thread for, run on this one so that its allocations
+        // are counted
+        bench.add("WAVProcessor.processWAVFileForFeatures, 10 s", bh ->
+                WAVProcessor.featureDispatcher(inputFilename, "", WAVProcessor.SAMPLE_RATE,
+                        WAVProcessor.BUFFER_SIZE, WAVProcessor.BUFFER_OVERLAP, WAVProcessor.numCepstralCoeffs,
+                        WAVProcessor.numMelFilters, WAVProcessor.lowerFilterFreq, WAVProcessor.upperFilterFreq,
+                        User.NONE).run());
+
+        // the four frame sizes of the experiments, each reading the file again, or all framing one decoding of it
+        final int[][] framings = {{160, 80}, {240, 80}, {320, 80}, {320, 160}};
+        for (int[] framing : framings) {
+            new File(inputFilename + "_" + framing[0] + "_" + framing[1] + ".arff").deleteOnExit();
+        }
+        bench.add("WAVProcessor sweep of 4 frame sizes, read each time, 10 s", bh -> {
+            for (int[] framing : framings) {
+                WAVProcessor.featureDispatcher(inputFilename, "_" + framing[0] + "_" + framing[1],
+                        WAVProcessor.SAMPLE_RATE, framing[0], framing[1], WAVProcessor.numCepstralCoeffs,
+                        WAVProcessor.numMelFilters, WAVProcessor.lowerFilterFreq, WAVProcessor.upperFilterFreq,
+                        User.NONE).run();
+            }
+        });
+        bench.add("WAVProcessor sweep of 4 frame sizes, decoded once, 10 s", bh -> {
+            DecodedAudio audio = DecodedAudio.read(wav, WAVProcessor.SAMPLE_RATE);
+            for (int[] framing : framings) {
+                WAVProcessor.featureDispatcher(audio, inputFilename, "_" + framing[0] + "_" + framing[1],
+                        WAVProcessor.SAMPLE_RATE, framing[0], framing[1], WAVProcessor.numCepstralCoeffs,
+                        WAVProcessor.numMelFilters, WAVProcessor.lowerFilterFreq, WAVProcessor.upperFilterFreq,
+                        User.NONE).run();
+            }
+        });
+    }
+}
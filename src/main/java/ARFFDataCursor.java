@@ -0,0 +1,317 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams the data rows of an ARFF file without creating any Strings.
+ * <p>
+ * The file is memory-mapped a region of up to 1 GB at a time. The header is parsed when the cursor is opened, and
+ * then each call to {@link #next()} moves to the next data row and finds its comma separated fields. A row is only
+ * ever looked at as a slice of the mapped file: its fields are offsets into the row, its class label is matched
+ * against the {@link User} names in place, and it is copied out as bytes, e.g. by
+ * {@link ARFFFeatureWriter#write(ARFFDataCursor, User)}. Blank lines and % comments in the data are skipped.
+ */
+public class ARFFDataCursor implements Closeable {
+    private static final long MAX_REGION_SIZE = 1L << 30;
+    private static final byte[][] USER_NAMES = new byte[User.values().length][];
+
+    static {
+        for (User user : User.values()) {
+            USER_NAMES[user.ordinal()] = user.name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final FileChannel channel;
+    private final long size;
+    private final String relation;
+    private final List<String> attributes = new ArrayList<>();
+    private final long dataOffset;
+
+    private MappedByteBuffer region;    // currently mapped part of the file
+    private long regionStart;           // position of the region in the file
+    private long position;              // position of the next line in the file
+
+    // the current line, as positions in the region, without the line terminator
+    private int lineStart, lineEnd;
+    private long rowOffset = -1;
+
+    // end of each field of the current row, relative to the start of the row
+    private int[] fieldEnds = new int[64];
+    private int numFields = 0;
+
+    /**
+     * Opens an ARFF file and reads its header.
+     *
+     * @param filename Full path file name, including extension
+     * @throws IOException if the file cannot be read or has no @DATA section.
+     */
+    public ARFFDataCursor(String filename) throws IOException {
+        channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        try {
+            size = channel.size();
+            String relation = null;
+            while (true) {
+                if (!readLine()) {
+                    throw new IOException(filename + " has no @DATA section");
+                }
+                String line = getLineString().trim();
+                if (startsWithIgnoreCase(line, "@RELATION")) {
+                    relation = line.substring("@RELATION".length()).trim();
+                } else if (startsWithIgnoreCase(line, "@ATTRIBUTE")) {
+                    attributes.add(line);
+                } else if (line.equalsIgnoreCase("@DATA")) {
+                    break;
+                }
+            }
+            this.relation = relation;
+            this.dataOffset = position;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static boolean startsWithIgnoreCase(String s, String prefix) {
+        return s.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    private String getLineString() {
+        byte[] bytes = new byte[lineEnd - lineStart];
+        region.position(lineStart);
+        region.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void map(long offset) throws IOException {
+        regionStart = offset;
+        region = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAX_REGION_SIZE, size - offset));
+    }
+
+    /**
+     * Reads the line at position, mapping the next region if the line runs past the current one.
+     */
+    private boolean readLine() throws IOException {
+        if (position >= size) {
+            return false;
+        }
+        if (region == null || position < regionStart || position >= regionStart + region.limit()) {
+            map(position);
+        }
+        int start = (int) (position - regionStart);
+        int end = indexOfNewline(start);
+        if (end < 0 && regionStart + region.limit() < size) {
+            // the line straddles the end of the region, map from the start of the line
+            map(position);
+            start = 0;
+            end = indexOfNewline(start);
+            if (end < 0 && region.limit() < size - regionStart) {
+                throw new IOException("Line longer than " + MAX_REGION_SIZE + " bytes");
+            }
+        }
+        if (end < 0) {
+            // last line without a line terminator
+            end = region.limit();
+            position = size;
+        } else {
+            position = regionStart + end + 1;
+        }
+        if (end > start && region.get(end - 1) == '\r') {
+            end--;
+        }
+        lineStart = start;
+        lineEnd = end;
+        return true;
+    }
+
+    private int indexOfNewline(int from) {
+        for (int i = from, il = region.limit(); i < il; i++) {
+            if (region.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves to the next data row and finds its fields.
+     *
+     * @return false if there are no more rows.
+     */
+    public boolean next() throws IOException {
+        while (readLine()) {
+            int first = lineStart;
+            while (first < lineEnd && isWhitespace(region.get(first))) {
+                first++;
+            }
+            if (first == lineEnd || region.get(first) == '%') {
+                continue;   // blank line or comment
+            }
+
+            rowOffset = regionStart + lineStart;
+            numFields = 0;
+            for (int i = lineStart; i < lineEnd; i++) {
+                if (region.get(i) == ',') {
+                    addField(i - lineStart);
+                }
+            }
+            addField(lineEnd - lineStart);
+            return true;
+        }
+        return false;
+    }
+
+    private void addField(int end) {
+        if (numFields == fieldEnds.length) {
+            int[] grown = new int[fieldEnds.length * 2];
+            System.arraycopy(fieldEnds, 0, grown, 0, numFields);
+            fieldEnds = grown;
+        }
+        fieldEnds[numFields++] = end;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * @return the number of fields of the current row, the class label included.
+     */
+    public int getNumFields() {
+        return numFields;
+    }
+
+    /**
+     * @return the offset of the first byte of a field, relative to the start of the row.
+     */
+    public int getFieldStart(int field) {
+        return field == 0 ? 0 : fieldEnds[field - 1] + 1;
+    }
+
+    /**
+     * @return the offset after the last byte of a field, relative to the start of the row.
+     */
+    public int getFieldEnd(int field) {
+        return fieldEnds[field];
+    }
+
+    /**
+     * @return the length of the current row in bytes, without the line terminator.
+     */
+    public int getRowLength() {
+        return lineEnd - lineStart;
+    }
+
+    /**
+     * @return the position of the current row in the file, which can be passed to {@link #seek(long)}.
+     */
+    public long getRowOffset() {
+        return rowOffset;
+    }
+
+    /**
+     * @return the position of the first data row in the file, just after the @DATA line.
+     */
+    public long getDataOffset() {
+        return dataOffset;
+    }
+
+    /**
+     * @return the user of the class label, the last field of the current row, or NONE if it is not a user.
+     */
+    public User getUser() {
+        int start = getFieldStart(numFields - 1), end = getFieldEnd(numFields - 1);
+        while (start < end && isWhitespace(region.get(lineStart + start))) {
+            start++;
+        }
+        while (end > start && isWhitespace(region.get(lineStart + end - 1))) {
+            end--;
+        }
+        for (User user : User.values()) {
+            if (fieldEquals(start, end, USER_NAMES[user.ordinal()])) {
+                return user;
+            }
+        }
+        return User.NONE;
+    }
+
+    private boolean fieldEquals(int start, int end, byte[] value) {
+        if (end - start != value.length) {
+            return false;
+        }
+        for (int i = 0; i < value.length; i++) {
+            if (region.get(lineStart + start + i) != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies part of the current row.
+     *
+     * @param from offset in the row of the first byte to copy
+     * @param to   offset in the row after the last byte to copy
+     * @param dst  output
+     * @param pos  position in dst to copy to
+     */
+    public void copyRow(int from, int to, byte[] dst, int pos) {
+        region.position(lineStart + from);
+        region.get(dst, pos, to - from);
+    }
+
+    /**
+     * Moves back or forward to a row found earlier, which the next call to {@link #next()} will read.
+     *
+     * @param rowOffset a position returned by {@link #getRowOffset()}
+     */
+    public void seek(long rowOffset) {
+        position = rowOffset;
+    }
+
+    /**
+     * Moves back to the first data row.
+     */
+    public void rewind() {
+        position = dataOffset;
+    }
+
+    /**
+     * @return the relation name in the header, or null if there is none.
+     */
+    public String getRelation() {
+        return relation;
+    }
+
+    /**
+     * @return the @ATTRIBUTE lines of the header, trimmed.
+     */
+    public List<String> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * @return the size of the file in bytes.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the channel of the file, e.g. to transfer the data rows as they are.
+     */
+    FileChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        region = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,106 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes feature vectors out as the rows of a text ARFF file.
+ * <p>
+ * Rows are encoded by {@link ARFFRowEncoder} straight into a reused buffer that is written to the file channel
+ * when full, so writing a row creates no objects. The rows are the same as {@link
+ * AudioProcessingResult#getFeatureVector()}. Rows of another ARFF file can be copied from an {@link ARFFDataCursor}.
+ */
+public class ARFFFeatureWriter implements FeatureWriter {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * @param filename Full path file name, including extension
+     * @param relation Name of the relation in the ARFF header, or null to write the rows only
+     */
+    public ARFFFeatureWriter(String filename, String relation) throws IOException {
+        channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        if (relation != null) {
+            buffer.put(AudioUtils.getARFFHeader(relation).getBytes()); // Write the ARFF header
+        }
+    }
+
+    @Override
+    public void write(AudioProcessingResult frame) throws IOException {
+        if (buffer.remaining() < ARFFRowEncoder.MAX_ROW_LENGTH) {
+            flush();
+        }
+        buffer.position(ARFFRowEncoder.encodeFeatureVector(frame, buffer.array(), buffer.position()));
+    }
+
+    /**
+     * Writes out the current row of a cursor as it is.
+     */
+    public void write(ARFFDataCursor row) throws IOException {
+        write(row, row.getRowLength(), null);
+    }
+
+    /**
+     * Writes out the current row of a cursor with its class label replaced.
+     *
+     * @param user the new class label
+     */
+    public void write(ARFFDataCursor row, User user) throws IOException {
+        write(row, row.getFieldStart(row.getNumFields() - 1), user);
+    }
+
+    private void write(ARFFDataCursor row, int length, User user) throws IOException {
+        if (buffer.remaining() < length + ARFFRowEncoder.MAX_ROW_LENGTH) {
+            flush();
+            if (buffer.remaining() < length + ARFFRowEncoder.MAX_ROW_LENGTH) {
+                throw new IOException("ARFF row of " + length + " bytes is too long");
+            }
+        }
+        int pos = buffer.position();
+        row.copyRow(0, length, buffer.array(), pos);
+        pos += length;
+        if (user != null) {
+            pos = ARFFRowEncoder.appendUser(user, buffer.array(), pos);
+        }
+        buffer.position(ARFFRowEncoder.appendLineSeparator(buffer.array(), pos));
+    }
+
+    /**
+     * Writes out all the data rows of a cursor as they are, copying the bytes from file to file.
+     */
+    public void writeData(ARFFDataCursor source) throws IOException {
+        flush();
+        FileChannel in = source.getChannel();
+        long position = source.getDataOffset(), size = source.getSize();
+        while (position < size) {
+            position += in.transferTo(position, size - position, channel);
+        }
+
+        // the last row may not end with a line terminator
+        if (size > source.getDataOffset()) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            in.read(last, size - 1);
+            if (last.get(0) != '\n') {
+                buffer.position(ARFFRowEncoder.appendLineSeparator(buffer.array(), buffer.position()));
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
@@ -0,0 +1,428 @@
+import java.math.BigInteger;
+
+/**
+ * Encodes feature rows, and the rows of the log, as ASCII straight into a byte array, without creating any Strings.
+ * <p>
+ * Floats are written exactly as {@link Float#toString(float)} would write them: the shortest decimal that reads
+ * back to the same float, as a plain decimal from 10^-3 to 10^7 and in computerized scientific notation otherwise.
+ * The shortest decimal is found with the Ryu algorithm (Ulf Adams, PLDI 2018), which only needs a couple of 64
+ * bit multiplications per float.
+ */
+public class ARFFRowEncoder {
+    /**
+     * Upper bound of the length of a row written by {@link #encodeFeatureVector} or {@link #encodeLogRow}, line
+     * separator included.
+     */
+    public static final int MAX_ROW_LENGTH = 1024;
+
+    /**
+     * Longest float written by {@link #appendFloat}, e.g. "-1.17549435E-38".
+     */
+    public static final int MAX_FLOAT_LENGTH = 15;
+
+    private static final int FLOAT_MANTISSA_BITS = 23;
+    private static final int FLOAT_EXPONENT_BITS = 8;
+    private static final int FLOAT_BIAS = 127;
+
+    // binary exponents of the normal floats that Float.toString writes as the shortest decimal, checked exhaustively
+    private static final int MIN_SHORTEST_EXPONENT = -126;
+    private static final int MAX_SHORTEST_EXPONENT = 24;
+
+    // 5^i and 2^j / 5^i, normalised to POW5_BITCOUNT and POW5_INV_BITCOUNT bits
+    private static final int POW5_BITCOUNT = 61;
+    private static final int POW5_INV_BITCOUNT = 59;
+    private static final long[] POW5_SPLIT = new long[47];
+    private static final long[] POW5_INV_SPLIT = new long[31];
+
+    static {
+        for (int i = 0; i < POW5_SPLIT.length; i++) {
+            BigInteger pow = BigInteger.valueOf(5).pow(i);
+            POW5_SPLIT[i] = pow.shiftRight(pow.bitLength() - POW5_BITCOUNT).longValue();
+            if (i < POW5_INV_SPLIT.length) {
+                int j = pow.bitLength() - 1 + POW5_INV_BITCOUNT;
+                POW5_INV_SPLIT[i] = BigInteger.ONE.shiftLeft(j).divide(pow).add(BigInteger.ONE).longValue();
+            }
+        }
+    }
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+    private static final byte[] SEPARATOR = ", ".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+    private static final byte[][] USER_NAMES = new byte[User.values().length][];
+
+    static {
+        for (User user : User.values()) {
+            USER_NAMES[user.ordinal()] = user.name().getBytes();
+        }
+    }
+
+    private ARFFRowEncoder() {
+    }
+
+    /**
+     * Writes the same row as {@link AudioProcessingResult#getFeatureVector()}, followed by the line separator.
+     *
+     * @param frame a frame with its MFCC, dMFCC, ddMFCC and user set.
+     * @param buf   output, with at least {@link #MAX_ROW_LENGTH} bytes from pos
+     * @param pos   position in buf to write from
+     * @return the position after the row.
+     */
+    public static int encodeFeatureVector(AudioProcessingResult frame, byte[] buf, int pos) {
+        float[] mfcc = frame.getMFCC(), dmfcc = frame.getDMFCC(), ddmfcc = frame.getDDMFCC();
+        for (int i = 1; i <= 12; i++) {
+            pos = appendFloat(mfcc[i], buf, pos);
+            buf[pos++] = ',';
+        }
+        for (int i = 0; i < 12; i++) {
+            pos = appendFloat(dmfcc[i], buf, pos);
+            buf[pos++] = ',';
+        }
+        for (int i = 0; i < 12; i++) {
+            pos = appendFloat(ddmfcc[i], buf, pos);
+            buf[pos++] = ',';
+        }
+        pos = appendUser(frame.getUser(), buf, pos);
+        return appendLineSeparator(buf, pos);
+    }
+
+    /**
+     * Writes the same row as {@link AudioProcessingResult#getLogString()}, followed by the line separator.
+     *
+     * @param frame a classified frame, with its MFCC and events set.
+     * @param buf   output, with at least {@link #MAX_ROW_LENGTH} bytes from pos
+     * @param pos   position in buf to write from
+     * @return the position after the row.
+     */
+    public static int encodeLogRow(AudioProcessingResult frame, byte[] buf, int pos) {
+        pos = appendFloat(frame.getStartTime(), buf, pos);
+        pos = append(SEPARATOR, buf, pos);
+        pos = appendFloat(frame.getDbSPL(), buf, pos);
+        pos = append(SEPARATOR, buf, pos);
+        pos = appendFloat(frame.getPitch(), buf, pos);
+        pos = append(SEPARATOR, buf, pos);
+        float[] mfcc = frame.getMFCC();
+        if (mfcc == null) {
+            pos = append(NULL, buf, pos);
+        } else {
+            for (int i = 0; i < mfcc.length; i++) {
+                if (i > 0) {
+                    pos = append(SEPARATOR, buf, pos);
+                }
+                pos = appendFloat(mfcc[i], buf, pos);
+            }
+        }
+        pos = append(SEPARATOR, buf, pos);
+        pos = appendUser(frame.getUser(), buf, pos);
+        for (int event : frame.getEventBuffer()) {
+            pos = append(SEPARATOR, buf, pos);
+            pos = appendInt(event, buf, pos);
+        }
+        return appendLineSeparator(buf, pos);
+    }
+
+    /**
+     * Writes an int the same as {@link Integer#toString(int)}.
+     *
+     * @return the position after the int.
+     */
+    public static int appendInt(int value, byte[] buf, int pos) {
+        if (value == Integer.MIN_VALUE) {
+            return appendAscii(Integer.toString(value), buf, pos);
+        }
+        if (value < 0) {
+            buf[pos++] = '-';
+            value = -value;
+        }
+        int length = decimalLength(value);
+        writeDigits(value, length, buf, pos);
+        return pos + length;
+    }
+
+    /**
+     * Writes the name of a user, as in the class attribute.
+     *
+     * @return the position after the name.
+     */
+    public static int appendUser(User user, byte[] buf, int pos) {
+        return append(USER_NAMES[user.ordinal()], buf, pos);
+    }
+
+    /**
+     * Writes the line separator, the same as {@link java.io.BufferedWriter#newLine()}.
+     *
+     * @return the position after the line separator.
+     */
+    public static int appendLineSeparator(byte[] buf, int pos) {
+        return append(LINE_SEPARATOR, buf, pos);
+    }
+
+    private static int append(byte[] bytes, byte[] buf, int pos) {
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        return pos + bytes.length;
+    }
+
+    /**
+     * Writes a float the same as {@link Float#toString(float)}.
+     *
+     * @param buf output, with at least {@link #MAX_FLOAT_LENGTH} bytes from pos
+     * @param pos position in buf to write from
+     * @return the position after the float.
+     */
+    public static int appendFloat(float value, byte[] buf, int pos) {
+        int bits = Float.floatToRawIntBits(value);
+        int ieeeMantissa = bits & ((1 << FLOAT_MANTISSA_BITS) - 1);
+        int ieeeExponent = (bits >>> FLOAT_MANTISSA_BITS) & ((1 << FLOAT_EXPONENT_BITS) - 1);
+
+        // Before Java 19, Float.toString is not always the shortest decimal. Outside the range where it is, as well
+        // as for NaN, infinities and powers of 2, leave it to Float.toString.
+        int exponent = ieeeExponent - FLOAT_BIAS;
+        if (exponent < MIN_SHORTEST_EXPONENT || exponent > MAX_SHORTEST_EXPONENT || ieeeMantissa == 0) {
+            if (ieeeExponent == 0 && ieeeMantissa == 0) {
+                return appendAscii(bits < 0 ? "-0.0" : "0.0", buf, pos);
+            }
+            return appendAscii(Float.toString(value), buf, pos);
+        }
+        if (bits < 0) {
+            buf[pos++] = '-';
+        }
+
+        // value = m2 * 2^e2, with 2 extra bits to represent the half way points to the neighbouring floats
+        int e2;
+        long m2;
+        if (ieeeExponent == 0) {
+            e2 = 1 - FLOAT_BIAS - FLOAT_MANTISSA_BITS - 2;
+            m2 = ieeeMantissa;
+        } else {
+            e2 = ieeeExponent - FLOAT_BIAS - FLOAT_MANTISSA_BITS - 2;
+            m2 = ieeeMantissa | (1L << FLOAT_MANTISSA_BITS);
+        }
+        boolean acceptBounds = (m2 & 1) == 0;   // round half even when reading back
+
+        // The interval of decimals that read back to the value, [mm, mp], and the value itself, mv
+        long mv = 4 * m2;
+        long mp = 4 * m2 + 2;
+        long mm = 4 * m2 - ((ieeeMantissa != 0 || ieeeExponent <= 1) ? 2 : 1);
+
+        // Convert to decimal: vr * 10^e10, vp * 10^e10 and vm * 10^e10, along with whether any digits dropped
+        long vr, vp, vm;
+        int e10;
+        boolean vmIsTrailingZeros = false, vrIsTrailingZeros = false;
+        int lastRemovedDigit = 0;
+        if (e2 >= 0) {
+            int q = log10Pow2(e2);
+            e10 = q;
+            int k = POW5_INV_BITCOUNT + pow5bits(q) - 1;
+            int i = -e2 + q + k;
+            vr = mulPow5InvDivPow2(mv, q, i);
+            vp = mulPow5InvDivPow2(mp, q, i);
+            vm = mulPow5InvDivPow2(mm, q, i);
+            if (q != 0 && (vp - 1) / 10 <= vm / 10) {
+                // we need one removed digit even if we are not going to loop below
+                int l = POW5_INV_BITCOUNT + pow5bits(q - 1) - 1;
+                lastRemovedDigit = (int) (mulPow5InvDivPow2(mv, q - 1, -e2 + q - 1 + l) % 10);
+            }
+            if (q <= 9) {
+                // only one of mp, mv and mm can be a multiple of 5, if any
+                if (mv % 5 == 0) {
+                    vrIsTrailingZeros = multipleOfPowerOf5(mv, q);
+                } else if (acceptBounds) {
+                    vmIsTrailingZeros = multipleOfPowerOf5(mm, q);
+                } else if (multipleOfPowerOf5(mp, q)) {
+                    vp--;
+                }
+            }
+        } else {
+            int q = log10Pow5(-e2);
+            e10 = q + e2;
+            int i = -e2 - q;
+            int k = pow5bits(i) - POW5_BITCOUNT;
+            int j = q - k;
+            vr = mulPow5DivPow2(mv, i, j);
+            vp = mulPow5DivPow2(mp, i, j);
+            vm = mulPow5DivPow2(mm, i, j);
+            if (q != 0 && (vp - 1) / 10 <= vm / 10) {
+                j = q - 1 - (pow5bits(i + 1) - POW5_BITCOUNT);
+                lastRemovedDigit = (int) (mulPow5DivPow2(mv, i + 1, j) % 10);
+            }
+            if (q <= 1) {
+                // mv, mp and mm all have at least 2 trailing zero bits
+                vrIsTrailingZeros = true;
+                if (acceptBounds) {
+                    vmIsTrailingZeros = mm == mv - 2;
+                } else {
+                    vp--;
+                }
+            } else if (q < 31) {
+                vrIsTrailingZeros = multipleOfPowerOf2(mv, q - 1);
+            }
+        }
+
+        // Drop digits while the interval still holds a shorter decimal
+        int removed = 0;
+        long output;
+        if (vmIsTrailingZeros || vrIsTrailingZeros) {
+            while (vp / 10 > vm / 10) {
+                vmIsTrailingZeros &= vm % 10 == 0;
+                vrIsTrailingZeros &= lastRemovedDigit == 0;
+                lastRemovedDigit = (int) (vr % 10);
+                vr /= 10;
+                vp /= 10;
+                vm /= 10;
+                removed++;
+            }
+            if (vmIsTrailingZeros) {
+                while (vm % 10 == 0) {
+                    vrIsTrailingZeros &= lastRemovedDigit == 0;
+                    lastRemovedDigit = (int) (vr % 10);
+                    vr /= 10;
+                    vp /= 10;
+                    vm /= 10;
+                    removed++;
+                }
+            }
+            if (vrIsTrailingZeros && lastRemovedDigit == 5 && vr % 2 == 0) {
+                // exactly half way, round to even
+                lastRemovedDigit = 4;
+            }
+            output = vr + (((vr == vm && (!acceptBounds || !vmIsTrailingZeros)) || lastRemovedDigit >= 5) ? 1 : 0);
+        } else {
+            while (vp / 10 > vm / 10) {
+                lastRemovedDigit = (int) (vr % 10);
+                vr /= 10;
+                vp /= 10;
+                vm /= 10;
+                removed++;
+            }
+            output = vr + ((vr == vm || lastRemovedDigit >= 5) ? 1 : 0);
+        }
+        int exp = e10 + removed;
+
+        return appendDecimal((int) output, exp, buf, pos);
+    }
+
+    /**
+     * Writes output * 10^exp in the layout of {@link Float#toString(float)}.
+     */
+    private static int appendDecimal(int output, int exp, byte[] buf, int pos) {
+        int olength = decimalLength(output);
+        int sciExp = exp + olength - 1;     // exponent in scientific notation
+
+        if (sciExp >= -3 && sciExp < 7) {
+            if (sciExp >= 0) {
+                // integer digits, padded with zeros, then the fraction digits, or a single zero
+                int integerLength = sciExp + 1;
+                if (olength <= integerLength) {
+                    writeDigits(output, olength, buf, pos);
+                    pos += olength;
+                    for (int i = olength; i < integerLength; i++) {
+                        buf[pos++] = '0';
+                    }
+                    buf[pos++] = '.';
+                    buf[pos++] = '0';
+                } else {
+                    // digits with the point inserted
+                    writeDigits(output, olength, buf, pos + 1);
+                    System.arraycopy(buf, pos + 1, buf, pos, integerLength);
+                    buf[pos + integerLength] = '.';
+                    pos += olength + 1;
+                }
+            } else {
+                buf[pos++] = '0';
+                buf[pos++] = '.';
+                for (int i = -1; i > sciExp; i--) {
+                    buf[pos++] = '0';
+                }
+                writeDigits(output, olength, buf, pos);
+                pos += olength;
+            }
+        } else {
+            // d.dddE-n
+            writeDigits(output, olength, buf, pos + 1);
+            buf[pos] = buf[pos + 1];
+            buf[pos + 1] = '.';
+            pos += olength + 1;
+            if (olength == 1) {
+                buf[pos++] = '0';
+            }
+            buf[pos++] = 'E';
+            if (sciExp < 0) {
+                buf[pos++] = '-';
+                sciExp = -sciExp;
+            }
+            if (sciExp >= 10) {
+                buf[pos++] = (byte) ('0' + sciExp / 10);
+            }
+            buf[pos++] = (byte) ('0' + sciExp % 10);
+        }
+        return pos;
+    }
+
+    private static void writeDigits(int value, int length, byte[] buf, int pos) {
+        for (int i = pos + length - 1; i >= pos; i--) {
+            buf[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static int appendAscii(String s, byte[] buf, int pos) {
+        for (int i = 0, il = s.length(); i < il; i++) {
+            buf[pos++] = (byte) s.charAt(i);
+        }
+        return pos;
+    }
+
+    private static int decimalLength(int v) {
+        int length = 1;
+        while (v >= 10) {
+            v /= 10;
+            length++;
+        }
+        return length;
+    }
+
+    // number of bits of 5^e
+    private static int pow5bits(int e) {
+        return (int) (((e * 1217359L) >>> 19) + 1);
+    }
+
+    // floor(log10(2^e))
+    private static int log10Pow2(int e) {
+        return (int) ((e * 78913L) >>> 18);
+    }
+
+    // floor(log10(5^e))
+    private static int log10Pow5(int e) {
+        return (int) ((e * 732923L) >>> 20);
+    }
+
+    private static boolean multipleOfPowerOf5(long value, int p) {
+        int count = 0;
+        while (value > 0 && value % 5 == 0) {
+            value /= 5;
+            count++;
+        }
+        return count >= p;
+    }
+
+    private static boolean multipleOfPowerOf2(long value, int p) {
+        return (value & ((1L << p) - 1)) == 0;
+    }
+
+    private static long mulPow5InvDivPow2(long m, int q, int j) {
+        return mulShift(m, POW5_INV_SPLIT[q], j);
+    }
+
+    private static long mulPow5DivPow2(long m, int i, int j) {
+        return mulShift(m, POW5_SPLIT[i], j);
+    }
+
+    // (m * factor) >> shift, for m < 2^32 and shift > 32, without overflowing
+    private static long mulShift(long m, long factor, int shift) {
+        long factorLo = factor & 0xFFFFFFFFL;
+        long factorHi = factor >>> 32;
+        long bits0 = m * factorLo;
+        long bits1 = m * factorHi;
+        long sum = (bits0 >>> 32) + bits1;
+        return sum >>> (shift - 32);
+    }
+}
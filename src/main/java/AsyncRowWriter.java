@@ -0,0 +1,357 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes rows of frames to a file in the background, so that a slow disk, e.g. shared storage that stalls now and
+ * then, does not hold up the thread processing the audio.
+ * <p>
+ * Rows are encoded, e.g. by {@link ARFFRowEncoder}, straight into pages from a fixed pool. A full page is queued and
+ * the queued pages written out together, with one gathering write to the file channel, on a background thread shared
+ * by all writers, then handed back to the pool. Once every page is queued the writer is behind, and the {@link
+ * OverflowPolicy} decides what happens to the rows that follow. The rows written are the same, and in the same order,
+ * as those of an {@link ARFFFeatureWriter} or a BufferedWriter of {@link AudioProcessingResult#getLogString()} lines,
+ * unless rows are dropped. Not thread safe: write from one thread at a time.
+ */
+public class AsyncRowWriter implements FeatureWriter {
+    public static final int DEFAULT_PAGE_SIZE = 1 << 16;
+    public static final int DEFAULT_NUM_PAGES = 16;     // 1 MB, about 40 s of log
+
+    /**
+     * What a write does when every page is queued.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Waits for a page to be written out. No rows are lost, but the writing thread stalls with the disk.
+         */
+        BLOCK,
+        /**
+         * Drops the row, and those after it, until a page has been written out. Counted by {@link
+         * #getDroppedRows()}.
+         */
+        DROP,
+        /**
+         * Appends the pages to a temporary file, e.g. on a local disk, until the writer catches up, which copies them
+         * over after the queued ones. No rows are lost, and the writing thread only waits on the local disk.
+         */
+        SPILL
+    }
+
+    /**
+     * Encodes a row of a frame.
+     */
+    public interface RowEncoder {
+        /**
+         * @param buf output, with at least {@link ARFFRowEncoder#MAX_ROW_LENGTH} bytes from pos
+         * @return the position after the row.
+         */
+        int encode(AudioProcessingResult frame, byte[] buf, int pos);
+    }
+
+    private static final ExecutorService IO = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "AsyncRowWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Executor io;
+    private final FileChannel channel;
+    private final RowEncoder encoder;
+    private final OverflowPolicy policy;
+    private final BlockingQueue<ByteBuffer> free;
+    private final BlockingQueue<ByteBuffer> queued;
+    private final ByteBuffer[] batch;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final Object drainLock = new Object();
+    private final AtomicLong droppedRows = new AtomicLong();
+    private final AtomicLong spilledBytes = new AtomicLong();
+    private volatile IOException failure = null;
+    private ByteBuffer page;    // being filled; null when dropping rows
+
+    // pages written to the spill file and not yet copied over, between spillRead and spillWritten
+    private final Object spillLock = new Object();
+    private File spillFile = null;
+    private FileChannel spill = null;
+    private long spillRead = 0, spillWritten = 0;
+    private boolean spilling = false;
+
+    /**
+     * Writes to a new file, with {@link #DEFAULT_NUM_PAGES} pages of {@link #DEFAULT_PAGE_SIZE} bytes.
+     *
+     * @param filename Full path file name, including extension
+     * @param header   written before the rows, e.g. an ARFF header, or null
+     * @param encoder  encodes each row, e.g. {@link ARFFRowEncoder#encodeFeatureVector}
+     */
+    public AsyncRowWriter(String filename, byte[] header, RowEncoder encoder, OverflowPolicy policy)
+            throws IOException {
+        this(filename, header, encoder, policy, DEFAULT_PAGE_SIZE, DEFAULT_NUM_PAGES);
+    }
+
+    /**
+     * @param pageSize bytes per page, at least {@link ARFFRowEncoder#MAX_ROW_LENGTH}
+     * @param numPages pages in the pool, at least 2
+     */
+    public AsyncRowWriter(String filename, byte[] header, RowEncoder encoder, OverflowPolicy policy, int pageSize,
+                          int numPages) throws IOException {
+        this(filename, header, encoder, policy, pageSize, numPages, IO);
+    }
+
+    /**
+     * @param io runs the writing out of the pages
+     */
+    AsyncRowWriter(String filename, byte[] header, RowEncoder encoder, OverflowPolicy policy, int pageSize,
+                   int numPages, Executor io) throws IOException {
+        if (pageSize < ARFFRowEncoder.MAX_ROW_LENGTH || numPages < 2) {
+            throw new IllegalArgumentException("Pages of " + pageSize + " bytes, " + numPages + " of them");
+        }
+        this.io = io;
+        this.encoder = encoder;
+        this.policy = policy;
+        free = new ArrayBlockingQueue<>(numPages);
+        queued = new ArrayBlockingQueue<>(numPages);
+        batch = new ByteBuffer[numPages];
+        for (int i = 1; i < numPages; i++) {
+            free.add(ByteBuffer.allocate(pageSize));
+        }
+        page = ByteBuffer.allocate(pageSize);
+
+        channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        if (header != null) {
+            ByteBuffer buffer = ByteBuffer.wrap(header);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Encodes the row of a frame, to be written out in the background.
+     *
+     * @throws IOException if writing out an earlier row failed
+     */
+    @Override
+    public void write(AudioProcessingResult frame) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (page == null || page.remaining() < ARFFRowEncoder.MAX_ROW_LENGTH) {
+            nextPage();
+            if (page == null) {
+                droppedRows.incrementAndGet();
+                return;
+            }
+        }
+        page.position(encoder.encode(frame, page.array(), page.position()));
+    }
+
+    /**
+     * Queues the rows encoded so far to be written out, without waiting for them to be.
+     */
+    public void flush() throws IOException {
+        if (page != null && page.position() > 0) {
+            nextPage();
+        }
+    }
+
+    /**
+     * @return rows dropped as every page was queued, by the {@link OverflowPolicy#DROP} policy
+     */
+    public long getDroppedRows() {
+        return droppedRows.get();
+    }
+
+    /**
+     * @return bytes written to the spill file, by the {@link OverflowPolicy#SPILL} policy
+     */
+    public long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    /**
+     * Writes out the rows left, waiting for them, and closes the file.
+     *
+     * @throws IOException if writing out a row failed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (page != null && page.position() > 0 && !spillPage()) {
+                queued.add(page);
+            }
+            page = null;
+            synchronized (drainLock) {
+                drainAll();
+            }
+        } finally {
+            channel.close();
+            synchronized (spillLock) {
+                if (spill != null) {
+                    spill.close();
+                    spillFile.delete();
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Queues the page being filled, or spills it, and takes the next one to fill, as the policy has it.
+     */
+    private void nextPage() throws IOException {
+        if (page != null) {
+            if (spillPage()) {
+                return;
+            }
+            ByteBuffer next = free.poll();
+            if (next == null && policy == OverflowPolicy.SPILL) {
+                synchronized (spillLock) {
+                    spilling = true;
+                }
+                spillPage();
+                return;
+            }
+            queued.add(page);
+            drain();
+            page = next;
+        }
+        if (page == null) {
+            if (policy == OverflowPolicy.BLOCK) {
+                try {
+                    page = free.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for the writer");
+                }
+            } else {
+                page = free.poll();
+            }
+        }
+    }
+
+    /**
+     * Appends the page being filled to the spill file, while the writer has yet to catch up with it, as the rows must
+     * follow those spilled before them, and clears it to be filled again.
+     *
+     * @return whether the page was spilled
+     */
+    private boolean spillPage() throws IOException {
+        synchronized (spillLock) {
+            if (!spilling) {
+                return false;
+            }
+            if (spill == null) {
+                spillFile = File.createTempFile("rows", ".spill");
+                spillFile.deleteOnExit();
+                spill = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            page.flip();
+            spilledBytes.addAndGet(page.remaining());
+            while (page.hasRemaining()) {
+                spillWritten += spill.write(page, spillWritten);
+            }
+            page.clear();
+        }
+        drain();
+        return true;
+    }
+
+    /**
+     * Has the background thread write out the queued pages, unless it is already at it.
+     */
+    private void drain() {
+        if (draining.compareAndSet(false, true)) {
+            io.execute(() -> {
+                do {
+                    synchronized (drainLock) {
+                        drainAll();
+                    }
+                    draining.set(false);
+                } while (hasWork() && draining.compareAndSet(false, true));
+            });
+        }
+    }
+
+    private boolean hasWork() {
+        if (!queued.isEmpty()) {
+            return true;
+        }
+        synchronized (spillLock) {
+            return spilling;
+        }
+    }
+
+    /**
+     * Writes out the queued pages, a batch at a time, then copies over the spilled ones, until there are none left.
+     */
+    private void drainAll() {
+        while (true) {
+            int count = 0;
+            ByteBuffer next;
+            while (count < batch.length && (next = queued.poll()) != null) {
+                next.flip();
+                batch[count++] = next;
+            }
+            if (count > 0) {
+                try {
+                    if (failure == null) {
+                        writeFully(batch, count);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+                for (int i = 0; i < count; i++) {
+                    batch[i].clear();
+                    free.add(batch[i]);
+                    batch[i] = null;
+                }
+                continue;
+            }
+
+            long position, end;
+            synchronized (spillLock) {
+                if (spillRead == spillWritten) {
+                    // caught up: the next pages are queued again
+                    spilling = false;
+                    spillRead = spillWritten = 0;
+                    return;
+                }
+                position = spillRead;
+                end = spillWritten;
+            }
+            try {
+                while (failure == null && position < end) {
+                    position += spill.transferTo(position, end - position, channel);
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+            synchronized (spillLock) {
+                spillRead = end;
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer[] pages, int count) throws IOException {
+        int first = 0;
+        while (first < count) {
+            channel.write(pages, first, count - first);
+            while (first < count && !pages[first].hasRemaining()) {
+                first++;
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import weka.core.Attribute;
 import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Utils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -21,10 +22,11 @@ public class AudioProcessingResult {
     private float[] mfcc;
     private float[] dmfcc;
     private float[] ddmfcc;
-    private ArrayList<Onset> onsets = new ArrayList<>();
+    private Onsets onsets = Onsets.EMPTY;  // until the first onset
     private User user = User.NONE;
     private int[] eventBuffer = new int[5];
-    public Instances instances = generateInstancesHeader();
+    private static final Instances instancesHeader = generateInstancesHeader();
+    public static final int NUM_INSTANCE_VALUES = 17;
     public static final float frameLength = ((float) WAVProcessor.BUFFER_SIZE) /
             ((float) WAVProcessor.SAMPLE_RATE);
 
@@ -232,53 +234,38 @@ public class AudioProcessingResult {
         return data;
     }
 
-    public Instance getInstance() {
-        Instance instance = new DenseInstance(17);
-
-        Attribute time = new Attribute("startTime", 0);
-        Attribute dbspl = new Attribute("dbspl", 1);
-        Attribute pitch = new Attribute("pitch", 2);
-        Attribute mfcc01 = new Attribute("mfcc01", 3);
-        Attribute mfcc02 = new Attribute("mfcc02", 4);
-        Attribute mfcc03 = new Attribute("mfcc03", 5);
-        Attribute mfcc04 = new Attribute("mfcc04", 6);
-        Attribute mfcc05 = new Attribute("mfcc05", 7);
-        Attribute mfcc06 = new Attribute("mfcc06", 8);
-        Attribute mfcc07 = new Attribute("mfcc07", 9);
-        Attribute mfcc08 = new Attribute("mfcc08", 10);
-        Attribute mfcc09 = new Attribute("mfcc09", 11);
-        Attribute mfcc10 = new Attribute("mfcc10", 12);
-        Attribute mfcc11 = new Attribute("mfcc11", 13);
-        Attribute mfcc12 = new Attribute("mfcc12", 14);
-        Attribute mfcc13 = new Attribute("mfcc13", 15);
-//        List<String> nominal_values = new ArrayList(3);
-//        nominal_values.add("NONE");
-//        nominal_values.add("ADULT");
-//        nominal_values.add("CHILD");
-//        Attribute person = new Attribute("class", nominal_values, 16);
-        instance.setValue(time, this.startTime);
-        instance.setValue(dbspl, this.dbSPL);
-        instance.setValue(pitch, this.pitch);
-        instance.setValue(mfcc01, this.mfcc[0]);
-        instance.setValue(mfcc02, this.mfcc[1]);
-        instance.setValue(mfcc03, this.mfcc[2]);
-        instance.setValue(mfcc04, this.mfcc[3]);
-        instance.setValue(mfcc05, this.mfcc[4]);
-        instance.setValue(mfcc06, this.mfcc[5]);
-        instance.setValue(mfcc07, this.mfcc[6]);
-        instance.setValue(mfcc08, this.mfcc[7]);
-        instance.setValue(mfcc09, this.mfcc[8]);
-        instance.setValue(mfcc10, this.mfcc[9]);
-        instance.setValue(mfcc11, this.mfcc[10]);
-        instance.setValue(mfcc12, this.mfcc[11]);
-        instance.setValue(mfcc13, this.mfcc[12]);
-//        instance.setValue(person, this.user.toString());
-
-        instance.setDataset(instances);
+    /**
+     * The header of every instance to classify: the attributes and the class values, with no rows. It is shared and
+     * must not be modified.
+     */
+    public static Instances getInstancesHeader() {
+        return instancesHeader;
+    }
 
+    public Instance getInstance() {
+        Instance instance = new DenseInstance(1, getInstanceValues(new double[NUM_INSTANCE_VALUES]));
+        instance.setDataset(instancesHeader);
         return instance;
     }
 
+    /**
+     * Fills in the attribute values of the instance to classify: start time, dbSPL, pitch and the 13 MFCCs, with
+     * the class missing.
+     *
+     * @param values output, of length {@link #NUM_INSTANCE_VALUES}
+     * @return values
+     */
+    public double[] getInstanceValues(double[] values) {
+        values[0] = startTime;
+        values[1] = dbSPL;
+        values[2] = pitch;
+        for (int i = 0; i < 13; i++) {
+            values[3 + i] = mfcc[i];
+        }
+        values[16] = Utils.missingValue();
+        return values;
+    }
+
     public boolean isVoiced() {
         return isVoiced;
     }
@@ -296,10 +283,17 @@ public class AudioProcessingResult {
     }
 
     public void addOnset(Onset onset) {
-        onsets.add(onset);
+        addOnset(onset.time, onset.salience);
+    }
+
+    public void addOnset(double time, double salience) {
+        if (onsets == Onsets.EMPTY) {
+            onsets = new Onsets(1);
+        }
+        onsets.add(time, salience);
     }
 
-    public ArrayList<Onset> getOnsets() {
+    public Onsets getOnsets() {
         return onsets;
     }
 
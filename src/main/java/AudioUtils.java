@@ -1,7 +1,6 @@
 import be.tarsos.dsp.AudioDispatcher;
 import be.tarsos.dsp.AudioEvent;
 import be.tarsos.dsp.AudioProcessor;
-import be.tarsos.dsp.io.TarsosDSPAudioFormat;
 import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
 import be.tarsos.dsp.mfcc.MFCC;
 import be.tarsos.dsp.onsets.ComplexOnsetDetector;
@@ -11,19 +10,27 @@ import be.tarsos.dsp.pitch.PitchDetectionResult;
 import be.tarsos.dsp.pitch.PitchProcessor;
 import be.tarsos.dsp.writer.WaveHeader;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
 
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.function.Consumer;
 
 
 /**
  * Created by KennyChoo on 3/5/17.
  */
 public class AudioUtils {
+    public static final long REBALANCE_SEED = 42;
+    // frames classified together in offline runs, ~2.5 s of 10 ms frames
+    public static final int CLASSIFICATION_BATCH_SIZE = 256;
+
     private AudioUtils() {
     }
 
@@ -229,30 +236,37 @@ public class AudioUtils {
     /**
      * Creates a TarsosDSP AudioDispatcher from a file.
      * <p>
-     * We assume a WAV file, 16 bits PCM, signed, little Endian format.
+     * The WAV header is parsed by {@link WAVFileInputStream}, which memory-maps the audio data. We expect a WAV file,
+     * 16 bits PCM, signed, little Endian format, at the given sample rate.
      *
      * @param audioFile       the data file
      * @param sampleRate
      * @param audioBufferSize
      * @param bufferOverlap
      * @return
-     * @throws FileNotFoundException
      */
     public static AudioDispatcher audioDispatcherFromFile(final File audioFile, final int
             sampleRate, final int audioBufferSize, final int bufferOverlap) {
+        return new AudioDispatcher(audioStreamFromFile(audioFile, sampleRate), audioBufferSize, bufferOverlap);
+    }
 
-        TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(sampleRate, 16, 1, true, false);
-
+    /**
+     * Opens the audio of a WAV file, warning if it is not at the sample rate expected.
+     *
+     * @return the stream, or null if the file cannot be read
+     */
+    public static TarsosDSPAudioInputStream audioStreamFromFile(final File audioFile, final int sampleRate) {
         TarsosDSPAudioInputStream audioStream = null;
         try {
-            audioStream = new AndroidFileInputStream(new FileInputStream
-                    (audioFile), format);
-            audioStream.skip(44);   // skip the WAV header
+            audioStream = new WAVFileInputStream(audioFile);
+            if (audioStream.getFormat().getSampleRate() != sampleRate) {
+                System.err.println(audioFile + " has a sample rate of " + audioStream.getFormat().getSampleRate()
+                        + " Hz, expected " + sampleRate + " Hz");
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
-
-        return new AudioDispatcher(audioStream, audioBufferSize, bufferOverlap);
+        return audioStream;
     }
 
     public static double computedBSPL(float[] audioData) {
@@ -391,132 +405,87 @@ public class AudioUtils {
      */
     public static void mergeFiles(String file1, String file2, String mergedFile) {
         try {
-            // check that the attributes match, else throw an exception
-            boolean isSameType = true;
-
-            BufferedWriter bw;
-            BufferedReader br1 = null, br2 = null;
-            br1 = new BufferedReader(new FileReader(file1 + ".arff"));
-            br2 = new BufferedReader(new FileReader(file2 + ".arff"));
-
-            // Skip over the header and the @Relation bits to get to the @Attribute
-            int linesToSkip = 8;
-            while (linesToSkip-- > 0) {
-                br1.readLine();
-                br2.readLine();
-            }
-
-            // Check the next 14 lines of attributes
-            int linesToCompare = 14;
-            while (linesToCompare-- > 0) {
-                String s1 = br1.readLine();
-                String s2 = br2.readLine();
+            ARFFDataCursor cursor1 = new ARFFDataCursor(file1 + ".arff");
+            ARFFDataCursor cursor2 = new ARFFDataCursor(file2 + ".arff");
 
-                if (!s1.equals(s2)) {
-                    isSameType = false;
-                }
+            // check that the attributes match, else throw an exception
+            if (!cursor1.getAttributes().equals(cursor2.getAttributes())) {
+                cursor1.close();
+                cursor2.close();
+                throw new InputMismatchException("Input ARFF files do not have the same sets of " +
+                        "attributes - Cannot be merged.");
             }
 
-            // merge the files
-            if (isSameType) {
-                // skip the last two lines to get to the data
-                linesToSkip = 2;
-                while (linesToSkip-- > 0) {
-                    br1.readLine();
-                    br2.readLine();
-                }
-
-                bw = new BufferedWriter(new FileWriter(mergedFile + ".arff"));
-
-                // write the header
-                bw.write(AudioUtils.getARFFHeader(getFilenameFromPathfilename(mergedFile)));
-
-                // write from file1
-                String str = null;
-                while ((str = br1.readLine()) != null) {
-                    bw.write(str);
-                    bw.newLine();
-                }
-
-                // write from file2
-                while ((str = br2.readLine()) != null) {
-                    bw.write(str);
-                    bw.newLine();
-                }
+            // write the header, then the data of both files as they are
+            ARFFFeatureWriter writer = new ARFFFeatureWriter(mergedFile + ".arff",
+                    getFilenameFromPathfilename(mergedFile));
+            writer.writeData(cursor1);
+            writer.writeData(cursor2);
 
-            } else throw new InputMismatchException("Input ARFF files do not have the same sets of " +
-                    "attributes - Cannot be merged.");
-
-            br1.close();
-            br2.close();
-            bw.close();
+            cursor1.close();
+            cursor2.close();
+            writer.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * {@link #rebalanceClassInARFF(String, long)} with the default seed, so that runs are reproducible.
+     */
     public static void rebalanceClassInARFF(String mergedFile) {
+        rebalanceClassInARFF(mergedFile, REBALANCE_SEED);
+    }
+
+    /**
+     * Randomly subsamples the classes of an ARFF file that are larger than the middle class down to its size, and
+     * writes the result to mergedFile + " balanced".
+     * <p>
+     * This takes two passes over the file in constant memory. The first counts the rows of each class. The second
+     * keeps each row of an oversized class with probability (rows still to keep) / (rows left), which keeps exactly
+     * the middle size with every subset equally likely (selection sampling, Knuth's Algorithm S). Rows stay in the
+     * order of the file.
+     *
+     * @param mergedFile path, filename, no extension
+     * @param seed       seed of the random subsampling
+     */
+    public static void rebalanceClassInARFF(String mergedFile, long seed) {
 
         try {
-            BufferedReader br = new BufferedReader(new FileReader(mergedFile + ".arff"));
-
-            // Skip over the header and the @Relation bits to get to the @Attribute
-            int linesToSkip = 27;
-            while (linesToSkip-- > 0) {
-                br.readLine();
-            }
-
-            // lists to hold the data - warning, data size might be too much
-            ArrayList<FeatureData> noneList = new ArrayList<>();
-            ArrayList<FeatureData> adultList = new ArrayList<>();
-            ArrayList<FeatureData> childList = new ArrayList<>();
-            ArrayList<ArrayList<FeatureData>> lists = new ArrayList<>();
-            lists.add(noneList);
-            lists.add(adultList);
-            lists.add(childList);
-
-            String str = null;
-            while ((str = br.readLine()) != null) {
-                FeatureData featureData = new FeatureData(str);
-
-                switch (featureData.getUser()) {
-                    case ADULT:
-                        adultList.add(featureData);
-                        break;
-                    case CHILD:
-                        childList.add(featureData);
-                        break;
-                    default:
-                        noneList.add(featureData);
-                }
+            ARFFDataCursor cursor = new ARFFDataCursor(mergedFile + ".arff");
+
+            // First pass: count the rows of each class, indexed by User ordinal
+            long[] counts = new long[User.values().length];
+            while (cursor.next()) {
+                counts[cursor.getUser().ordinal()]++;
             }
-            br.close();
 
-            int sizes[] = {adultList.size(), childList.size(), noneList.size()};
+            long sizes[] = {counts[User.ADULT.ordinal()], counts[User.CHILD.ordinal()], counts[User.NONE.ordinal()]};
             Arrays.sort(sizes);
-            int middleSize = sizes[1];
+            long middleSize = sizes[1];
 
-
-            // Random subsampling of the largest array based on the size of middle array
-            for (int i = 0, il = lists.size(); i < il; i++) {
-                ArrayList<FeatureData> list = lists.get(i);
-                if (list.size() > middleSize) {
-                    Collections.shuffle(list);
-                    list = new ArrayList<>(list.subList(0, middleSize));
-                    lists.set(i, list);
-                }
+            // Second pass: random subsampling of the largest classes based on the size of middle class
+            long[] rowsToKeep = new long[counts.length];
+            long[] rowsLeft = counts.clone();
+            for (int i = 0; i < counts.length; i++) {
+                rowsToKeep[i] = Math.min(counts[i], middleSize);
             }
-
-            // Write out to file
-            BufferedWriter bw = new BufferedWriter(new FileWriter(mergedFile + " balanced.arff", false));
-            bw.write(AudioUtils.getARFFHeader(getFilenameFromPathfilename(mergedFile + " balanced")));
-            for (ArrayList<FeatureData> list : lists) {
-                for (FeatureData featureData : list) {
-                    bw.write(featureData.toString());
-                    bw.newLine();
+            Random random = new Random(seed);
+
+            ARFFFeatureWriter writer = new ARFFFeatureWriter(mergedFile + " balanced.arff",
+                    getFilenameFromPathfilename(mergedFile + " balanced"));
+            cursor.rewind();
+            while (cursor.next()) {
+                int i = cursor.getUser().ordinal();
+                if (rowsToKeep[i] == rowsLeft[i]
+                        || (rowsToKeep[i] > 0 && random.nextDouble() * rowsLeft[i] < rowsToKeep[i])) {
+                    writer.write(cursor);
+                    rowsToKeep[i]--;
                 }
+                rowsLeft[i]--;
             }
-            bw.close();
+            writer.close();
+            cursor.close();
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -529,85 +498,92 @@ public class AudioUtils {
      * @param file            filename, no path, no extension
      */
     public static void split(float trainPercentage, String filepath, String file) {
-        // Read the file
+        String splitFile = filepath + file + " tp" + trainPercentage;
+        splitByUser(trainPercentage, filepath + file, splitFile + " train", splitFile + " test");
+    }
+
+    /**
+     * Splits an ARFF file into a train and a test file, stratified by class, in a single pass in constant memory.
+     * <p>
+     * Rows are assigned by a counter per class: the (j + 1)th row of a class goes to the train file if
+     * floor((j + 1) * trainPercentage) > floor(j * trainPercentage), else to the test file. After n rows of a class
+     * the train file has floor(n * trainPercentage) of them, spread evenly through the file, and both files keep the
+     * order of the input. The split is deterministic.
+     *
+     * @param inputFile path, filename, no extension
+     * @param trainFile path, filename, no extension
+     * @param testFile  path, filename, no extension
+     */
+    static void splitByUser(float trainPercentage, String inputFile, String trainFile, String testFile) {
+        splitByUser(trainPercentage, inputFile, trainFile, getFilenameFromPathfilename(trainFile), testFile,
+                getFilenameFromPathfilename(testFile));
+    }
+
+    static void splitByUser(float trainPercentage, String inputFile, String trainFile, String trainRelation,
+                            String testFile, String testRelation) {
         try {
-            BufferedReader br = new BufferedReader(new FileReader(filepath + file + ".arff"));
-
-            // Skip over the header and the @Relation bits to get to the @FeatureData
-            int linesToSkip = 27;
-            while (linesToSkip-- > 0) {
-                br.readLine();
-            }
-
-            ArrayList<FeatureData> noneList = new ArrayList<>();
-            ArrayList<FeatureData> adultList = new ArrayList<>();
-            ArrayList<FeatureData> childList = new ArrayList<>();
-
-            String str;
-            while ((str = br.readLine()) != null) {
-                FeatureData featureData = new FeatureData(str);
-
-                switch (featureData.getUser()) {
-                    case ADULT:
-                        adultList.add(featureData);
-                        break;
-                    case CHILD:
-                        childList.add(featureData);
-                        break;
-                    default:
-                        noneList.add(featureData);
-                }
-            }
-            br.close();
-
-            // split the files
-            int adultSplit = (int) (adultList.size() * trainPercentage);
-            int childSplit = (int) (childList.size() * trainPercentage);
-            int noneSplit = (int) (noneList.size() * trainPercentage);
-
-            // Write out the file
-            BufferedWriter bwTrain = new BufferedWriter(new FileWriter(filepath + file + " tp" + trainPercentage + " " +
-                    "train.arff", false));
-            BufferedWriter bwTest = new BufferedWriter(new FileWriter(filepath + file + " tp" + trainPercentage + " " +
-                    "test.arff", false));
-            bwTrain.write(AudioUtils.getARFFHeader(getFilenameFromPathfilename(filepath + file + " tp" +
-                    trainPercentage + " train")));
-            bwTest.write(AudioUtils.getARFFHeader(getFilenameFromPathfilename(filepath + file + " tp" +
-                    trainPercentage + " test")));
-
-            for (int i = 0, il = adultList.size(); i < il; i++) {
-                FeatureData featureData = adultList.get(i);
-                if (i < adultSplit) {
-                    bwTrain.write(featureData.toString());
-                    bwTrain.newLine();
-                } else {
-                    bwTest.write(featureData.toString());
-                    bwTest.newLine();
-                }
+            ARFFDataCursor cursor = new ARFFDataCursor(inputFile + ".arff");
+            ARFFFeatureWriter train = new ARFFFeatureWriter(trainFile + ".arff", trainRelation);
+            ARFFFeatureWriter test = new ARFFFeatureWriter(testFile + ".arff", testRelation);
+
+            // rows seen of each class, indexed by User ordinal
+            long[] counts = new long[User.values().length];
+            while (cursor.next()) {
+                int i = cursor.getUser().ordinal();
+                long j = counts[i]++;
+                boolean isTrain = (long) ((j + 1) * (double) trainPercentage) > (long) (j * (double) trainPercentage);
+                (isTrain ? train : test).write(cursor);
             }
-            for (int i = 0, il = childList.size(); i < il; i++) {
-                FeatureData featureData = childList.get(i);
-                if (i < childSplit) {
-                    bwTrain.write(featureData.toString());
-                    bwTrain.newLine();
-                } else {
-                    bwTest.write(featureData.toString());
-                    bwTest.newLine();
-                }
+
+            train.close();
+            test.close();
+            cursor.close();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Splits an ARFF file into k folds for cross validation, stratified by class, in a single pass in constant
+     * memory. The jth row of a class belongs to fold j mod k. For each fold i, writes file + " fold" + i + " test"
+     * with the rows of the fold, and file + " fold" + i + " train" with the rows of all the other folds, all in the
+     * order of the input.
+     *
+     * @param k        number of folds, at least 2
+     * @param filepath fully qualified path, no filename, no extension
+     * @param file     filename, no path, no extension
+     */
+    public static void splitFolds(int k, String filepath, String file) {
+        if (k < 2) {
+            throw new IllegalArgumentException("Need at least 2 folds, not " + k);
+        }
+        try {
+            ARFFDataCursor cursor = new ARFFDataCursor(filepath + file + ".arff");
+            ARFFFeatureWriter[] train = new ARFFFeatureWriter[k];
+            ARFFFeatureWriter[] test = new ARFFFeatureWriter[k];
+            for (int fold = 0; fold < k; fold++) {
+                String foldFile = filepath + file + " fold" + fold;
+                train[fold] = new ARFFFeatureWriter(foldFile + " train.arff",
+                        getFilenameFromPathfilename(foldFile + " train"));
+                test[fold] = new ARFFFeatureWriter(foldFile + " test.arff",
+                        getFilenameFromPathfilename(foldFile + " test"));
             }
-            for (int i = 0, il = noneList.size(); i < il; i++) {
-                FeatureData featureData = noneList.get(i);
-                if (i < noneSplit) {
-                    bwTrain.write(featureData.toString());
-                    bwTrain.newLine();
-                } else {
-                    bwTest.write(featureData.toString());
-                    bwTest.newLine();
+
+            // rows seen of each class, indexed by User ordinal
+            long[] counts = new long[User.values().length];
+            while (cursor.next()) {
+                int rowFold = (int) (counts[cursor.getUser().ordinal()]++ % k);
+                for (int fold = 0; fold < k; fold++) {
+                    (fold == rowFold ? test[fold] : train[fold]).write(cursor);
                 }
             }
-            bwTrain.close();
-            bwTest.close();
 
+            for (int fold = 0; fold < k; fold++) {
+                train[fold].close();
+                test[fold].close();
+            }
+            cursor.close();
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -640,47 +616,29 @@ public class AudioUtils {
      */
     public static void writeUsersToRaw(String childFile, String adultFile, String rawFile) {
         try {
-            BufferedReader brChild = new BufferedReader(new FileReader( childFile + ".arff"));
-            BufferedReader brAdult = new BufferedReader(new FileReader(adultFile + ".arff"));
-            BufferedReader brRaw = new BufferedReader(new FileReader(rawFile + ".arff"));
-            BufferedWriter bwRawOut = new BufferedWriter(new FileWriter(rawFile + "_out.arff", false));
-            bwRawOut.write(getARFFHeader(rawFile + "_out"));
-
-            skipToARFFData(brChild);
-            skipToARFFData(brAdult);
-            skipToARFFData(brRaw);
-
-            String sChild, sAdult, sRaw;
-            while ((sChild = brChild.readLine()) != null
-                    && (sAdult = brAdult.readLine()) != null
-                    && (sRaw = brRaw.readLine()) != null) {
-                String[] sc = sChild.split(",");
-                String[] sa = sAdult.split(",");
-                String[] sr = sRaw.split(",");
-
-                String uc = sc[sc.length - 1];
-                String ua = sa[sa.length - 1];
-
-                String str = "NONE";
-                if (ua.equals("ADULT")) {
-                    str = "ADULT";
+            ARFFDataCursor child = new ARFFDataCursor(childFile + ".arff");
+            ARFFDataCursor adult = new ARFFDataCursor(adultFile + ".arff");
+            ARFFDataCursor raw = new ARFFDataCursor(rawFile + ".arff");
+            ARFFFeatureWriter rawOut = new ARFFFeatureWriter(rawFile + "_out.arff", rawFile + "_out");
+
+            while (child.next() && adult.next() && raw.next()) {
+                User user = User.NONE;
+                if (adult.getUser() == User.ADULT) {
+                    user = User.ADULT;
                 }
                 // As long as it is a child, we will overwrite
-                if (uc.equals("CHILD")) {
-                    str = "CHILD";
+                if (child.getUser() == User.CHILD) {
+                    user = User.CHILD;
                 }
 
-                sr[sr.length - 1] = str;
-
-                bwRawOut.write(String.join(",", sr));
-                bwRawOut.newLine();
+                rawOut.write(raw, user);
             }
 
             // Close all files
-            brChild.close();
-            brAdult.close();
-            brRaw.close();
-            bwRawOut.close();
+            child.close();
+            adult.close();
+            raw.close();
+            rawOut.close();
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -688,63 +646,41 @@ public class AudioUtils {
     }
 
     public static void writeUsersFromTo(String filepath, String arffFileFrom, String arffFileTo) {
-        // read from arffFileFrom
-        ArrayList<String> arffFrom = new ArrayList<>();
-        ArrayList<String> arffTo = new ArrayList<>();
-
         try {
-            BufferedReader brFrom = new BufferedReader(new FileReader(filepath + arffFileFrom + ".arff"));
-            BufferedReader brTo = new BufferedReader(new FileReader(filepath + arffFileTo + ".arff"));
+            ARFFDataCursor from = new ARFFDataCursor(filepath + arffFileFrom + ".arff");
+            ARFFDataCursor to = new ARFFDataCursor(filepath + arffFileTo + ".arff");
 
-            skipToARFFData(brFrom);
-            skipToARFFData(brTo);
-
-            String str1, str2;
-            while ((str1 = brFrom.readLine()) != null) {
-                arffFrom.add(str1);
+            long fromRows = 0, toRows = 0;
+            while (from.next()) {
+                fromRows++;
             }
-            while ((str2 = brTo.readLine()) != null) {
-                arffTo.add(str2);
+            while (to.next()) {
+                toRows++;
             }
-            if (arffFrom.size() != arffTo.size()) {
+            if (fromRows != toRows) {
+                from.close();
+                to.close();
                 throw new IOException("Files do not have the same number of lines of data!");
             }
-            brFrom.close();
-            brTo.close();
-
-            // Overwrite the old file
-            BufferedWriter bw = new BufferedWriter(new FileWriter(filepath + arffFileTo + ".arff", false));
-            bw.write(getARFFHeader(arffFileTo));
-            for (int i = 0, il = arffFrom.size(); i < il; i++) {
-                str1 = arffFrom.get(i);
-                str2 = arffTo.get(i);
-
-                String output;
-                String[] str1s = str1.split(",");
-                String[] str2s = str2.split(",");
+            from.rewind();
+            to.rewind();
+
+            // Overwrite the old file, through a temporary file as it is still being read
+            File toFile = new File(filepath + arffFileTo + ".arff");
+            File tempFile = new File(filepath + arffFileTo + ".arff.tmp");
+            ARFFFeatureWriter writer = new ARFFFeatureWriter(tempFile.getPath(), arffFileTo);
+            while (from.next() && to.next()) {
                 // Only overwrite if there was "NONE" before
-                if (str2s[str2s.length - 1].trim().equals("NONE") && !str1s[str1s.length - 1].trim().equals("NONE")) {
-                    output = str1;
+                if (to.getUser() == User.NONE && from.getUser() != User.NONE) {
+                    writer.write(from);
                 } else {
-                    output = str2;
+                    writer.write(to);
                 }
-
-                bw.write(output);
-                bw.newLine();
-
-//                String[] str1s = str1.split(",");
-//                String[] str2s = str2.split(",");
-//
-//                // Only overwrite if there was "NONE" before
-//                if (str2s[str2s.length - 1].trim().equals("NONE")) {
-//                    str2s[str2s.length - 1] = str1s[str1s.length - 1];  // overwrite the last token, User
-//                }
-//
-//                bw.write(stringArrayToCSVLine(str2s));
-//                bw.newLine();
             }
-            bw.close();
-
+            writer.close();
+            from.close();
+            to.close();
+            Files.move(tempFile.toPath(), toFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -772,30 +708,199 @@ public class AudioUtils {
 
     public static AudioDispatcher processRAWFileForLog(String filename, final Classifier classifier, int SAMPLE_RATE,
                                                        int BUFFER_SIZE, int BUFFER_OVERLAP) {
-        final int numCepstralCoeffs = 13;
-        final int numMelFilters = 40;
-        final float lowerFilterFreq = 64; // Hz
-        final float upperFilterFreq = (float) 4000; // Hz - human frequencies
+        return processRAWFileForLog(filename, classifier, null, SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP);
+    }
+
+    /**
+     * @param compiled the classifier compiled by {@link ModelCompiler#compile(Classifier, Instances)}, or null to
+     *                 classify with Weka
+     */
+    public static AudioDispatcher processRAWFileForLog(String filename, final Classifier classifier,
+                                                       CompiledClassifier compiled, int SAMPLE_RATE,
+                                                       int BUFFER_SIZE, int BUFFER_OVERLAP) {
+        return processRAWFileForLog(filename, classifier, compiled, 0, SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP);
+    }
+
+    /**
+     * @param compiled   the classifier compiled by {@link ModelCompiler#compile(Classifier, Instances)}, or null to
+     *                   classify with Weka
+     * @param numThreads number of threads to classify the frames on, in batches, for offline runs, or 0 to classify
+     *                   each frame inline. The guidance events and the log are the same either way.
+     */
+    public static AudioDispatcher processRAWFileForLog(String filename, final Classifier classifier,
+                                                       CompiledClassifier compiled, int numThreads,
+                                                       int SAMPLE_RATE, int BUFFER_SIZE, int BUFFER_OVERLAP) {
+        return processRAWFileForLog(filename, classifier, compiled, numThreads, null, SAMPLE_RATE, BUFFER_SIZE,
+                BUFFER_OVERLAP);
+    }
+
+    /**
+     * @param compiled   the classifier compiled by {@link ModelCompiler#compile(Classifier, Instances)}, or null to
+     *                   classify with Weka
+     * @param numThreads number of threads to classify the frames on, in batches, for offline runs, or 0 to classify
+     *                   each frame inline. The guidance events and the log are the same either way.
+     * @param metrics    times each stage of the pipeline, or null. Create it with a frame time of (BUFFER_SIZE -
+     *                   BUFFER_OVERLAP) / SAMPLE_RATE.
+     */
+    public static AudioDispatcher processRAWFileForLog(String filename, final Classifier classifier,
+                                                       CompiledClassifier compiled, int numThreads,
+                                                       PipelineMetrics metrics,
+                                                       int SAMPLE_RATE, int BUFFER_SIZE, int BUFFER_OVERLAP) {
+        // Produce a dispatcher
+        AudioDispatcher dispatcher = AudioUtils.audioDispatcherFromFile(new File(filename + ".wav"), SAMPLE_RATE,
+                BUFFER_SIZE, BUFFER_OVERLAP);
+        addLogFileProcessors(dispatcher::addAudioProcessor, filename, classifier, compiled, numThreads, metrics,
+                false, SAMPLE_RATE, BUFFER_SIZE);
+        return dispatcher;
+    }
 
-        BufferedWriter bwLog = null;
+    /**
+     * Writes the same log as {@link #processRAWFileForLog(String, Classifier, CompiledClassifier, int, int, int)},
+     * with the frames processed in stages on threads of their own, see {@link #addStagedLogProcessors}. The log is
+     * written by the time the dispatcher has run.
+     */
+    public static AudioDispatcher processRAWFileForLogInStages(String filename, final Classifier classifier,
+                                                               CompiledClassifier compiled, int SAMPLE_RATE,
+                                                               int BUFFER_SIZE, int BUFFER_OVERLAP) {
+        AudioDispatcher dispatcher = AudioUtils.audioDispatcherFromFile(new File(filename + ".wav"), SAMPLE_RATE,
+                BUFFER_SIZE, BUFFER_OVERLAP);
+        addLogFileProcessors(dispatcher::addAudioProcessor, filename, classifier, compiled, 0, null, true,
+                SAMPLE_RATE, BUFFER_SIZE);
+        return dispatcher;
+    }
+
+    /**
+     * Writes the same log as {@link #processRAWFileForLog(String, Classifier, CompiledClassifier, int, int, int)},
+     * as a pipeline of the scheduler rather than with a dispatcher that needs a thread of its own. The frames are
+     * classified inline.
+     *
+     * @return the pipeline, already running
+     */
+    public static PipelineScheduler.Pipeline processRAWFileForLog(PipelineScheduler scheduler, String filename,
+                                                                  final Classifier classifier,
+                                                                  CompiledClassifier compiled, int SAMPLE_RATE,
+                                                                  int BUFFER_SIZE, int BUFFER_OVERLAP) {
+        TarsosDSPAudioInputStream stream = audioStreamFromFile(new File(filename + ".wav"), SAMPLE_RATE);
+        StreamDispatcher dispatcher = new StreamDispatcher(stream.getFormat(), BUFFER_SIZE, BUFFER_OVERLAP);
+        addLogFileProcessors(dispatcher::addAudioProcessor, filename, classifier, compiled, 0, null, false,
+                SAMPLE_RATE, BUFFER_SIZE);
+        return scheduler.submit(dispatcher, stream);
+    }
+
+    /**
+     * Adds the processors of the log pipeline, writing the frames to filename + " log.csv" in the background, so that
+     * the disk does not hold up the audio. No rows are dropped: the pipeline waits if the writer is a megabyte behind.
+     */
+    private static void addLogFileProcessors(Consumer<AudioProcessor> pipeline, String filename,
+                                             Classifier classifier, CompiledClassifier compiled, int numThreads,
+                                             PipelineMetrics metrics, boolean staged, int SAMPLE_RATE,
+                                             int BUFFER_SIZE) {
+        AsyncRowWriter log = null;
         try {
-            bwLog = new BufferedWriter(new FileWriter(filename + " log.csv", false));
-            bwLog.write(AudioProcessingResult.getLogHeaderString());
-            bwLog.newLine();
+            log = new AsyncRowWriter(filename + " log.csv",
+                    (AudioProcessingResult.getLogHeaderString() + System.lineSeparator()).getBytes(),
+                    ARFFRowEncoder::encodeLogRow, AsyncRowWriter.OverflowPolicy.BLOCK);
         } catch (IOException e) {
             e.printStackTrace();
         }
+        final AsyncRowWriter finalLog = log;
+
+        addLogProcessors(pipeline, frameClassifiers(classifier, compiled, numThreads), numThreads, metrics, staged,
+                SAMPLE_RATE, BUFFER_SIZE, frame -> {
+                    try {
+                        finalLog.write(frame);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }, () -> {
+                    try {
+                        finalLog.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+    }
 
-        // Produce a dispatcher
-        AudioDispatcher dispatcher = AudioUtils.audioDispatcherFromFile(new File(filename + ".wav"), SAMPLE_RATE,
-                BUFFER_SIZE, BUFFER_OVERLAP);
+    /**
+     * @return the {@link FrameClassifier} of each thread classifying frames: over a copy of the model for each worker
+     * thread of a batch, or a single one over the model itself, classifying inline on one thread at a time
+     */
+    private static ThreadLocal<FrameClassifier> frameClassifiers(Classifier classifier, CompiledClassifier compiled,
+                                                                 int numThreads) {
+        return numThreads > 0
+                ? FrameClassifier.copies(classifier, compiled)
+                : FrameClassifier.single(classifier, compiled);
+    }
+
+    /**
+     * Adds the processors of {@link #processRAWFileForLog} to a pipeline: the features, the classifier and the
+     * guidance events of each frame. The frames are handed on in order, complete with their events, e.g. to be
+     * logged.
+     *
+     * @param pipeline         adds a processor to the pipeline, e.g. an {@link AudioDispatcher}'s or a {@link
+     *                         StreamDispatcher}'s addAudioProcessor
+     * @param frameClassifiers the {@link FrameClassifier} of each thread classifying frames, e.g. {@link
+     *                         FrameClassifier#copies} for a pipeline run on several threads in turn, or with worker
+     *                         threads
+     * @param numThreads       number of threads to classify the frames on, in batches, for offline runs, or 0 to
+     *                         classify each frame inline, handing it on before the next one is processed.
+     * @param metrics          times each stage of the pipeline, or null
+     * @param output           receives each frame, classified and with its guidance events
+     * @param finished         run once the pipeline is finished and the last frame has been handed on
+     */
+    public static void addLogProcessors(Consumer<AudioProcessor> pipeline,
+                                        ThreadLocal<FrameClassifier> frameClassifiers, int numThreads,
+                                        PipelineMetrics metrics, int SAMPLE_RATE, int BUFFER_SIZE,
+                                        final Consumer<AudioProcessingResult> output, final Runnable finished) {
+        addLogProcessors(pipeline, frameClassifiers, numThreads, metrics, false, SAMPLE_RATE, BUFFER_SIZE, output,
+                finished);
+    }
+
+    /**
+     * Adds the processors of {@link #processRAWFileForLog} to a pipeline as a {@link StagedPipeline}: the dispatcher's
+     * thread decodes the audio, and the features, the classifier, and the guidance events and output each run on a
+     * thread of their own, a frame apart, so that a live stream has its frames out sooner than on one core. The
+     * frames are handed on in order, on the last stage's thread, the same as from {@link #addLogProcessors}; the
+     * pipeline finishes once they all have been.
+     *
+     * @param pipeline         adds a processor to the pipeline, e.g. an {@link AudioDispatcher}'s or a {@link
+     *                         StreamDispatcher}'s addAudioProcessor
+     * @param frameClassifiers the {@link FrameClassifier} of each thread classifying frames, that of the classifier
+     *                         stage's
+     * @param output           receives each frame, classified and with its guidance events
+     * @param finished         run once the pipeline is finished and the last frame has been handed on
+     */
+    public static void addStagedLogProcessors(Consumer<AudioProcessor> pipeline,
+                                              ThreadLocal<FrameClassifier> frameClassifiers, int SAMPLE_RATE,
+                                              int BUFFER_SIZE, final Consumer<AudioProcessingResult> output,
+                                              final Runnable finished) {
+        addLogProcessors(pipeline, frameClassifiers, 0, null, true, SAMPLE_RATE, BUFFER_SIZE, output, finished);
+    }
+
+    private static void addLogProcessors(Consumer<AudioProcessor> pipeline,
+                                         final ThreadLocal<FrameClassifier> frameClassifiers, int numThreads,
+                                         PipelineMetrics metrics, boolean staged, int SAMPLE_RATE, int BUFFER_SIZE,
+                                         final Consumer<AudioProcessingResult> output, final Runnable finished) {
+        final int numCepstralCoeffs = 13;
+        final int numMelFilters = 40;
+        final float lowerFilterFreq = 64; // Hz
+        final float upperFilterFreq = (float) 4000; // Hz - human frequencies
 
         // The AudioProcessingResult reference object
         final AudioProcessingResult[] apr = new AudioProcessingResult[1];
         VoiceActivityDetector vad = new VoiceActivityDetector(SAMPLE_RATE, BUFFER_SIZE);
 
+        // Run in stages, the features of the audio in the first one
+        final StagedPipeline stages = staged
+                ? new StagedPipeline("Log", SAMPLE_RATE, BUFFER_SIZE, StagedPipeline.DEFAULT_CAPACITY, () -> apr[0])
+                : null;
+        if (stages != null) {
+            pipeline.accept(stages);
+            pipeline = stages::addAudioProcessor;
+        }
+
         // Basics - User, Time and dbSPL.
-        dispatcher.addAudioProcessor(new AudioProcessor() {
+        addAudioProcessor(pipeline, metrics, "VAD", new AudioProcessor() {
             @Override
             public boolean process(AudioEvent audioEvent) {
                 apr[0] = new AudioProcessingResult();
@@ -823,21 +928,47 @@ public class AudioUtils {
                 apr[0].setPitchDetectionResult(pitchDetectionResult);
             }
         };
-        dispatcher.addAudioProcessor(new PitchProcessor(PitchProcessor.PitchEstimationAlgorithm
+        addAudioProcessor(pipeline, metrics, "Pitch", new PitchProcessor(PitchProcessor.PitchEstimationAlgorithm
                 .FFT_YIN, SAMPLE_RATE, BUFFER_SIZE, handler));
 
         // MFCC
         final MFCC mfcc = new MFCC(BUFFER_SIZE, (float) SAMPLE_RATE, numCepstralCoeffs, numMelFilters,
                 lowerFilterFreq, upperFilterFreq);
-        dispatcher.addAudioProcessor(mfcc);
-        final BufferedWriter finalBwLog = bwLog;
-        dispatcher.addAudioProcessor(new AudioProcessor() {
+        addAudioProcessor(pipeline, metrics, "MFCC", mfcc);
+
+        // Guidance Event Monitor and the log, fed the classified frames in order. The log has the events, and the
+        // monitor only keeps the latest turns, so that long recordings take no more memory.
+        final GuidanceEventMonitor guiMon = new GuidanceEventMonitor(null, null);
+        final Consumer<AudioProcessingResult> logFrame = frame -> {
+            if (guiMon.checkResult(frame)) {
+                int[] eventBuffer;
+                if ((eventBuffer = guiMon.getEventsBuffer()) != null) {
+                    frame.setEventBuffer(eventBuffer);
+                }
+            }
+            output.accept(frame);
+        };
+        final BatchFrameClassifier batchClassifier = numThreads > 0
+                ? new BatchFrameClassifier(frameClassifiers, numThreads, CLASSIFICATION_BATCH_SIZE, logFrame)
+                : null;
+
+        final float[] unvoicedMFCC = new float[numCepstralCoeffs];
+        if (stages != null) {
+            addStages(pipeline, stages, apr, mfcc, unvoicedMFCC, BUFFER_SIZE, frameClassifiers, logFrame, () -> {
+                guiMon.close();
+                finished.run();
+            });
+            return;
+        }
+        addAudioProcessor(pipeline, metrics, "Classifier", new AudioProcessor() {
             @Override
             public boolean process(AudioEvent audioEvent) {
                 apr[0].setMFCC(
-                        apr[0].isVoiced() ? mfcc.getMFCC() : new float[13]
+                        apr[0].isVoiced() ? mfcc.getMFCC() : unvoicedMFCC
                 );
-                apr[0].setUser(apr[0].runClassifier(classifier));
+                if (batchClassifier == null) {
+                    frameClassifiers.get().classify(apr[0]);
+                }
                 return true;
             }
 
@@ -852,58 +983,80 @@ public class AudioUtils {
             @Override
             public void handleOnset(double time, double salience) {
                 if (apr[0].isVoiced())
-                    apr[0].addOnset(new Onset(time, salience));
+                    apr[0].addOnset(time, salience);
             }
         };
         ComplexOnsetDetector onsetDetector = new ComplexOnsetDetector(BUFFER_SIZE, 0.2, 0.002, -90);
         onsetDetector.setHandler(onsetHandler);
-        dispatcher.addAudioProcessor(onsetDetector);
+        addAudioProcessor(pipeline, metrics, "Onsets", onsetDetector);
 
-        // Guidance Event Monitor
-        final GuidanceEventMonitor guiMon = new GuidanceEventMonitor();
-        dispatcher.addAudioProcessor(new AudioProcessor() {
+        // Guidance events and the log, once the frame is complete, or classify it in a batch and leave them until
+        // its batch is done
+        addAudioProcessor(pipeline, metrics, "Guidance and log", new AudioProcessor() {
             @Override
             public boolean process(AudioEvent audioEvent) {
-                if (guiMon.checkResult(apr[0])) {
-                    int[] eventBuffer;
-                    if ((eventBuffer = guiMon.getEventsBuffer()) != null) {
-                        apr[0].setEventBuffer(eventBuffer);
-                    }
+                if (batchClassifier == null) {
+                    logFrame.accept(apr[0]);
+                } else {
+                    batchClassifier.add(apr[0]);
                 }
                 return true;
             }
 
             @Override
             public void processingFinished() {
-
+                if (batchClassifier != null) {
+                    batchClassifier.finish();
+                }
+                guiMon.close();
+                finished.run();
             }
         });
+    }
 
-        // write out the files, ARFF and Log
-        dispatcher.addAudioProcessor(new AudioProcessor() {
+    /**
+     * Adds the rest of the staged log pipeline: the MFCCs and the onsets to the audio stage, then the classifier, and
+     * the guidance events and output, as stages of their own.
+     */
+    private static void addStages(Consumer<AudioProcessor> audioStage, StagedPipeline stages,
+                                  final AudioProcessingResult[] apr, final MFCC mfcc, final float[] unvoicedMFCC,
+                                  int BUFFER_SIZE, ThreadLocal<FrameClassifier> frameClassifiers,
+                                  Consumer<AudioProcessingResult> logFrame, Runnable finished) {
+        audioStage.accept(new AudioProcessor() {
             @Override
             public boolean process(AudioEvent audioEvent) {
-                try {
-//                    AudioUtils.writeAudioProcessingResultToFile(finalBw, finalBwLog, apr[0]);
-                    finalBwLog.write(apr[0].getLogString());
-                    finalBwLog.newLine();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                apr[0].setMFCC(
+                        apr[0].isVoiced() ? mfcc.getMFCC() : unvoicedMFCC
+                );
                 return true;
             }
 
             @Override
             public void processingFinished() {
-                try {
-                    finalBwLog.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+
             }
         });
 
-        return dispatcher;
+        ComplexOnsetDetector onsetDetector = new ComplexOnsetDetector(BUFFER_SIZE, 0.2, 0.002, -90);
+        onsetDetector.setHandler(new OnsetHandler() {
+            @Override
+            public void handleOnset(double time, double salience) {
+                if (apr[0].isVoiced())
+                    apr[0].addOnset(time, salience);
+            }
+        });
+        audioStage.accept(onsetDetector);
+
+        stages.addStage("Classifier", frame -> frameClassifiers.get().classify(frame), null);
+        stages.addStage("Guidance and log", logFrame, finished);
+    }
+
+    /**
+     * Adds the processor to the pipeline, timed as a stage of it if there are metrics.
+     */
+    private static void addAudioProcessor(Consumer<AudioProcessor> pipeline, PipelineMetrics metrics, String stage,
+                                          AudioProcessor processor) {
+        pipeline.accept(metrics == null ? processor : metrics.wrap(stage, processor));
     }
 
     public static void blockTillThreadsFinish(ArrayList<Thread> threads) {
@@ -918,27 +1071,17 @@ public class AudioUtils {
 
     public static void mergeFiles(String filepath, String mergedFile, String... filesToMerge) {
         try {
-            BufferedWriter bw = new BufferedWriter(new FileWriter(filepath + mergedFile + ".arff", false));
-
-            bw.write(AudioUtils.getARFFHeader(mergedFile));
+            ARFFFeatureWriter writer = new ARFFFeatureWriter(filepath + mergedFile + ".arff", mergedFile);
 
             // loop over each file
             for (String file : filesToMerge) {
-                BufferedReader br = new BufferedReader(new FileReader(filepath + file + ".arff"));
-
-                AudioUtils.skipToARFFData(br);
-
-                String str;
-                while ((str = br.readLine()) != null) {
-                    bw.write(str);
-                    bw.newLine();
-                }
-
-                br.close(); // close this BufferedReader
+                ARFFDataCursor cursor = new ARFFDataCursor(filepath + file + ".arff");
+                writer.writeData(cursor);
+                cursor.close(); // close this cursor
             }
 
             // finish off FileIOs
-            bw.close();
+            writer.close();
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -0,0 +1,323 @@
+import be.tarsos.dsp.AudioDispatcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Extracts features for a whole cohort of participants on one bounded pool of worker threads.
+ * <p>
+ * Every (participant, role) WAV file is a separate task on the pool, so a slow file only holds up its own
+ * participant's merge. The {@link AudioUtils#writeUsersToRaw} merge of a participant runs as a dependent stage as
+ * soon as its child, adult and raw files are done.
+ * <p>
+ * Given a {@link FeatureCache}, a file whose features were extracted before, from the same audio with the same
+ * parameters, has its ARFF file written from the rows in the cache, under a header of its own, rather than
+ * extracted again.
+ * <p>
+ * A sweep extracts the features of every file with several {@link Configuration}s, e.g. buffer sizes and overlaps.
+ * Each file is read and decoded once, into a {@link DecodedAudio} that the configurations then frame and extract
+ * features from at the same time, each a task of its own, so the sweep costs the extra feature computation rather
+ * than reading and decoding every file again for each configuration. At most as many files as there are worker
+ * threads are decoded at a time: the next file is only submitted once every configuration of one of them is done,
+ * as an hour of decoded audio takes 115 MB.
+ */
+public class BatchFeatureExtractor {
+    /**
+     * The parameters of a feature extraction in a sweep, and the String appended to the file names of its outputs.
+     */
+    public static class Configuration {
+        final String append;
+        final int BUFFER_SIZE, BUFFER_OVERLAP, numCepstralCoeffs, numMelFilters;
+        final float lowerFilterFreq, upperFilterFreq;
+
+        /**
+         * A configuration whose outputs are named by buffer size and overlap, e.g. P01-C_160_80.arff, as in the
+         * experiments.
+         */
+        public Configuration(int BUFFER_SIZE, int BUFFER_OVERLAP, int numCepstralCoeffs, int numMelFilters,
+                             float lowerFilterFreq, float upperFilterFreq) {
+            this("_" + BUFFER_SIZE + "_" + BUFFER_OVERLAP, BUFFER_SIZE, BUFFER_OVERLAP, numCepstralCoeffs,
+                    numMelFilters, lowerFilterFreq, upperFilterFreq);
+        }
+
+        /**
+         * @param append String to append to filename to indicate different runs for experiments, one per
+         *               configuration
+         */
+        public Configuration(String append, int BUFFER_SIZE, int BUFFER_OVERLAP, int numCepstralCoeffs,
+                             int numMelFilters, float lowerFilterFreq, float upperFilterFreq) {
+            this.append = append;
+            this.BUFFER_SIZE = BUFFER_SIZE;
+            this.BUFFER_OVERLAP = BUFFER_OVERLAP;
+            this.numCepstralCoeffs = numCepstralCoeffs;
+            this.numMelFilters = numMelFilters;
+            this.lowerFilterFreq = lowerFilterFreq;
+            this.upperFilterFreq = upperFilterFreq;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final int numThreads;
+    private final FeatureCache cache;
+    private final Semaphore decodedFiles;   // a permit for each file of a sweep that may be decoded at a time
+
+    // throughput
+    private final AtomicLong filesProcessed = new AtomicLong();
+    private final DoubleAdder audioSecondsProcessed = new DoubleAdder();
+
+    /**
+     * Creates an extractor with one worker thread per available processor.
+     */
+    public BatchFeatureExtractor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchFeatureExtractor(int numThreads) {
+        this(numThreads, null);
+    }
+
+    /**
+     * @param cache the features extracted before, or null to extract every file
+     */
+    public BatchFeatureExtractor(int numThreads, FeatureCache cache) {
+        this.numThreads = numThreads;
+        this.executor = Executors.newFixedThreadPool(numThreads);
+        this.cache = cache;
+        this.decodedFiles = new Semaphore(numThreads);
+    }
+
+    /**
+     * Processes all the participants and blocks until every ARFF file, including the merged raw files, has been
+     * written. Prints the throughput once done.
+     *
+     * @param filepath path of the WAV files, the ARFF files are written next to them
+     * @param pids     participant IDs, e.g. "P01"
+     * @param append   String to append to filename to indicate different runs for experiments
+     */
+    public void processParticipants(String filepath, String[] pids, String append,
+            int SAMPLE_RATE, int BUFFER_SIZE, int BUFFER_OVERLAP,
+            int numCepstralCoeffs, int numMelFilters, float lowerFilterFreq, float upperFilterFreq) {
+        long startTime = System.nanoTime();
+        filesProcessed.set(0);
+        audioSecondsProcessed.reset();
+
+        List<CompletableFuture<Void>> merges = new ArrayList<>();
+        for (String pid : pids) {
+            String fChild = filepath + pid + "-C";
+            String fAdult = filepath + pid + "-A";
+            String fRaw = filepath + pid + "raw";
+
+            // Process the triad of files
+            CompletableFuture<Void> child = submit(fChild, append, SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP,
+                    numCepstralCoeffs, numMelFilters, lowerFilterFreq, upperFilterFreq, User.CHILD);
+            CompletableFuture<Void> adult = submit(fAdult, append, SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP,
+                    numCepstralCoeffs, numMelFilters, lowerFilterFreq, upperFilterFreq, User.ADULT);
+            CompletableFuture<Void> raw = submit(fRaw, append, SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP,
+                    numCepstralCoeffs, numMelFilters, lowerFilterFreq, upperFilterFreq, User.NONE);
+
+            // overwrite the "raw" file with the values from "child" and "adult" once all three are written
+            merges.add(CompletableFuture.allOf(child, adult, raw).thenRunAsync(
+                    () -> AudioUtils.writeUsersToRaw(fChild + append, fAdult + append, fRaw + append), executor));
+        }
+
+        // Block till all the merges finish
+        for (CompletableFuture<Void> merge : merges) {
+            try {
+                merge.join();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+
+        double elapsed = (System.nanoTime() - startTime) / 1e9;
+        System.out.println(getThroughputString(elapsed));
+    }
+
+    /**
+     * Processes all the participants with every configuration, reading and decoding each WAV file once, and blocks
+     * until every ARFF file, including the merged raw files, has been written. Prints the throughput once done.
+     *
+     * @param filepath       path of the WAV files, the ARFF files are written next to them
+     * @param pids           participant IDs, e.g. "P01"
+     * @param configurations the parameters of each extraction, with a different append each
+     */
+    public void processParticipants(String filepath, String[] pids, int SAMPLE_RATE,
+            List<Configuration> configurations) {
+        long startTime = System.nanoTime();
+        filesProcessed.set(0);
+        audioSecondsProcessed.reset();
+
+        List<CompletableFuture<Void>> merges = new ArrayList<>();
+        for (String pid : pids) {
+            String fChild = filepath + pid + "-C";
+            String fAdult = filepath + pid + "-A";
+            String fRaw = filepath + pid + "raw";
+
+            // Process the triad of files, with every configuration
+            List<CompletableFuture<Void>> child = submit(fChild, SAMPLE_RATE, configurations, User.CHILD);
+            List<CompletableFuture<Void>> adult = submit(fAdult, SAMPLE_RATE, configurations, User.ADULT);
+            List<CompletableFuture<Void>> raw = submit(fRaw, SAMPLE_RATE, configurations, User.NONE);
+
+            // overwrite each "raw" file with the values from "child" and "adult" once all three are written
+            for (int i = 0; i < configurations.size(); i++) {
+                String append = configurations.get(i).append;
+                merges.add(CompletableFuture.allOf(child.get(i), adult.get(i), raw.get(i)).thenRunAsync(
+                        () -> AudioUtils.writeUsersToRaw(fChild + append, fAdult + append, fRaw + append),
+                        executor));
+            }
+        }
+
+        // Block till all the merges finish
+        for (CompletableFuture<Void> merge : merges) {
+            try {
+                merge.join();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+
+        double elapsed = (System.nanoTime() - startTime) / 1e9;
+        System.out.println(getThroughputString(elapsed));
+    }
+
+    /**
+     * Decodes a WAV file, unless the cache has its features with every configuration, then extracts the features
+     * with each configuration the cache does not have, as a task of its own.
+     *
+     * Waits for a permit to decode the file, given back once every configuration is done.
+     *
+     * @return a future of the ARFF file of each configuration, failed if the file cannot be read and decoded
+     */
+    private List<CompletableFuture<Void>> submit(String inputFilename, int SAMPLE_RATE,
+            List<Configuration> configurations, User user) {
+        decodedFiles.acquireUninterruptibly();
+        final String[] keys = new String[configurations.size()];
+        final boolean[] cached = new boolean[configurations.size()];
+        CompletableFuture<DecodedAudio> decoded = CompletableFuture.supplyAsync(() -> {
+            boolean extract = cache == null;
+            if (cache != null) {
+                try {
+                    byte[] audioHash = FeatureCache.hash(new File(inputFilename + ".wav"));
+                    for (int i = 0; i < configurations.size(); i++) {
+                        Configuration c = configurations.get(i);
+                        keys[i] = cache.key(audioHash, ".arff", user, SAMPLE_RATE, c.BUFFER_SIZE, c.BUFFER_OVERLAP,
+                                c.numCepstralCoeffs, c.numMelFilters, c.lowerFilterFreq, c.upperFilterFreq);
+                        cached[i] = cache.get(keys[i], inputFilename + c.append + ".arff",
+                                AudioUtils.getARFFHeader(inputFilename));
+                        extract |= !cached[i];
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    extract = true;
+                }
+            }
+            if (!extract) {
+                return null;
+            }
+
+            try {
+                return DecodedAudio.read(new File(inputFilename + ".wav"), SAMPLE_RATE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);  // fails every configuration, and with them the merges
+            }
+        }, executor);
+
+        List<CompletableFuture<Void>> extracted = new ArrayList<>();
+        for (int i = 0; i < configurations.size(); i++) {
+            final int configuration = i;
+            extracted.add(decoded.thenAcceptAsync(audio -> {
+                if (cached[configuration]) {
+                    return;
+                }
+                Configuration c = configurations.get(configuration);
+                DecodedAudio.Dispatcher dispatcher = WAVProcessor.featureDispatcher(audio, inputFilename, c.append,
+                        SAMPLE_RATE, c.BUFFER_SIZE, c.BUFFER_OVERLAP, c.numCepstralCoeffs, c.numMelFilters,
+                        c.lowerFilterFreq, c.upperFilterFreq, user);
+                dispatcher.run();
+
+                filesProcessed.incrementAndGet();
+                audioSecondsProcessed.add(dispatcher.secondsProcessed());
+
+                if (keys[configuration] != null) {
+                    try {
+                        cache.put(keys[configuration], inputFilename + c.append + ".arff");
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(extracted.toArray(new CompletableFuture[0]))
+                .whenComplete((done, failure) -> decodedFiles.release());
+        return extracted;
+    }
+
+    private CompletableFuture<Void> submit(String inputFilename, String append,
+            int SAMPLE_RATE, int BUFFER_SIZE, int BUFFER_OVERLAP,
+            int numCepstralCoeffs, int numMelFilters, float lowerFilterFreq, float upperFilterFreq, User user) {
+        return CompletableFuture.runAsync(() -> {
+            String arffFile = inputFilename + append + ".arff";
+            String key = null;
+            if (cache != null) {
+                try {
+                    key = cache.key(inputFilename, ".arff", user, SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP,
+                            numCepstralCoeffs, numMelFilters, lowerFilterFreq, upperFilterFreq);
+                    if (cache.get(key, arffFile, AudioUtils.getARFFHeader(inputFilename))) {
+                        return;
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            AudioDispatcher dispatcher = WAVProcessor.featureDispatcher(inputFilename, append, SAMPLE_RATE,
+                    BUFFER_SIZE, BUFFER_OVERLAP, numCepstralCoeffs, numMelFilters, lowerFilterFreq,
+                    upperFilterFreq, user);
+            dispatcher.run();
+
+            filesProcessed.incrementAndGet();
+            audioSecondsProcessed.add(dispatcher.secondsProcessed());
+
+            if (key != null) {
+                try {
+                    cache.put(key, arffFile);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, executor);
+    }
+
+    /**
+     * @param elapsed wall clock time in seconds
+     * @return the number of files and seconds of audio processed, in total and per second of wall clock time, and
+     * the files found in the cache.
+     */
+    public String getThroughputString(double elapsed) {
+        long files = filesProcessed.get();
+        double audioSeconds = audioSecondsProcessed.sum();
+        String throughput = String.format(
+                "%d files, %.1f s of audio in %.1f s on %d threads: %.2f files/s, %.1f audio-s/s", files,
+                audioSeconds, elapsed, numThreads, files / elapsed, audioSeconds / elapsed);
+        if (cache != null) {
+            throughput += String.format(", %d files cached", cache.getHits());
+        }
+        return throughput;
+    }
+
+    /**
+     * Stops the worker threads. The extractor cannot be used afterwards.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,116 @@
+import weka.classifiers.Classifier;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Classifies frames in batches on a pool of worker threads, for offline runs, and hands them on in order.
+ * <p>
+ * Frames are added one by one, e.g. from the last processor of a dispatcher, and submitted a batch at a time. The
+ * batches are classified concurrently, each worker with a {@link FrameClassifier} of its own over its own copy of the
+ * model, as Weka models are not safe to share between threads. A compiled model is shared, as it is immutable. The
+ * classified frames are passed to the consumer in the order they were added, always on the thread that adds them,
+ * so that the consumer, e.g. a {@link GuidanceEventMonitor}, sees the same sequence as when classifying inline.
+ * At most a few batches per worker are in flight; adding a frame waits for the oldest batch beyond that.
+ */
+public class BatchFrameClassifier {
+    private final ExecutorService executor;
+    private final ThreadLocal<FrameClassifier> frameClassifiers;
+    private final Consumer<AudioProcessingResult> consumer;
+    private final int batchSize;
+    private final int maxPendingBatches;
+
+    private final ArrayDeque<Future<List<AudioProcessingResult>>> pending = new ArrayDeque<>();
+    private List<AudioProcessingResult> batch;
+
+    /**
+     * @param classifier the model, copied for each worker thread
+     * @param compiled   the model compiled by {@link ModelCompiler#compile(Classifier, weka.core.Instances)}, or null
+     *                   to only use Weka
+     * @param numThreads number of worker threads
+     * @param batchSize  number of frames submitted together
+     * @param consumer   receives the classified frames in order
+     */
+    public BatchFrameClassifier(Classifier classifier, CompiledClassifier compiled, int numThreads, int batchSize,
+                                Consumer<AudioProcessingResult> consumer) {
+        this(FrameClassifier.copies(classifier, compiled), numThreads, batchSize, consumer);
+    }
+
+    /**
+     * @param frameClassifiers the {@link FrameClassifier} of each thread, over a model of its own, e.g. {@link
+     *                         FrameClassifier#copies}
+     */
+    public BatchFrameClassifier(ThreadLocal<FrameClassifier> frameClassifiers, int numThreads, int batchSize,
+                                Consumer<AudioProcessingResult> consumer) {
+        this.executor = Executors.newFixedThreadPool(numThreads);
+        this.frameClassifiers = frameClassifiers;
+        this.consumer = consumer;
+        this.batchSize = batchSize;
+        this.maxPendingBatches = 2 * numThreads;
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Adds a frame to be classified. It must not be changed afterwards. Hands on the frames of the batches finished
+     * so far.
+     *
+     * @param frame a frame with its start time, dbSPL, pitch and MFCCs set.
+     */
+    public void add(AudioProcessingResult frame) {
+        batch.add(frame);
+        if (batch.size() == batchSize) {
+            submit();
+        }
+        consume(pending.size() > maxPendingBatches);
+    }
+
+    /**
+     * Classifies and hands on the frames still to go, then stops the worker threads. The classifier cannot be used
+     * afterwards.
+     */
+    public void finish() {
+        if (!batch.isEmpty()) {
+            submit();
+        }
+        while (!pending.isEmpty()) {
+            consume(true);
+        }
+        executor.shutdown();
+    }
+
+    private void submit() {
+        final List<AudioProcessingResult> frames = batch;
+        pending.add(executor.submit(() -> {
+            FrameClassifier frameClassifier = frameClassifiers.get();
+            for (AudioProcessingResult frame : frames) {
+                frameClassifier.classify(frame);
+            }
+            return frames;
+        }));
+        batch = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Hands on the frames of the oldest batches that are finished.
+     *
+     * @param wait whether to wait for the oldest batch
+     */
+    private void consume(boolean wait) {
+        while (!pending.isEmpty() && (wait || pending.peek().isDone())) {
+            try {
+                for (AudioProcessingResult frame : pending.poll().get()) {
+                    consumer.accept(frame);
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
+            wait = false;
+        }
+    }
+}
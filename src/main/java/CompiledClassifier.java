@@ -0,0 +1,202 @@
+/**
+ * A Weka model flattened into primitive arrays, evaluated directly on the attribute values of an instance.
+ * <p>
+ * Built by {@link ModelCompiler}. Each evaluator repeats the arithmetic of the Weka model it was compiled from, in
+ * the same order, so that it predicts the same class: the class index, or NaN where Weka's classifyInstance would
+ * return a missing value. The values must not be missing, instances with missing values are left to Weka. An
+ * instance is immutable and can be shared between threads.
+ */
+public abstract class CompiledClassifier {
+    /**
+     * @param values the attribute values of an instance, class included, none missing
+     * @return the index of the predicted class, or NaN if there is none
+     */
+    public abstract double classify(double[] values);
+
+    /**
+     * The class with the highest probability, as Weka's AbstractClassifier picks it from a distribution.
+     */
+    static double maxIndex(double[] distribution) {
+        double max = 0;
+        int maxIndex = 0;
+        for (int i = 0; i < distribution.length; i++) {
+            if (distribution[i] > max) {
+                maxIndex = i;
+                max = distribution[i];
+            }
+        }
+        return max > 0 ? maxIndex : Double.NaN;
+    }
+
+    /**
+     * Divides by the sum, as Weka's Utils.normalize.
+     */
+    static void normalize(double[] distribution) {
+        double sum = 0;
+        for (double value : distribution) {
+            sum += value;
+        }
+        for (int i = 0; i < distribution.length; i++) {
+            distribution[i] /= sum;
+        }
+    }
+
+    /**
+     * Decision trees, one or more, in node arrays.
+     * <p>
+     * Node i of a tree either splits on attribute[i], going to left[i] if the value is below split[i] and to
+     * right[i] otherwise, or is a leaf, attribute[i] == -1, with the class distribution at leaf[i]. The class is that
+     * of the sum of the leaf distributions over all trees.
+     */
+    static final class TreeEnsemble extends CompiledClassifier {
+        private final int[][] attribute, left, right, leaf;
+        private final double[][] split;
+        private final double[][] leafDistributions;
+        private final boolean inclusive, normalizeSum;
+        private final int numClasses;
+
+        /**
+         * @param inclusive    whether values up to 1e-6 above the split point go left too, as in J48's C45Split
+         * @param normalizeSum whether the summed distribution is normalized before picking the class, as Bagging
+         *                     does
+         */
+        TreeEnsemble(int[][] attribute, double[][] split, int[][] left, int[][] right, int[][] leaf,
+                     double[][] leafDistributions, boolean inclusive, boolean normalizeSum, int numClasses) {
+            this.attribute = attribute;
+            this.split = split;
+            this.left = left;
+            this.right = right;
+            this.leaf = leaf;
+            this.leafDistributions = leafDistributions;
+            this.inclusive = inclusive;
+            this.normalizeSum = normalizeSum;
+            this.numClasses = numClasses;
+        }
+
+        @Override
+        public double classify(double[] values) {
+            double[] sums = new double[numClasses];
+            for (int t = 0; t < attribute.length; t++) {
+                int[] attributes = attribute[t], lefts = left[t], rights = right[t];
+                double[] splits = split[t];
+                int node = 0;
+                while (attributes[node] >= 0) {
+                    double value = values[attributes[node]];
+                    boolean goLeft = inclusive ? value - splits[node] < 1e-6 || value <= splits[node]
+                            : value < splits[node];
+                    node = goLeft ? lefts[node] : rights[node];
+                }
+                double[] distribution = leafDistributions[leaf[t][node]];
+                for (int j = 0; j < numClasses; j++) {
+                    sums[j] += distribution[j];
+                }
+            }
+            if (normalizeSum && Math.abs(sumOf(sums)) >= 1e-6) {
+                normalize(sums);
+            }
+            return maxIndex(sums);
+        }
+
+        private static double sumOf(double[] values) {
+            double sum = 0;
+            for (double value : values) {
+                sum += value;
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Multinomial logistic regression, as Weka's Logistic: one weight vector per class but the last, the intercept
+     * first, over the attributes but the class.
+     */
+    static final class LogisticRegression extends CompiledClassifier {
+        private final double[][] weights;   // [predictor + 1][class], as Logistic's parameters
+        private final int classIndex;
+        private final int numClasses;
+
+        LogisticRegression(double[][] weights, int classIndex, int numClasses) {
+            this.weights = weights;
+            this.classIndex = classIndex;
+            this.numClasses = numClasses;
+        }
+
+        @Override
+        public double classify(double[] values) {
+            double[] v = new double[numClasses], probabilities = new double[numClasses];
+
+            // log-posterior before normalizing; predictor 0 is the intercept
+            for (int j = 0; j < numClasses - 1; j++) {
+                v[j] += weights[0][j];
+                for (int k = 0, p = 1; k < values.length; k++) {
+                    if (k != classIndex) {
+                        v[j] += weights[p++][j] * values[k];
+                    }
+                }
+            }
+            for (int m = 0; m < numClasses; m++) {
+                double sum = 0;
+                for (int n = 0; n < numClasses - 1; n++) {
+                    sum += Math.exp(v[n] - v[m]);
+                }
+                probabilities[m] = 1 / (sum + Math.exp(-v[m]));
+            }
+            return maxIndex(probabilities);
+        }
+    }
+
+    /**
+     * Linear support vector machines, one per pair of classes voting for either, as Weka's SMO with a linear
+     * kernel. The values are first scaled as its filter does: (value - center[k]) / divisor[k] * factor + translation,
+     * or 0 for the attributes its filter zeroes.
+     */
+    static final class PairwiseLinear extends CompiledClassifier {
+        private final double[] center, divisor;
+        private final boolean[] zero;
+        private final double factor, translation;
+        private final int[] firstClass, secondClass;    // the two classes of each machine
+        private final int[][] indices;                  // attributes with a weight, ascending
+        private final double[][] weights;
+        private final double[] bias;
+        private final int numClasses;
+
+        PairwiseLinear(double[] center, double[] divisor, boolean[] zero, double factor, double translation,
+                       int[] firstClass, int[] secondClass, int[][] indices, double[][] weights, double[] bias,
+                       int numClasses) {
+            this.center = center;
+            this.divisor = divisor;
+            this.zero = zero;
+            this.factor = factor;
+            this.translation = translation;
+            this.firstClass = firstClass;
+            this.secondClass = secondClass;
+            this.indices = indices;
+            this.weights = weights;
+            this.bias = bias;
+            this.numClasses = numClasses;
+        }
+
+        @Override
+        public double classify(double[] values) {
+            double[] votes = new double[numClasses];
+            for (int m = 0; m < bias.length; m++) {
+                int[] attributes = indices[m];
+                double[] w = weights[m];
+                double output = 0;
+                for (int p = 0; p < attributes.length; p++) {
+                    int k = attributes[p];
+                    double value = zero[k] ? 0 : (values[k] - center[k]) / divisor[k] * factor + translation;
+                    output += value * w[p];
+                }
+                output -= bias[m];
+                if (output > 0) {
+                    votes[secondClass[m]] += 1;
+                } else {
+                    votes[firstClass[m]] += 1;
+                }
+            }
+            normalize(votes);
+            return maxIndex(votes);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The samples of a whole WAV file, read and decoded once, so that several pipelines can frame the same audio, e.g.
+ * with each buffer size and overlap of a parameter sweep, without each reading and decoding the file again.
+ * <p>
+ * The samples are only read once decoded, so any number of {@link Dispatcher}s can frame them at once, on threads of
+ * their own. Each gives its processors the frames, time stamps and overlaps an {@link be.tarsos.dsp.AudioDispatcher}
+ * would give for the file, including the zero padded last frame. At 4 bytes a sample, an hour at 8 kHz takes 115 MB.
+ */
+public class DecodedAudio {
+    private static final int CHUNK_FRAMES = 1 << 16;   // sample frames decoded at a time
+
+    private final TarsosDSPAudioFormat format;
+    private final float[] samples;
+    private final float silence;    // the sample of zero bytes, which pad the last frame
+
+    private DecodedAudio(TarsosDSPAudioFormat format, float[] samples) {
+        this.format = format;
+        this.samples = samples;
+        float[] zero = new float[1];
+        TarsosDSPAudioFloatConverter.getConverter(format).toFloatArray(new byte[format.getFrameSize()], zero, 1);
+        this.silence = zero[0];
+    }
+
+    /**
+     * Reads and decodes a WAV file.
+     *
+     * @param audioFile  the WAV file
+     * @param sampleRate sample rate expected, warned about if the file's differs
+     * @throws IOException if the file cannot be read
+     */
+    public static DecodedAudio read(File audioFile, int sampleRate) throws IOException {
+        TarsosDSPAudioInputStream stream = AudioUtils.audioStreamFromFile(audioFile, sampleRate);
+        if (stream == null) {
+            throw new IOException("Cannot read " + audioFile);
+        }
+        try {
+            TarsosDSPAudioFormat format = stream.getFormat();
+            if (stream.getFrameLength() > Integer.MAX_VALUE) {
+                throw new IOException(audioFile + " has too many samples to decode at once");
+            }
+            TarsosDSPAudioFloatConverter converter = TarsosDSPAudioFloatConverter.getConverter(format);
+            float[] samples = new float[(int) stream.getFrameLength()];
+            byte[] chunk = new byte[CHUNK_FRAMES * format.getFrameSize()];
+            int decoded = 0;
+            while (decoded < samples.length) {
+                int frames = Math.min(CHUNK_FRAMES, samples.length - decoded);
+                int length = frames * format.getFrameSize();
+                for (int offset = 0; offset < length; ) {
+                    int read = stream.read(chunk, offset, length - offset);
+                    if (read == -1) {
+                        throw new IOException("Unexpected end of " + audioFile);
+                    }
+                    offset += read;
+                }
+                converter.toFloatArray(chunk, 0, samples, decoded, frames);
+                decoded += frames;
+            }
+            return new DecodedAudio(format, samples);
+        } finally {
+            stream.close();
+        }
+    }
+
+    public TarsosDSPAudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the number of samples
+     */
+    public int getLength() {
+        return samples.length;
+    }
+
+    /**
+     * @param bufferSize    samples per frame
+     * @param bufferOverlap samples that each frame overlaps the previous one
+     * @return a dispatcher of the frames of the audio, with no processors yet, not yet run
+     */
+    public Dispatcher dispatcher(int bufferSize, int bufferOverlap) {
+        return new Dispatcher(bufferSize, bufferOverlap);
+    }
+
+    /**
+     * Dispatches the frames of the decoded audio to processors when run, as an {@link be.tarsos.dsp.AudioDispatcher}
+     * does those it reads from a stream. Each dispatcher frames the audio into a buffer of its own.
+     */
+    public class Dispatcher implements Runnable {
+        private final List<AudioProcessor> audioProcessors = new ArrayList<>();
+        private final int bufferSize, bufferOverlap;
+        private long bytesProcessed = 0;
+
+        private Dispatcher(int bufferSize, int bufferOverlap) {
+            this.bufferSize = bufferSize;
+            this.bufferOverlap = bufferOverlap;
+        }
+
+        public void addAudioProcessor(AudioProcessor audioProcessor) {
+            audioProcessors.add(audioProcessor);
+        }
+
+        /**
+         * Processes every frame, then tells the processors that processing is finished.
+         */
+        @Override
+        public void run() {
+            int stepSize = bufferSize - bufferOverlap;
+            float[] buffer = new float[bufferSize];
+            AudioEvent audioEvent = new AudioEvent(format);
+            audioEvent.setFloatBuffer(buffer);
+
+            // the first frame is read whole, later ones a step at a time, as long as the step has a sample
+            for (int start = 0; start == 0 ? samples.length > 0 : start + bufferOverlap < samples.length;
+                 start += stepSize) {
+                int count = Math.min(bufferSize, samples.length - start);
+                System.arraycopy(samples, start, buffer, 0, count);
+                if (start == 0 && count < bufferSize) {
+                    // as the AudioDispatcher does, only a step is converted of a short first frame, the rest left 0
+                    for (int i = Math.min(count, stepSize); i < bufferSize; i++) {
+                        buffer[i] = i < stepSize ? silence : 0;
+                    }
+                } else {
+                    for (int i = count; i < bufferSize; i++) {
+                        buffer[i] = silence;
+                    }
+                }
+
+                audioEvent.setOverlap(start == 0 ? 0 : bufferOverlap);
+                audioEvent.setBytesProcessed(bytesProcessed);
+                for (AudioProcessor processor : audioProcessors) {
+                    if (!processor.process(audioEvent)) {
+                        break;
+                    }
+                }
+                bytesProcessed += (long) (start == 0 ? count : count - bufferOverlap) * format.getFrameSize();
+            }
+
+            for (AudioProcessor processor : audioProcessors) {
+                processor.processingFinished();
+            }
+        }
+
+        /**
+         * @return the seconds of audio processed, as an AudioDispatcher counts them: the first frame and a step for
+         * each frame after it, of the samples read
+         */
+        public double secondsProcessed() {
+            return (double) bytesProcessed / format.getFrameSize() / format.getSampleRate();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Streaming delta / delta-delta MFCC engine backed by a fixed-capacity primitive ring buffer.
+ * <p>
+ * This replaces the sliding {@code ArrayList<AudioProcessingResult>} window in
+ * {@link WAVProcessor#processWAVFileForFeatures} that was fed to {@link AudioUtils#computeDeltaMFCC}. Every frame
+ * has its dMFCC computed exactly once, as soon as its N look-ahead frames are in, and its ddMFCC once its 2N
+ * look-ahead frames are in. Nothing is allocated after construction.
+ * <p>
+ * The numbers are identical to the ArrayList window: the first frame is treated as if it was repeated 2N times
+ * before the start of the recording (the START case in the old code) and the last frame as if it was repeated 2N
+ * times after the end (the old {@code processingFinished()}), and the regression is summed in the same order as
+ * {@link AudioUtils#computeRegDelta(float[])}.
+ */
+public class DeltaMFCCBuffer {
+    private final int N;            // regression half-width, default: 2
+    private final int numCoeffs;    // cepstral coefficients per frame, including the 1st (power) coefficient
+    private final int numDeltas;    // numCoeffs - 1, the 1st coefficient is not differentiated
+    private final int capacity;     // 4N + 1 frames, the same as the old sliding window
+
+    // ring storage, frame at position p lives in slot (p mod capacity)
+    private final float[] mfccRing;
+    private final float[] dmfccRing;
+    private final float[] startTimeRing;
+    private final User[] userRing;
+
+    // position of the most recent frame pushed, -1 when empty
+    private long last = -1;
+    // position of the next frame to be written out
+    private long next = 0;
+    // positions after this are padding copies of the last frame
+    private long end = Long.MAX_VALUE;
+
+    // the output frame, reused for every frame written out
+    private final float[] outMFCC;
+    private final float[] outDMFCC;
+    private final float[] outDDMFCC;
+    private final AudioProcessingResult outFrame = new AudioProcessingResult();
+
+    /**
+     * @param numCoeffs Number of cepstral coefficients per frame, including the 1st coefficient.
+     */
+    public DeltaMFCCBuffer(int numCoeffs) {
+        this(numCoeffs, 2);
+    }
+
+    /**
+     * @param numCoeffs Number of cepstral coefficients per frame, including the 1st coefficient.
+     * @param N         Half-width of the regression window. The delta-delta of a frame needs 2N frames of context
+     *                  on each side.
+     */
+    public DeltaMFCCBuffer(int numCoeffs, int N) {
+        this.N = N;
+        this.numCoeffs = numCoeffs;
+        this.numDeltas = numCoeffs - 1;
+        this.capacity = N * 4 + 1;
+
+        mfccRing = new float[capacity * numCoeffs];
+        dmfccRing = new float[capacity * numDeltas];
+        startTimeRing = new float[capacity];
+        userRing = new User[capacity];
+
+        outMFCC = new float[numCoeffs];
+        outDMFCC = new float[numDeltas];
+        outDDMFCC = new float[numDeltas];
+        outFrame.setMFCC(outMFCC);
+        outFrame.setDMFCC(outDMFCC);
+        outFrame.setDDMFCC(outDDMFCC);
+    }
+
+    /**
+     * Pushes the next frame into the buffer. The MFCC values are copied, so the caller may reuse its array.
+     *
+     * @param startTime Start time of the frame
+     * @param mfcc      MFCCs of the frame, {@code numCoeffs} long
+     * @param user      User label of the frame
+     * @return true if a frame is ready to be written out, see {@link #getOutputFrame()}.
+     */
+    public boolean push(float startTime, float[] mfcc, User user) {
+        long p = ++last;
+        int s = slot(p);
+        System.arraycopy(mfcc, 0, mfccRing, s * numCoeffs, numCoeffs);
+        startTimeRing[s] = startTime;
+        userRing[s] = user;
+
+        if (p == 0) {
+            // the 1st frame's delta only ever sees copies of itself (the old START case)
+            computeDelta(-N);
+        } else if (p > N) {
+            computeDelta(p - N);
+        }
+
+        if (p - next >= 2 * N) {
+            emit();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes out the remaining frames once the stream has ended, padding on the right with the last frame. Call
+     * repeatedly until it returns false.
+     *
+     * @return true if a frame is ready to be written out, see {@link #getOutputFrame()}.
+     */
+    public boolean flush() {
+        if (next > last) {
+            return false;
+        }
+        if (end == Long.MAX_VALUE) {
+            end = last;
+            // the frames still missing their delta, now that the right side is padded
+            for (long p = Math.max(1, last - N + 1); p <= last; p++) {
+                computeDelta(p);
+            }
+        }
+        emit();
+        return true;
+    }
+
+    /**
+     * Gets the frame most recently made ready by {@link #push} or {@link #flush()}. The same object, and the same
+     * arrays, are reused for every frame, so copy out anything that must be kept.
+     *
+     * @return the middle frame with its MFCC, dMFCC, ddMFCC, start time and user set.
+     */
+    public AudioProcessingResult getOutputFrame() {
+        return outFrame;
+    }
+
+    /**
+     * Clears the buffer so that it can be reused for another stream.
+     */
+    public void reset() {
+        last = -1;
+        next = 0;
+        end = Long.MAX_VALUE;
+    }
+
+    private int slot(long position) {
+        // clamp to the padding on both ends, then wrap around the ring
+        if (position < 0) {
+            position = 0;
+        } else if (position > end) {
+            position = end;
+        }
+        return (int) (position % capacity);
+    }
+
+    /**
+     * Computes the dMFCC of the frame at the given position from the MFCCs N frames on either side. Mirrors
+     * {@link AudioUtils#computeRegDelta(float[])} so the results are bit-for-bit the same.
+     */
+    private void computeDelta(long position) {
+        int out = slot(position) * numDeltas;
+        for (int j = 1; j <= numDeltas; j++) {
+            float num = 0, den = 0;
+            for (int n = 1; n <= N; n++) {
+                num += n * (mfccRing[slot(position + n) * numCoeffs + j]
+                        - mfccRing[slot(position - n) * numCoeffs + j]);
+                den += n * n;
+            }
+            dmfccRing[out + j - 1] = num / (2 * den);
+        }
+    }
+
+    private void emit() {
+        long p = next++;
+        int s = slot(p);
+
+        // ddMFCC from the dMFCCs N frames on either side
+        for (int j = 0; j < numDeltas; j++) {
+            float num = 0, den = 0;
+            for (int n = 1; n <= N; n++) {
+                num += n * (dmfccRing[slot(p + n) * numDeltas + j] - dmfccRing[slot(p - n) * numDeltas + j]);
+                den += n * n;
+            }
+            outDDMFCC[j] = num / (2 * den);
+        }
+
+        System.arraycopy(mfccRing, s * numCoeffs, outMFCC, 0, numCoeffs);
+        System.arraycopy(dmfccRing, s * numDeltas, outDMFCC, 0, numDeltas);
+        outFrame.setStartTime(startTimeRing[s]);
+        outFrame.setUser(userRing[s]);
+    }
+}
@@ -0,0 +1,234 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache on local disk of the ARFF feature files extracted from WAV files, so that re-running experiments only
+ * extracts the features of the audio and the parameters that changed.
+ * <p>
+ * An entry is keyed by the SHA-256 of the WAV file's content, not its name or time, along with every parameter of
+ * the extraction and {@link #FEATURES_VERSION}, so a file that was re-recorded, or features extracted differently,
+ * miss the cache rather than return stale features. An entry only has the data rows of the file, as the header names
+ * the file the features were extracted from: a hit writes the header of the file asking for them, then the rows,
+ * to where the extraction would have written them. The entries are files in the cache directory, named by their key,
+ * with the time they were last used as their modification time; once the entries add up to more than the size
+ * given, the least recently used are deleted. Entries are added through a temporary file and a move, so that a run
+ * killed half way leaves no partial entry. Safe to use from several threads.
+ */
+public class FeatureCache {
+    /**
+     * The version of the features: increment it whenever the extraction changes what it writes, to miss the entries
+     * of older versions.
+     */
+    public static final int FEATURES_VERSION = 2;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File directory;
+    private final long maxBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long lastUsed = 0;  // the latest time stamp given an entry, so that every use is later than the last
+
+    /**
+     * @param directory directory of the cache, created if need be
+     * @param maxBytes  size the entries are kept within, by deleting the least recently used
+     */
+    public FeatureCache(String directory, long maxBytes) throws IOException {
+        this.directory = new File(directory);
+        this.maxBytes = maxBytes;
+        Files.createDirectories(this.directory.toPath());
+        for (File entry : entries()) {
+            lastUsed = Math.max(lastUsed, entry.lastModified());
+        }
+    }
+
+    /**
+     * @param inputFilename Full path file name of the WAV file, without extension
+     * @param extension     extension of the feature file, e.g. ".arff", as each format is an entry of its own
+     * @param user          User to label voiced segments
+     * @return the key of the features of the WAV file extracted with these parameters
+     */
+    public String key(String inputFilename, String extension, User user, int SAMPLE_RATE, int BUFFER_SIZE,
+                      int BUFFER_OVERLAP, int numCepstralCoeffs, int numMelFilters, float lowerFilterFreq,
+                      float upperFilterFreq) throws IOException {
+        return key(hash(new File(inputFilename + ".wav")), extension, user, SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP,
+                numCepstralCoeffs, numMelFilters, lowerFilterFreq, upperFilterFreq);
+    }
+
+    /**
+     * @param audioHash {@link #hash(File)} of the WAV file, for the keys of several extractions of it
+     * @return the key of the features of the WAV file extracted with these parameters
+     */
+    public String key(byte[] audioHash, String extension, User user, int SAMPLE_RATE, int BUFFER_SIZE,
+                      int BUFFER_OVERLAP, int numCepstralCoeffs, int numMelFilters, float lowerFilterFreq,
+                      float upperFilterFreq) {
+        String parameters = FEATURES_VERSION + " " + extension + " " + user + " " + SAMPLE_RATE + " " + BUFFER_SIZE
+                + " " + BUFFER_OVERLAP + " " + numCepstralCoeffs + " " + numMelFilters + " " + lowerFilterFreq
+                + " " + upperFilterFreq;
+        MessageDigest digest = sha256();
+        digest.update(audioHash);
+        digest.update(parameters.getBytes(StandardCharsets.UTF_8));
+        return toHex(digest.digest()) + extension;
+    }
+
+    /**
+     * Writes the feature file of an entry, if there is one, and marks it used.
+     *
+     * @param filename Full path file name to write the features to, including extension
+     * @param header   the header of the file, e.g. {@link AudioUtils#getARFFHeader(String)} of the WAV file, written
+     *                 before the rows of the entry
+     * @return whether there was an entry
+     */
+    public boolean get(String key, String filename, String header) throws IOException {
+        File entry = new File(directory, key);
+        try (InputStream in = Files.newInputStream(entry.toPath());
+             OutputStream out = new FileOutputStream(filename)) {
+            out.write(header.getBytes());
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (NoSuchFileException e) {
+            misses.incrementAndGet();
+            return false;
+        }
+        entry.setLastModified(nextUse());
+        hits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Adds a copy of the data rows of an ARFF feature file as the entry of the key, then deletes the least recently
+     * used entries that do not fit.
+     *
+     * @param filename Full path file name of the features, including extension
+     * @throws IOException if the file cannot be read or has no @DATA section
+     */
+    public void put(String key, String filename) throws IOException {
+        long dataOffset;
+        try (ARFFDataCursor cursor = new ARFFDataCursor(filename)) {
+            dataOffset = cursor.getDataOffset();
+        }
+        File temp = File.createTempFile(key, ".part", directory);
+        try {
+            try (FileChannel in = FileChannel.open(new File(filename).toPath(), StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+                for (long position = dataOffset; position < in.size(); ) {
+                    position += in.transferTo(position, in.size() - position, out);
+                }
+            }
+            temp.setLastModified(nextUse());
+            Files.move(temp.toPath(), new File(directory, key).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        evict();
+    }
+
+    /**
+     * @return the bytes of the entries
+     */
+    public long getSize() {
+        long size = 0;
+        for (File entry : entries()) {
+            size += entry.length();
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Deletes the least recently used entries until the rest fit.
+     */
+    private synchronized void evict() {
+        List<File> entries = entries();
+        long size = 0;
+        for (File entry : entries) {
+            size += entry.length();
+        }
+        entries.sort(Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < entries.size() && size > maxBytes; i++) {
+            long length = entries.get(i).length();
+            if (entries.get(i).delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private List<File> entries() {
+        List<File> entries = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && !file.getName().endsWith(".part")) {
+                    entries.add(file);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return a time stamp for an entry used now, later than that of any entry before it, even within a millisecond
+     */
+    private synchronized long nextUse() {
+        lastUsed = Math.max(System.currentTimeMillis(), lastUsed + 1);
+        return lastUsed;
+    }
+
+    /**
+     * @return the SHA-256 of the content of a file
+     */
+    static byte[] hash(File file) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);   // every Java platform has it
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary columnar feature file, the compact alternative to text ARFF for passing features between pipeline stages.
+ * <p>
+ * Layout, all little Endian:
+ * <pre>
+ * header:  "CBFS", int version, int header length, long number of rows, int rows per block,
+ *          int number of attributes, attribute names, int number of class values, class values, relation name,
+ *          zero padded to a multiple of 8 bytes. Strings are a short byte length followed by UTF-8.
+ * blocks:  for each block of up to (rows per block) rows, one float32 column per attribute, then one byte column
+ *          of class value indices, zero padded to a multiple of 4 bytes.
+ * </pre>
+ * Every block but the last is full, so the position of any row can be computed from the header alone. Write with
+ * {@link FeatureStoreWriter}, read with {@link FeatureStoreReader}, and convert to ARFF with {@link #exportToARFF}
+ * only when Weka needs it.
+ */
+public class FeatureStore {
+    public static final String EXTENSION = ".cbf";
+    public static final int MAGIC = 0x53464243;    // "CBFS"
+    public static final int VERSION = 1;
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    // offset of the number of rows in the header, patched when the writer is closed
+    static final int NUM_ROWS_OFFSET = 12;
+
+    private FeatureStore() {
+    }
+
+    /**
+     * @return the names of the feature attributes written by {@link AudioProcessingResult#getFeatureVector()}, in
+     * the same order as {@link AudioUtils#getARFFHeader(String)}.
+     */
+    public static String[] getFeatureAttributeNames() {
+        String[] names = new String[36];
+        for (int i = 0; i < 12; i++) {
+            String index = String.format("%02d", i + 1);
+            names[i] = "mfcc" + index;
+            names[12 + i] = "dmfcc" + index;
+            names[24 + i] = "ddmfcc" + index;
+        }
+        return names;
+    }
+
+    /**
+     * @return the class values, indexed by {@link User#ordinal()}.
+     */
+    public static String[] getClassValues() {
+        User[] users = User.values();
+        String[] values = new String[users.length];
+        for (int i = 0; i < users.length; i++) {
+            values[i] = users[i].name();
+        }
+        return values;
+    }
+
+    /**
+     * @return the number of bytes taken by a block of rows.
+     */
+    static long getBlockBytes(int numAttributes, int numRows) {
+        long bytes = (long) numRows * (4L * numAttributes + 1);
+        return (bytes + 3) & ~3L;
+    }
+
+    static byte[] encodeHeader(String relation, String[] attributes, String[] classValues, int blockSize) {
+        List<byte[]> strings = new ArrayList<>();
+        int length = 4 * 6 + 8;
+        for (String attribute : attributes) {
+            strings.add(attribute.getBytes(StandardCharsets.UTF_8));
+        }
+        for (String classValue : classValues) {
+            strings.add(classValue.getBytes(StandardCharsets.UTF_8));
+        }
+        strings.add(relation.getBytes(StandardCharsets.UTF_8));
+        for (byte[] string : strings) {
+            length += 2 + string.length;
+        }
+        length = (length + 7) & ~7;
+
+        ByteBuffer header = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(length).putLong(0).putInt(blockSize);
+        header.putInt(attributes.length);
+        for (int i = 0; i < attributes.length; i++) {
+            putString(header, strings.get(i));
+        }
+        header.putInt(classValues.length);
+        for (int i = 0; i < classValues.length; i++) {
+            putString(header, strings.get(attributes.length + i));
+        }
+        putString(header, strings.get(strings.size() - 1));
+        return header.array();
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] string) {
+        buffer.putShort((short) string.length);
+        buffer.put(string);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        byte[] string = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(string);
+        return new String(string, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Converts a feature file into an ARFF file. The rows are the same as those written by
+     * {@link AudioProcessingResult#getFeatureVector()}.
+     *
+     * @param storeFile path, filename, no extension
+     * @param arffFile  path, filename, no extension
+     */
+    public static void exportToARFF(String storeFile, String arffFile) {
+        try {
+            FeatureStoreReader reader = new FeatureStoreReader(storeFile + EXTENSION);
+            BufferedWriter bw = new BufferedWriter(new FileWriter(arffFile + ".arff", false));
+
+            // The standard header if the attributes are the usual ones, otherwise a header from the file
+            if (Arrays.equals(reader.getAttributeNames(), getFeatureAttributeNames())
+                    && Arrays.equals(reader.getClassValues(), getClassValues())) {
+                bw.write(AudioUtils.getARFFHeader(reader.getRelation()));
+            } else {
+                bw.write(getARFFHeader(reader));
+            }
+
+            String[] classValues = reader.getClassValues();
+            StringBuilder sb = new StringBuilder();
+            for (long row = 0, rows = reader.getNumRows(); row < rows; row++) {
+                sb.setLength(0);
+                for (int attribute = 0, il = reader.getNumAttributes(); attribute < il; attribute++) {
+                    sb.append(reader.getFloat(row, attribute)).append(',');
+                }
+                sb.append(classValues[reader.getLabel(row)]);
+                bw.write(sb.toString());
+                bw.newLine();
+            }
+
+            bw.close();
+            reader.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String getARFFHeader(FeatureStoreReader reader) {
+        StringBuilder sb = new StringBuilder("@RELATION ").append(reader.getRelation().replaceAll("\\s+", "_"))
+                .append("\n\n");
+        for (String attribute : reader.getAttributeNames()) {
+            sb.append("@ATTRIBUTE ").append(attribute).append(" NUMERIC\n");
+        }
+        sb.append("@ATTRIBUTE class {").append(String.join(", ", reader.getClassValues())).append("}\n");
+        sb.append("\n@DATA\n");
+        return sb.toString();
+    }
+
+    /**
+     * The feature file equivalent of {@link AudioUtils#writeUsersToRaw(String, String, String)}: copies the raw
+     * file's features, labelling each row CHILD if the child file has it as CHILD, else ADULT if the adult file
+     * has it as ADULT, else NONE. Only the label column is read from the child and adult files.
+     *
+     * @param childFile child file path, filename, append, no extension
+     * @param adultFile adult file path, filename, append, no extension
+     * @param rawFile   raw file path, filename, append, no extension. Written out to rawFile + "_out".
+     */
+    public static void writeUsersToRaw(String childFile, String adultFile, String rawFile) {
+        try {
+            FeatureStoreReader child = new FeatureStoreReader(childFile + EXTENSION);
+            FeatureStoreReader adult = new FeatureStoreReader(adultFile + EXTENSION);
+            FeatureStoreReader raw = new FeatureStoreReader(rawFile + EXTENSION);
+            FeatureStoreWriter out = new FeatureStoreWriter(rawFile + "_out" + EXTENSION, rawFile + "_out",
+                    raw.getAttributeNames(), raw.getClassValues(), raw.getBlockSize());
+
+            long rows = Math.min(raw.getNumRows(), Math.min(child.getNumRows(), adult.getNumRows()));
+            float[] values = new float[raw.getNumAttributes()];
+            for (long row = 0; row < rows; row++) {
+                byte label = (byte) User.NONE.ordinal();
+                if (adult.getLabel(row) == User.ADULT.ordinal()) {
+                    label = (byte) User.ADULT.ordinal();
+                }
+                // As long as it is a child, we will overwrite
+                if (child.getLabel(row) == User.CHILD.ordinal()) {
+                    label = (byte) User.CHILD.ordinal();
+                }
+                raw.getRow(row, values);
+                out.write(values, label);
+            }
+
+            out.close();
+            child.close();
+            adult.close();
+            raw.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped reader of a binary columnar feature file, see {@link FeatureStore} for the layout.
+ * <p>
+ * Whole blocks are mapped in regions of up to 1 GB. A reader is not thread safe, open one per thread.
+ */
+public class FeatureStoreReader {
+    private static final long MAX_REGION_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final String relation;
+    private final String[] attributeNames;
+    private final String[] classValues;
+    private final int numAttributes;
+    private final int blockSize;
+    private final long numRows;
+    private final int headerLength;
+    private final long blockBytes;
+    private final int blocksPerRegion;
+
+    private MappedByteBuffer region;    // currently mapped blocks
+    private long regionFirstBlock = -1;
+
+    /**
+     * @param filename Full path file name, including extension
+     * @throws IOException if the file cannot be read or is not a feature file.
+     */
+    public FeatureStoreReader(String filename) throws IOException {
+        channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        try {
+            ByteBuffer fixed = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(fixed, 0);
+            if (fixed.getInt(0) != FeatureStore.MAGIC) {
+                throw new IOException(filename + " is not a feature file");
+            }
+            if (fixed.getInt(4) != FeatureStore.VERSION) {
+                throw new IOException(filename + " has unsupported feature file version " + fixed.getInt(4));
+            }
+            headerLength = fixed.getInt(8);
+
+            ByteBuffer header = ByteBuffer.allocate(headerLength).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, 0);
+            header.position(FeatureStore.NUM_ROWS_OFFSET);
+            numRows = header.getLong();
+            blockSize = header.getInt();
+            numAttributes = header.getInt();
+            attributeNames = new String[numAttributes];
+            for (int i = 0; i < numAttributes; i++) {
+                attributeNames[i] = FeatureStore.getString(header);
+            }
+            classValues = new String[header.getInt()];
+            for (int i = 0; i < classValues.length; i++) {
+                classValues[i] = FeatureStore.getString(header);
+            }
+            relation = FeatureStore.getString(header);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        blockBytes = FeatureStore.getBlockBytes(numAttributes, blockSize);
+        blocksPerRegion = (int) Math.max(1, MAX_REGION_SIZE / blockBytes);
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of feature file header");
+            }
+        }
+    }
+
+    /**
+     * Maps the region holding the block, and returns the position of the block in it.
+     */
+    private int mapBlock(long block) throws IOException {
+        long firstBlock = block - (block % blocksPerRegion);
+        if (firstBlock != regionFirstBlock) {
+            long start = headerLength + firstBlock * blockBytes;
+            long size = Math.min(blocksPerRegion * blockBytes, channel.size() - start);
+            region = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            region.order(ByteOrder.LITTLE_ENDIAN);
+            regionFirstBlock = firstBlock;
+        }
+        return (int) ((block - firstBlock) * blockBytes);
+    }
+
+    private int rowsInBlock(long block) {
+        return (int) Math.min(blockSize, numRows - block * blockSize);
+    }
+
+    /**
+     * @return the value of an attribute of a row.
+     */
+    public float getFloat(long row, int attribute) throws IOException {
+        long block = row / blockSize;
+        int blockStart = mapBlock(block);
+        int index = (int) (row % blockSize);
+        return region.getFloat(blockStart + (attribute * rowsInBlock(block) + index) * 4);
+    }
+
+    /**
+     * @return the index of the class value of a row.
+     */
+    public byte getLabel(long row) throws IOException {
+        long block = row / blockSize;
+        int blockStart = mapBlock(block);
+        int index = (int) (row % blockSize);
+        return region.get(blockStart + numAttributes * rowsInBlock(block) * 4 + index);
+    }
+
+    /**
+     * @return the user of a row, if the class values are those of {@link User}.
+     */
+    public User getUser(long row) throws IOException {
+        return User.is(getLabel(row));
+    }
+
+    /**
+     * Reads all the attributes of a row.
+     *
+     * @param values output, one value per attribute
+     */
+    public void getRow(long row, float[] values) throws IOException {
+        long block = row / blockSize;
+        int blockStart = mapBlock(block);
+        int rows = rowsInBlock(block);
+        int index = (int) (row % blockSize);
+        for (int attribute = 0; attribute < numAttributes; attribute++) {
+            values[attribute] = region.getFloat(blockStart + (attribute * rows + index) * 4);
+        }
+    }
+
+    /**
+     * Reads a whole column of a block, which is the fastest way to scan an attribute.
+     *
+     * @param block     index of the block, from 0 to {@link #getNumBlocks()} - 1
+     * @param attribute index of the attribute
+     * @param values    output, at least {@link #getBlockSize()} long
+     * @return the number of rows in the block.
+     */
+    public int getColumn(long block, int attribute, float[] values) throws IOException {
+        int blockStart = mapBlock(block);
+        int rows = rowsInBlock(block);
+        ByteBuffer column = region.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        column.position(blockStart + attribute * rows * 4);
+        column.asFloatBuffer().get(values, 0, rows);
+        return rows;
+    }
+
+    public long getNumRows() {
+        return numRows;
+    }
+
+    public long getNumBlocks() {
+        return (numRows + blockSize - 1) / blockSize;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getNumAttributes() {
+        return numAttributes;
+    }
+
+    public String[] getAttributeNames() {
+        return attributeNames;
+    }
+
+    public String[] getClassValues() {
+        return classValues;
+    }
+
+    public String getRelation() {
+        return relation;
+    }
+
+    public void close() throws IOException {
+        region = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a binary columnar feature file, see {@link FeatureStore} for the layout. Rows are buffered a block at a
+ * time and written out column by column.
+ */
+public class FeatureStoreWriter implements FeatureWriter {
+    private final FileChannel channel;
+    private final int numAttributes;
+    private final int blockSize;
+
+    // the block being filled
+    private final float[][] columns;
+    private final byte[] labels;
+    private final ByteBuffer blockBuffer;
+    private int rowsInBlock = 0;
+    private long numRows = 0;
+
+    /**
+     * Creates a feature file for the features written by {@link AudioProcessingResult#getFeatureVector()}.
+     *
+     * @param filename Full path file name, including extension
+     * @param relation Name of the relation, used as the ARFF relation on export
+     */
+    public FeatureStoreWriter(String filename, String relation) throws IOException {
+        this(filename, relation, FeatureStore.getFeatureAttributeNames(), FeatureStore.getClassValues(),
+                FeatureStore.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param filename    Full path file name, including extension
+     * @param relation    Name of the relation, used as the ARFF relation on export
+     * @param attributes  Names of the float attributes
+     * @param classValues Names of the class values, the labels are indices into these
+     * @param blockSize   Number of rows per block
+     */
+    public FeatureStoreWriter(String filename, String relation, String[] attributes, String[] classValues,
+                              int blockSize) throws IOException {
+        this.numAttributes = attributes.length;
+        this.blockSize = blockSize;
+        this.columns = new float[numAttributes][blockSize];
+        this.labels = new byte[blockSize];
+        this.blockBuffer = ByteBuffer.allocate((int) FeatureStore.getBlockBytes(numAttributes, blockSize))
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        writeFully(ByteBuffer.wrap(FeatureStore.encodeHeader(relation, attributes, classValues, blockSize)));
+    }
+
+    @Override
+    public void write(AudioProcessingResult frame) throws IOException {
+        float[] mfcc = frame.getMFCC(), dmfcc = frame.getDMFCC(), ddmfcc = frame.getDDMFCC();
+        int row = rowsInBlock;
+        for (int i = 0; i < 12; i++) {
+            columns[i][row] = mfcc[i + 1];
+            columns[12 + i][row] = dmfcc[i];
+            columns[24 + i][row] = ddmfcc[i];
+        }
+        labels[row] = (byte) frame.getUser().ordinal();
+        nextRow();
+    }
+
+    /**
+     * Writes a row of any attributes.
+     *
+     * @param values one value per attribute
+     * @param label  index of the class value
+     */
+    public void write(float[] values, byte label) throws IOException {
+        int row = rowsInBlock;
+        for (int i = 0; i < numAttributes; i++) {
+            columns[i][row] = values[i];
+        }
+        labels[row] = label;
+        nextRow();
+    }
+
+    private void nextRow() throws IOException {
+        numRows++;
+        if (++rowsInBlock == blockSize) {
+            writeBlock();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (rowsInBlock == 0) {
+            return;
+        }
+        blockBuffer.clear();
+        for (float[] column : columns) {
+            blockBuffer.asFloatBuffer().put(column, 0, rowsInBlock);
+            blockBuffer.position(blockBuffer.position() + rowsInBlock * 4);
+        }
+        blockBuffer.put(labels, 0, rowsInBlock);
+        while (blockBuffer.position() % 4 != 0) {
+            blockBuffer.put((byte) 0);
+        }
+        blockBuffer.flip();
+        writeFully(blockBuffer);
+        rowsInBlock = 0;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * @return the number of rows written so far.
+     */
+    public long getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Writes out the last block and the number of rows.
+     */
+    @Override
+    public void close() throws IOException {
+        writeBlock();
+        ByteBuffer count = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(0, numRows);
+        channel.write(count, FeatureStore.NUM_ROWS_OFFSET);
+        channel.close();
+    }
+}
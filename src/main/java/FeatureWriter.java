@@ -0,0 +1,14 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of the feature vectors written out by the feature extraction pipeline, one frame at a time.
+ */
+public interface FeatureWriter extends Closeable {
+    /**
+     * Writes out the features of a frame: MFCCs 2 to 13, dMFCCs, ddMFCCs and the user.
+     *
+     * @param frame a frame with its MFCC, dMFCC, ddMFCC and user set.
+     */
+    void write(AudioProcessingResult frame) throws IOException;
+}
@@ -0,0 +1,96 @@
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Classifies frame after frame with one reused instance.
+ * <p>
+ * {@link AudioProcessingResult#runClassifier(Classifier)} creates an instance for every frame. This fills the values
+ * of a single instance in place instead, an instance that uses the value array it was created with and the shared
+ * {@link AudioProcessingResult#getInstancesHeader()}, so classifying a frame creates no Weka objects. Create one per
+ * pipeline; an instance must not be shared between threads.
+ * <p>
+ * Given a {@link CompiledClassifier} of the model, frames are classified by it rather than by Weka, except those with
+ * missing values.
+ */
+public class FrameClassifier {
+    private static final int CLASS_INDEX = AudioProcessingResult.NUM_INSTANCE_VALUES - 1;
+
+    private final Classifier classifier;
+    private final CompiledClassifier compiled;
+    private final double[] values = new double[AudioProcessingResult.NUM_INSTANCE_VALUES];
+    private final Instance instance;
+
+    public FrameClassifier(Classifier classifier) {
+        this(classifier, null);
+    }
+
+    /**
+     * @param compiled the model compiled by {@link ModelCompiler#compile(Classifier, Instances)}, or null to only use
+     *                 Weka
+     */
+    public FrameClassifier(Classifier classifier, CompiledClassifier compiled) {
+        this.classifier = classifier;
+        this.compiled = compiled;
+        instance = new DenseInstance(1, values);  // the values are used, not copied
+        instance.setDataset(AudioProcessingResult.getInstancesHeader());
+    }
+
+    /**
+     * @param classifier the model, copied for each thread
+     * @param compiled   the model compiled by {@link ModelCompiler#compile(Classifier, Instances)}, or null to only use
+     *                   Weka, shared as it is immutable
+     * @return a FrameClassifier for each thread, over a copy of its own of the model, as Weka models are not safe to
+     * share between threads
+     */
+    public static ThreadLocal<FrameClassifier> copies(final Classifier classifier, final CompiledClassifier compiled) {
+        return ThreadLocal.withInitial(() -> {
+            try {
+                return new FrameClassifier(AbstractClassifier.makeCopy(classifier), compiled);
+            } catch (Exception e) {
+                throw new IllegalStateException("Cannot copy " + classifier.getClass().getSimpleName(), e);
+            }
+        });
+    }
+
+    /**
+     * @param compiled the model compiled by {@link ModelCompiler#compile(Classifier, Instances)}, or null to only use
+     *                 Weka
+     * @return the same FrameClassifier, over the model itself, on every thread, for a pipeline that classifies on one
+     * thread at a time, e.g. a pipeline of a {@link PipelineScheduler}, whose carriers hand it on through their run
+     * queue. Unlike {@link ThreadLocal#withInitial}, it leaves no entry behind on the threads.
+     */
+    public static ThreadLocal<FrameClassifier> single(Classifier classifier, CompiledClassifier compiled) {
+        final FrameClassifier frameClassifier = new FrameClassifier(classifier, compiled);
+        return new ThreadLocal<FrameClassifier>() {
+            @Override
+            public FrameClassifier get() {
+                return frameClassifier;
+            }
+        };
+    }
+
+    /**
+     * Classifies the feature vector to identify which user it is, and sets the User of the frame.
+     *
+     * @param frame a frame with its start time, dbSPL, pitch and MFCCs set.
+     * @return The classification result, the User based on this set of features.
+     */
+    public User classify(AudioProcessingResult frame) {
+        double result = 0.0;    // default: User.NONE
+        frame.getInstanceValues(values);
+        if (compiled != null && !ModelCompiler.hasMissingValue(values, CLASS_INDEX)) {
+            result = compiled.classify(values);
+        } else {
+            try {
+                result = classifier.classifyInstance(instance);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        frame.setUser(User.is(result));
+        return frame.getUser();
+    }
+}
@@ -0,0 +1,131 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * A bounded queue of preallocated slots between one producer thread and one consumer thread, e.g. two stages of a
+ * {@link StagedPipeline}.
+ * <p>
+ * The producer {@link #claim()}s the next free slot, fills it in place and {@link #publish()}es it; the consumer
+ * {@link #take()}s the oldest published slot, reads it and {@link #release()}s it back to the producer. Slots are
+ * reused round the ring, so passing a frame allocates nothing, and as each end has a single thread the positions are
+ * plain counters, with no locks or compare-and-set. A side that has to wait spins briefly, as the other side is
+ * usually a frame away, then parks until woken. The producer {@link #close()}s the ring after its last slot.
+ *
+ * @param <T> the type of the slots
+ */
+public class FrameRing<T> {
+    private static final int SPINS = 200;
+
+    private final Object[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();  // position of the next slot to take
+    private final AtomicLong tail = new AtomicLong();  // position of the next slot to publish
+    private volatile boolean closed = false;
+    private volatile Thread waitingProducer = null, waitingConsumer = null;
+
+    // each side's last look at the other's position, so that it reads the shared counter only when it has to
+    private long producerHead = 0, consumerTail = 0;
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two
+     * @param slot     creates each slot
+     */
+    public FrameRing(int capacity, Supplier<T> slot) {
+        int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        slots = new Object[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = slot.get();
+        }
+        mask = size - 1;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Waits for a free slot, for the producer to fill.
+     */
+    @SuppressWarnings("unchecked")
+    public T claim() {
+        long position = tail.get();
+        if (position - producerHead == slots.length) {
+            int spins = 0;
+            while (position - (producerHead = head.get()) == slots.length) {
+                if (spins++ < SPINS) {
+                    Thread.yield();
+                } else {
+                    waitingProducer = Thread.currentThread();
+                    if (position - head.get() == slots.length) {
+                        LockSupport.park(this);
+                    }
+                    waitingProducer = null;
+                }
+            }
+        }
+        return (T) slots[(int) position & mask];
+    }
+
+    /**
+     * Hands the slot claimed last to the consumer.
+     */
+    public void publish() {
+        tail.set(tail.get() + 1);
+        wake(waitingConsumer);
+    }
+
+    /**
+     * Ends the slots to take, once the ones published are taken.
+     */
+    public void close() {
+        closed = true;
+        wake(waitingConsumer);
+    }
+
+    /**
+     * Waits for the oldest published slot, for the consumer to read.
+     *
+     * @return the slot, or null if the ring is closed and has none left
+     */
+    @SuppressWarnings("unchecked")
+    public T take() {
+        long position = head.get();
+        if (position == consumerTail) {
+            int spins = 0;
+            while (position == (consumerTail = tail.get())) {
+                if (closed) {
+                    // the last slots may have been published just before closing
+                    if (position == (consumerTail = tail.get())) {
+                        return null;
+                    }
+                    break;
+                }
+                if (spins++ < SPINS) {
+                    Thread.yield();
+                } else {
+                    waitingConsumer = Thread.currentThread();
+                    if (position == tail.get() && !closed) {
+                        LockSupport.park(this);
+                    }
+                    waitingConsumer = null;
+                }
+            }
+        }
+        return (T) slots[(int) position & mask];
+    }
+
+    /**
+     * Hands the slot taken last back to the producer.
+     */
+    public void release() {
+        head.set(head.get() + 1);
+        wake(waitingProducer);
+    }
+
+    private static void wake(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
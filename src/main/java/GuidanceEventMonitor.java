@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.PriorityQueue;
 
 /**
  * The GuidanceEventMonitor examines each AudioProcessingResult (an audio buffer read) to see if
@@ -19,10 +20,25 @@ import java.util.List;
 public class GuidanceEventMonitor {
     private static final String TAG = "GuidanceEventMonitor";
 
-    private Turns turns = new Turns();
+    private final Turns turns;
     AudioProcessingResult result;
     private int[] eventsBuffer = new int[GuidanceEvent.numGuidanceEventTypes]; // assuming 4 types of events
     private ArrayList<GuidanceEvent> guidanceEvents = new ArrayList<>();
+    private BufferedWriter eventsWriter = null;    // instead of guidanceEvents, when given a file
+    private String eventsFilename = null;
+    private boolean closed = false;
+
+    // --- Look-back windows ---
+    // Results arrive in time order, so turns and onsets only ever leave the windows, and the checks need not walk all
+    // the turns of the session.
+    // Overlap: the end times of the turns before the latest one, as those no longer change. A turn grows by a whole
+    // frame length per frame, more than the frames advance, so a turn can end after the turns following it; earliest
+    // end first.
+    private final PriorityQueue<Float> previousTurnEndTimes = new PriorityQueue<>();
+    // Overlap: index of the first turn that starts before the one before it ends
+    private int firstOverlappingTurn = Integer.MAX_VALUE;
+    // Fast Speech: onsets of adult turns, oldest first
+    private final Onsets adultOnsets = new Onsets();
 
     // --- Parameters ---
     // Overlap
@@ -38,7 +54,37 @@ public class GuidanceEventMonitor {
     // Fast Speech
     private static final float fastSpeechFrameLengthThreshold = 5;    // in seconds
     private static final float fastSpeechRateThreshold = 1.6f;// syllables(onsets) per second
+    // Retention: turns kept in memory, at least the contTurnRepsThreshold and noResponseRepsThreshold latest ones
+    private static final int maxTurnsInMemory = 64;
 
+    /**
+     * Keeps all the turns and GuidanceEvents of the session in memory.
+     */
+    public GuidanceEventMonitor() {
+        turns = new Turns();
+    }
+
+    /**
+     * Keeps only the latest turns in memory and none of the GuidanceEvents, for sessions of any length. The older
+     * turns are appended to a file as they age out, see {@link Turns#Turns(int, String)}, and each GuidanceEvent as it
+     * is detected. {@link #close()} the monitor at the end of the session.
+     *
+     * @param turnsFilename  the file to append older turns to, or null to drop them
+     * @param eventsFilename the file to append GuidanceEvents to, or null to drop them
+     */
+    public GuidanceEventMonitor(String turnsFilename, String eventsFilename) {
+        turns = new Turns(maxTurnsInMemory, turnsFilename);
+        guidanceEvents = null;
+        if (eventsFilename != null) {
+            try {
+                eventsWriter = new BufferedWriter(new FileWriter(eventsFilename, false));
+                this.eventsFilename = eventsFilename;
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
 
     /**
      * Checks the result to append to turn list, check whether we should check for guidance events.
@@ -49,7 +95,10 @@ public class GuidanceEventMonitor {
     public boolean checkResult(AudioProcessingResult result) {
         this.result = result;
         // process result for turns
-        if (turns.processResult(result)) {
+        int numTurns = turns.getNumTurns();
+        boolean check = turns.processResult(result);
+        updateWindows(numTurns);
+        if (check) {
             checkGuidanceEvents();
             return true;
         }
@@ -58,6 +107,37 @@ public class GuidanceEventMonitor {
         }
     }
 
+    /**
+     * Records what the result changed in the turns, and drops what is now before the look-back windows.
+     *
+     * @param numTurns the number of turns before the result
+     */
+    private void updateWindows(int numTurns) {
+        if (turns.getNumTurns() > numTurns && numTurns > 0) {    // a new turn, so the one before it is done
+            Turn previous = turns.get(turns.size() - 2);
+            previousTurnEndTimes.add(Math.max(previous.getStartTime(), previous.getEndTime()));
+            if (firstOverlappingTurn == Integer.MAX_VALUE &&
+                    turns.getLatestTurn().getStartTime() - previous.getEndTime() < overlapSpeechPauseThreshold) {
+                firstOverlappingTurn = numTurns;
+            }
+        }
+        float startOfOverlapFrame = result.getStartTime()
+                - Turns.timeToleranceSilenceAfterFrames
+                - overlapSpeechFrameLengthThreshold;
+        while (!previousTurnEndTimes.isEmpty() && previousTurnEndTimes.peek() < startOfOverlapFrame) {
+            previousTurnEndTimes.poll();
+        }
+
+        // the result's onsets went to the latest turn, which is the result's user's
+        if (result.getUser() == User.ADULT) {
+            adultOnsets.addAll(result.getOnsets());
+        }
+        float startOfFastSpeechFrame = result.getStartTime()
+                - Turns.timeToleranceSilenceAfterFrames
+                - fastSpeechFrameLengthThreshold;
+        adultOnsets.removeBefore(startOfFastSpeechFrame);
+    }
+
     private void checkGuidanceEvents() {
         eventsBuffer[GuidanceEvent.OVERLAP] = checkOverlap() ? 1 : 0;
         eventsBuffer[GuidanceEvent.CONTINUED_TURNS] = checkContinuedTurns() ? 1 : 0;
@@ -68,32 +148,20 @@ public class GuidanceEventMonitor {
     }
 
     private boolean checkOverlap() {
-        ArrayList<Turn> turnsInFrame = new ArrayList<>();
         float startOfCheckFrame = result.getStartTime()
                 - Turns.timeToleranceSilenceAfterFrames
                 - overlapSpeechFrameLengthThreshold;
 
-        int lastTurnIndex = turns.size() - 1;
-
-        // Grab all turns that are in the time frame
-        for (int i = lastTurnIndex; i >= 0; i--) {
-            Turn turn = turns.get(i);
-
-            if (turn.getEndTime() >= startOfCheckFrame || turn.getStartTime() >= startOfCheckFrame) {
-                turnsInFrame.add(turn);
-            }
+        // Count the turns that are in the time frame
+        int turnsInFrame = previousTurnEndTimes.size();
+        Turn latestTurn = turns.getLatestTurn();
+        if (latestTurn.getEndTime() >= startOfCheckFrame || latestTurn.getStartTime() >= startOfCheckFrame) {
+            turnsInFrame++;
         }
 
-        // Check that they meet each other
-        for (int i = 1, il = turnsInFrame.size(); i < il; i++) {
-            Turn prev = turns.get(i - 1);
-            Turn curr = turns.get(i);
-
-            if (curr.getStartTime() - prev.getEndTime() < overlapSpeechPauseThreshold) {
-                return true;
-            }
-        }
-        return false;
+        // Check that they meet each other. Like the scan this replaces, this compares the first turns of the
+        // session, as many as there are in the time frame.
+        return turnsInFrame > firstOverlappingTurn;
     }
 
     private boolean checkContinuedTurns() {
@@ -120,7 +188,7 @@ public class GuidanceEventMonitor {
             }
         }
 
-        guidanceEvents.add(new GuidanceEvent(result.getEndTime(), GuidanceEvent.CONTINUED_TURNS));
+        addGuidanceEvent(new GuidanceEvent(result.getEndTime(), GuidanceEvent.CONTINUED_TURNS));
         return true;
     }
 
@@ -139,7 +207,7 @@ public class GuidanceEventMonitor {
                 return false;
             }
         }
-        guidanceEvents.add(new GuidanceEvent(result.getEndTime(), GuidanceEvent.NO_RESPONSE));
+        addGuidanceEvent(new GuidanceEvent(result.getEndTime(), GuidanceEvent.NO_RESPONSE));
         return true;
     }
 
@@ -147,7 +215,7 @@ public class GuidanceEventMonitor {
         Turn turn = turns.getLatestTurn();
 
         if (turn.getUser() == User.ADULT && turn.getTurnLength() >=  longTurnThreshold) {
-            guidanceEvents.add(new GuidanceEvent(result.getEndTime(), GuidanceEvent.LONG_TURN));
+            addGuidanceEvent(new GuidanceEvent(result.getEndTime(), GuidanceEvent.LONG_TURN));
             return true;
         }
 
@@ -155,29 +223,9 @@ public class GuidanceEventMonitor {
     }
 
     private boolean checkFastSpeech() {
-        ArrayList<Onset> onsetsInFrame = new ArrayList<>();
-        float startOfCheckFrame = result.getStartTime()
-                - Turns.timeToleranceSilenceAfterFrames
-                - fastSpeechFrameLengthThreshold;
-
-        int lastTurnIndex = turns.size() - 1;
-
-        // check for Onsets that are within the check frame and collate them
-        for (int i = lastTurnIndex; i >= 0; i--) {
-            Turn turn = turns.get(i);
-            // Check for Adult fast speech
-            if (turn.getUser() == User.ADULT) {
-                ArrayList<Onset> currentOnsets = turn.getOnsets();
-                for (Onset onset : currentOnsets) {
-                    if (onset.time >= startOfCheckFrame) {
-                        onsetsInFrame.add(onset);
-                    }
-                }
-            }
-        }
-
+        // the Adult Onsets are those within the check frame
         // compute the speech rate and compare against the threshold
-        float syllablesPerSecond = onsetsInFrame.size() / fastSpeechFrameLengthThreshold;
+        float syllablesPerSecond = adultOnsets.size() / fastSpeechFrameLengthThreshold;
 //        System.out.println("syllablesPerSecond: " + syllablesPerSecond);
         if (syllablesPerSecond >= fastSpeechRateThreshold) {
             return true;
@@ -185,6 +233,21 @@ public class GuidanceEventMonitor {
         return false;
     }
 
+    private void addGuidanceEvent(GuidanceEvent guidanceEvent) {
+        if (guidanceEvents != null) {
+            guidanceEvents.add(guidanceEvent);
+        } else if (eventsWriter != null) {
+            try {
+                eventsWriter.write(guidanceEvent.toString() + "\n");
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return the turns of the session, or only the latest ones if the monitor keeps those alone
+     */
     public Turns getTurns() {
         return turns;
     }
@@ -221,8 +284,15 @@ public class GuidanceEventMonitor {
         try {
             BufferedWriter bw = new BufferedWriter(new FileWriter(filename, false));
 
-            for (GuidanceEvent g : guidanceEvents) {
-                bw.write(g.toString() + "\n");
+            if (guidanceEvents != null) {
+                for (GuidanceEvent g : guidanceEvents) {
+                    bw.write(g.toString() + "\n");
+                }
+            } else if (eventsFilename != null) {
+                if (!closed) {
+                    eventsWriter.flush();
+                }
+                Turns.copy(eventsFilename, bw);
             }
 
             bw.close();
@@ -236,9 +306,7 @@ public class GuidanceEventMonitor {
         try {
             BufferedWriter bw = new BufferedWriter(new FileWriter(filename, false));
 
-            for (Turn t : turns) {
-                bw.write(t.toString() + "\n");
-            }
+            turns.writeTo(bw);
 
             bw.close();
         }
@@ -246,4 +314,20 @@ public class GuidanceEventMonitor {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Completes the files of the turns and GuidanceEvents, if given any. No more results can be checked afterwards.
+     */
+    public void close() {
+        try {
+            turns.close();
+            if (eventsWriter != null && !closed) {
+                eventsWriter.close();
+            }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+        closed = true;
+    }
 }
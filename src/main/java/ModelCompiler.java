@@ -0,0 +1,463 @@
+import weka.classifiers.Classifier;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles serialized Weka models into {@link CompiledClassifier}s.
+ * <p>
+ * Supported are J48 and REPTree into node arrays, RandomForest into one node array per tree, Logistic into its
+ * weight vectors and SMO with a linear kernel into one weight vector per pair of classes. The trained parameters are
+ * read from the fields of the Weka classes, which are not part of their public API, so a compiled model is only to
+ * be used once {@link #compile(Classifier, Instances)} has found it to predict the same class as Weka on every
+ * instance of a held-out set.
+ */
+public class ModelCompiler {
+    private static final String J48 = "weka.classifiers.trees.J48";
+    private static final String REP_TREE = "weka.classifiers.trees.REPTree";
+    private static final String RANDOM_FOREST = "weka.classifiers.trees.RandomForest";
+    private static final String RANDOM_TREE = "weka.classifiers.trees.RandomTree";
+    private static final String LOGISTIC = "weka.classifiers.functions.Logistic";
+    private static final String SMO = "weka.classifiers.functions.SMO";
+    private static final String NORMALIZE = "weka.filters.unsupervised.attribute.Normalize";
+    private static final String STANDARDIZE = "weka.filters.unsupervised.attribute.Standardize";
+
+    /**
+     * Compiles a model and checks it against Weka.
+     *
+     * @param classifier the trained model
+     * @param heldOut    instances with the header the model was trained on, not used to train it
+     * @return the compiled model, or null if the model is not supported or predicts differently from Weka on any
+     * of the held-out instances.
+     */
+    public static CompiledClassifier compile(Classifier classifier, Instances heldOut) {
+        CompiledClassifier compiled = compile(classifier, heldOut.numAttributes(), heldOut.classIndex(),
+                heldOut.numClasses());
+        if (compiled == null) {
+            return null;
+        }
+        int disagreements = countDisagreements(classifier, compiled, heldOut);
+        if (disagreements != 0) {
+            System.out.println("Compiled " + classifier.getClass().getSimpleName() + " disagrees with Weka on "
+                    + disagreements + " of " + heldOut.numInstances() + " instances, not using it");
+            return null;
+        }
+        return compiled;
+    }
+
+    /**
+     * Compiles a model without checking it.
+     *
+     * @return the compiled model, or null if the model is not supported.
+     */
+    static CompiledClassifier compile(Classifier classifier, int numAttributes, int classIndex, int numClasses) {
+        try {
+            switch (classifier.getClass().getName()) {
+                case J48:
+                    return compileJ48(classifier, numClasses);
+                case REP_TREE:
+                    return compileREPTree(classifier, numClasses);
+                case RANDOM_FOREST:
+                    return compileRandomForest(classifier, numClasses);
+                case LOGISTIC:
+                    return compileLogistic(classifier, numAttributes, classIndex, numClasses);
+                case SMO:
+                    return compileSMO(classifier, numAttributes, classIndex, numClasses);
+                default:
+                    return null;
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            System.out.println("Cannot compile " + classifier.getClass().getSimpleName() + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the number of instances without missing values that the compiled model classifies differently from
+     * Weka.
+     */
+    public static int countDisagreements(Classifier classifier, CompiledClassifier compiled, Instances instances) {
+        int disagreements = 0;
+        for (int i = 0; i < instances.numInstances(); i++) {
+            Instance instance = instances.instance(i);
+            double[] values = instance.toDoubleArray();
+            if (hasMissingValue(values, instances.classIndex())) {
+                continue;
+            }
+            double expected;
+            try {
+                expected = classifier.classifyInstance(instance);
+            } catch (Exception e) {
+                e.printStackTrace();
+                disagreements++;
+                continue;
+            }
+            double actual = compiled.classify(values);
+            if (!(expected == actual || Double.isNaN(expected) && Double.isNaN(actual))) {
+                disagreements++;
+            }
+        }
+        return disagreements;
+    }
+
+    /**
+     * @return whether any value but the class is missing.
+     */
+    static boolean hasMissingValue(double[] values, int classIndex) {
+        for (int i = 0; i < values.length; i++) {
+            if (i != classIndex && Double.isNaN(values[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Node arrays of one tree, filled depth first from the root.
+     */
+    private static class TreeBuilder {
+        final List<Integer> attribute = new ArrayList<>(), left = new ArrayList<>(), right = new ArrayList<>(),
+                leaf = new ArrayList<>();
+        final List<Double> split = new ArrayList<>();
+
+        int addNode() {
+            attribute.add(-1);
+            split.add(0.0);
+            left.add(-1);
+            right.add(-1);
+            leaf.add(-1);
+            return attribute.size() - 1;
+        }
+
+        void setSplit(int node, int attributeIndex, double splitPoint, int leftNode, int rightNode) {
+            attribute.set(node, attributeIndex);
+            split.set(node, splitPoint);
+            left.set(node, leftNode);
+            right.set(node, rightNode);
+        }
+
+        static CompiledClassifier.TreeEnsemble build(List<TreeBuilder> trees, List<double[]> leafDistributions,
+                                                     boolean inclusive, boolean normalizeSum, int numClasses) {
+            int n = trees.size();
+            int[][] attribute = new int[n][], left = new int[n][], right = new int[n][], leaf = new int[n][];
+            double[][] split = new double[n][];
+            for (int t = 0; t < n; t++) {
+                TreeBuilder tree = trees.get(t);
+                attribute[t] = toIntArray(tree.attribute);
+                left[t] = toIntArray(tree.left);
+                right[t] = toIntArray(tree.right);
+                leaf[t] = toIntArray(tree.leaf);
+                split[t] = new double[tree.split.size()];
+                for (int i = 0; i < split[t].length; i++) {
+                    split[t][i] = tree.split.get(i);
+                }
+            }
+            return new CompiledClassifier.TreeEnsemble(attribute, split, left, right, leaf,
+                    leafDistributions.toArray(new double[leafDistributions.size()][]), inclusive, normalizeSum,
+                    numClasses);
+        }
+    }
+
+    private static int[] toIntArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    private static double[] oneHot(double classValue, int numClasses) {
+        double[] distribution = new double[numClasses];
+        if (!Double.isNaN(classValue)) {
+            distribution[(int) classValue] = 1;
+        }
+        return distribution;
+    }
+
+    // J48: ClassifierTree nodes, C45Split / BinC45Split on numeric attributes, values up to the split point go left.
+    // Each leaf gets the one class J48 would pick there, by its own class probabilities or, for an empty leaf, by
+    // those of the parent's split for that branch.
+
+    private static CompiledClassifier compileJ48(Classifier j48, int numClasses) throws ReflectiveOperationException {
+        TreeBuilder tree = new TreeBuilder();
+        List<double[]> leaves = new ArrayList<>();
+        addJ48Node(get(j48, "m_root"), tree, leaves, numClasses);
+        List<TreeBuilder> trees = new ArrayList<>();
+        trees.add(tree);
+        return TreeBuilder.build(trees, leaves, true, false, numClasses);
+    }
+
+    private static int addJ48Node(Object node, TreeBuilder tree, List<double[]> leaves, int numClasses)
+            throws ReflectiveOperationException {
+        int index = tree.addNode();
+        Object model = get(node, "m_localModel");
+        if ((Boolean) get(node, "m_isLeaf")) {
+            tree.leaf.set(index, leaves.size());
+            leaves.add(oneHot(getJ48Class(get(model, "m_distribution"), 0, numClasses), numClasses));
+            return index;
+        }
+        if ((Integer) get(model, "m_numSubsets") != 2) {
+            throw new IllegalArgumentException("J48 split into " + get(model, "m_numSubsets") + " branches");
+        }
+        Object[] sons = (Object[]) get(node, "m_sons");
+        int[] children = new int[2];
+        for (int i = 0; i < 2; i++) {
+            if ((Boolean) get(sons[i], "m_isEmpty")) {
+                children[i] = tree.addNode();
+                tree.leaf.set(children[i], leaves.size());
+                leaves.add(oneHot(getJ48Class(get(model, "m_distribution"), i, numClasses), numClasses));
+            } else {
+                children[i] = addJ48Node(sons[i], tree, leaves, numClasses);
+            }
+        }
+        tree.setSplit(index, (Integer) get(model, "m_attIndex"), (Double) get(model, "m_splitPoint"), children[0],
+                children[1]);
+        return index;
+    }
+
+    /**
+     * The class J48's ClassifierTree.classifyInstance picks by the class probabilities of one bag of a
+     * Distribution, whether or not J48 uses Laplace estimates: the first one more than 1e-6 above the ones before
+     * it.
+     */
+    private static double getJ48Class(Object distribution, int bag, int numClasses)
+            throws ReflectiveOperationException {
+        double[][] perClassPerBag = (double[][]) get(distribution, "m_perClassPerBag");
+        double[] perBag = (double[]) get(distribution, "m_perBag"), perClass = (double[]) get(distribution,
+                "m_perClass");
+        double total = (Double) get(distribution, "totaL");
+
+        double maxProb = -1;
+        int maxIndex = 0;
+        for (int j = 0; j < numClasses; j++) {
+            double prob;
+            if (perBag[bag] > 1e-6) {
+                prob = perClassPerBag[bag][j] / perBag[bag];
+            } else {
+                prob = total > 1e-6 ? perClass[j] / total : 0;
+            }
+            if (prob - maxProb > 1e-6) {
+                maxIndex = j;
+                maxProb = prob;
+            }
+        }
+        return maxIndex;
+    }
+
+    // REPTree and RandomTree: Tree nodes, values below the split point go to successor 0. A leaf without a class
+    // distribution takes that of its nearest ancestor with one.
+
+    private static CompiledClassifier compileREPTree(Classifier repTree, int numClasses)
+            throws ReflectiveOperationException {
+        if (get(repTree, "m_zeroR") != null) {
+            throw new IllegalArgumentException("REPTree without a tree");
+        }
+        TreeBuilder tree = new TreeBuilder();
+        List<double[]> leaves = new ArrayList<>();
+        addTreeNode(get(repTree, "m_Tree"), "m_ClassProbs", false, null, tree, leaves, numClasses);
+
+        // the class of each leaf, picked as AbstractClassifier.classifyInstance does
+        for (int i = 0; i < leaves.size(); i++) {
+            leaves.set(i, oneHot(CompiledClassifier.maxIndex(leaves.get(i)), numClasses));
+        }
+        List<TreeBuilder> trees = new ArrayList<>();
+        trees.add(tree);
+        return TreeBuilder.build(trees, leaves, false, false, numClasses);
+    }
+
+    private static CompiledClassifier compileRandomForest(Classifier forest, int numClasses)
+            throws ReflectiveOperationException {
+        List<TreeBuilder> trees = new ArrayList<>();
+        List<double[]> leaves = new ArrayList<>();
+        for (Object randomTree : (Object[]) get(forest, "m_Classifiers")) {
+            if (!randomTree.getClass().getName().equals(RANDOM_TREE) || get(randomTree, "m_zeroR") != null) {
+                throw new IllegalArgumentException("RandomForest of " + randomTree.getClass().getSimpleName());
+            }
+            boolean allowUnclassified = (Boolean) get(randomTree, "m_AllowUnclassifiedInstances");
+            TreeBuilder tree = new TreeBuilder();
+            int first = leaves.size();
+            addTreeNode(get(randomTree, "m_Tree"), "m_ClassDistribution", allowUnclassified, null, tree, leaves,
+                    numClasses);
+
+            // RandomTree normalizes the distribution of the leaf it returns
+            for (int i = first; i < leaves.size(); i++) {
+                double[] distribution = leaves.get(i).clone();
+                if (distribution.length != numClasses) {
+                    throw new IllegalArgumentException("RandomTree leaf of " + distribution.length + " classes");
+                }
+                boolean empty = true;
+                for (double value : distribution) {
+                    empty &= value == 0;
+                }
+                if (!empty || !allowUnclassified) {
+                    CompiledClassifier.normalize(distribution);
+                }
+                leaves.set(i, distribution);
+            }
+            trees.add(tree);
+        }
+        return TreeBuilder.build(trees, leaves, false, true, numClasses);
+    }
+
+    /**
+     * @param distributionField the field of a node with its class distribution
+     * @param allowUnclassified whether an empty leaf returns an all zero distribution rather than that of its
+     *                          ancestor
+     * @param inherited         the distribution of the nearest ancestor that has one
+     */
+    private static int addTreeNode(Object node, String distributionField, boolean allowUnclassified,
+                                   double[] inherited, TreeBuilder tree, List<double[]> leaves, int numClasses)
+            throws ReflectiveOperationException {
+        int index = tree.addNode();
+        double[] distribution = (double[]) get(node, distributionField);
+        int attribute = (Integer) get(node, "m_Attribute");
+        if (attribute == -1) {
+            if (distribution == null) {
+                distribution = allowUnclassified ? new double[numClasses] : inherited;
+            }
+            if (distribution == null) {
+                throw new IllegalArgumentException("Tree leaf without a class distribution");
+            }
+            tree.leaf.set(index, leaves.size());
+            leaves.add(distribution);
+            return index;
+        }
+        Object[] successors = (Object[]) get(node, "m_Successors");
+        if (successors.length != 2) {
+            throw new IllegalArgumentException("Tree split into " + successors.length + " branches");
+        }
+        double[] passed = distribution != null ? distribution : inherited;
+        int left = addTreeNode(successors[0], distributionField, allowUnclassified, passed, tree, leaves,
+                numClasses);
+        int right = addTreeNode(successors[1], distributionField, allowUnclassified, passed, tree, leaves,
+                numClasses);
+        tree.setSplit(index, attribute, (Double) get(node, "m_SplitPoint"), left, right);
+        return index;
+    }
+
+    // Logistic: its parameters are in the units of the attributes, so they apply to the values as they are, as
+    // long as none of the attributes was removed as useless.
+
+    private static CompiledClassifier compileLogistic(Classifier logistic, int numAttributes, int classIndex,
+                                                      int numClasses) throws ReflectiveOperationException {
+        int numPredictors = (Integer) get(logistic, "m_NumPredictors");
+        if (numPredictors != numAttributes - 1 || (Integer) get(logistic, "m_ClassIndex") != classIndex
+                || (Integer) get(logistic, "m_NumClasses") != numClasses) {
+            throw new IllegalArgumentException("Logistic over other attributes than the header's");
+        }
+        double[][] par = (double[][]) get(logistic, "m_Par");
+        return new CompiledClassifier.LogisticRegression(par, classIndex, numClasses);
+    }
+
+    // SMO: one BinarySMO per pair of classes, each with the weights of its linear machine over the attributes as
+    // scaled by SMO's filter, Normalize by default.
+
+    private static CompiledClassifier compileSMO(Classifier smo, int numAttributes, int classIndex, int numClasses)
+            throws ReflectiveOperationException {
+        if (!(Boolean) get(smo, "m_KernelIsLinear") || (Boolean) get(smo, "m_fitCalibratorModels",
+                "m_fitLogisticModels")
+                || get(smo, "m_NominalToBinary") != null) {
+            throw new IllegalArgumentException("SMO without a plain linear kernel");
+        }
+
+        double[] center = new double[numAttributes], divisor = new double[numAttributes];
+        boolean[] zero = new boolean[numAttributes];
+        double factor = 1, translation = 0;
+        Arrays.fill(divisor, 1);
+        Object filter = get(smo, "m_Filter");
+        if (filter != null && filter.getClass().getName().equals(NORMALIZE)) {
+            double[] min = (double[]) get(filter, "m_MinArray"), max = (double[]) get(filter, "m_MaxArray");
+            factor = (Double) get(filter, "m_Scale");
+            translation = (Double) get(filter, "m_Translation");
+            for (int k = 0; k < numAttributes; k++) {
+                if (k != classIndex) {
+                    zero[k] = Double.isNaN(min[k]) || max[k] == min[k];
+                    center[k] = min[k];
+                    divisor[k] = max[k] - min[k];
+                }
+            }
+        } else if (filter != null && filter.getClass().getName().equals(STANDARDIZE)) {
+            double[] means = (double[]) get(filter, "m_Means"), stdDevs = (double[]) get(filter, "m_StdDevs");
+            for (int k = 0; k < numAttributes; k++) {
+                if (k != classIndex) {
+                    center[k] = means[k];
+                    divisor[k] = stdDevs[k] > 0 ? stdDevs[k] : 1;
+                }
+            }
+        } else if (filter != null) {
+            throw new IllegalArgumentException("SMO with " + filter.getClass().getSimpleName());
+        }
+
+        Object[][] machines = (Object[][]) get(smo, "m_classifiers");
+        List<Integer> first = new ArrayList<>(), second = new ArrayList<>();
+        List<int[]> indices = new ArrayList<>();
+        List<double[]> weights = new ArrayList<>();
+        List<Double> bias = new ArrayList<>();
+        for (int i = 0; i < numClasses; i++) {
+            for (int j = i + 1; j < numClasses; j++) {
+                Object machine = machines[i][j];
+                double[] sparseWeights = (double[]) get(machine, "m_sparseWeights");
+                if (sparseWeights == null) {
+                    if (get(machine, "m_alpha") != null) {
+                        throw new IllegalArgumentException("SMO machine without linear weights");
+                    }
+                    continue;
+                }
+                int[] sparseIndices = (int[]) get(machine, "m_sparseIndices");
+
+                // the dot product skips the class
+                List<Integer> keptIndices = new ArrayList<>();
+                List<Double> keptWeights = new ArrayList<>();
+                for (int p = 0; p < sparseIndices.length; p++) {
+                    if (sparseIndices[p] != classIndex) {
+                        keptIndices.add(sparseIndices[p]);
+                        keptWeights.add(sparseWeights[p]);
+                    }
+                }
+                double[] w = new double[keptWeights.size()];
+                for (int p = 0; p < w.length; p++) {
+                    w[p] = keptWeights.get(p);
+                }
+                first.add(i);
+                second.add(j);
+                indices.add(toIntArray(keptIndices));
+                weights.add(w);
+                bias.add((Double) get(machine, "m_b"));
+            }
+        }
+        if (bias.isEmpty()) {
+            throw new IllegalArgumentException("SMO without machines");
+        }
+        double[] b = new double[bias.size()];
+        for (int m = 0; m < b.length; m++) {
+            b[m] = bias.get(m);
+        }
+        return new CompiledClassifier.PairwiseLinear(center, divisor, zero, factor, translation, toIntArray(first),
+                toIntArray(second), indices.toArray(new int[indices.size()][]),
+                weights.toArray(new double[weights.size()][]), b, numClasses);
+    }
+
+    /**
+     * Reads a field of an object, declared by its class or any superclass.
+     *
+     * @param names the name of the field, or its names in different Weka versions
+     */
+    private static Object get(Object object, String... names) throws ReflectiveOperationException {
+        for (String name : names) {
+            for (Class<?> c = object.getClass(); c != null; c = c.getSuperclass()) {
+                try {
+                    Field field = c.getDeclaredField(name);
+                    field.setAccessible(true);
+                    return field.get(object);
+                } catch (NoSuchFieldException e) {
+                    // declared further up
+                }
+            }
+        }
+        throw new NoSuchFieldException(object.getClass().getName() + "." + names[0]);
+    }
+}
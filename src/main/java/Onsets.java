@@ -0,0 +1,130 @@
+/**
+ * A growable list of onsets, their times and saliences kept in primitive arrays.
+ * <p>
+ * Frames, turns and the fast speech check keep their onsets in these rather than in lists of {@link Onset}s. Read them
+ * by index with {@link #getTime(int)} and {@link #getSalience(int)}; {@link #get(int)} creates an {@link Onset} for
+ * code that wants one. Onsets in time order can be dropped from the front, for a look-back window.
+ */
+public class Onsets {
+    /**
+     * The onsets of a frame without any. Cannot be added to.
+     */
+    public static final Onsets EMPTY = new Onsets();
+
+    private double[] times;
+    private double[] saliences;
+    private int first = 0;  // index of the first onset, after some were dropped
+    private int end = 0;
+
+    public Onsets() {
+        this(0);
+    }
+
+    public Onsets(int capacity) {
+        times = new double[capacity];
+        saliences = new double[capacity];
+    }
+
+    public int size() {
+        return end - first;
+    }
+
+    public boolean isEmpty() {
+        return end == first;
+    }
+
+    public double getTime(int index) {
+        return times[checkIndex(index)];
+    }
+
+    public double getSalience(int index) {
+        return saliences[checkIndex(index)];
+    }
+
+    public Onset get(int index) {
+        return new Onset(getTime(index), getSalience(index));
+    }
+
+    public void add(double time, double salience) {
+        makeRoom(1);
+        times[end] = time;
+        saliences[end] = salience;
+        end++;
+    }
+
+    public void add(Onset onset) {
+        add(onset.time, onset.salience);
+    }
+
+    public void addAll(Onsets onsets) {
+        int count = onsets.size();
+        if (count == 0) {
+            return;
+        }
+        makeRoom(count);
+        System.arraycopy(onsets.times, onsets.first, times, end, count);
+        System.arraycopy(onsets.saliences, onsets.first, saliences, end, count);
+        end += count;
+    }
+
+    /**
+     * Drops the onsets from the front that are before the time. The onsets should be in time order.
+     *
+     * @param time the time, in seconds, of the earliest onset to keep
+     */
+    public void removeBefore(double time) {
+        while (first < end && times[first] < time) {
+            first++;
+        }
+        if (first == end) {
+            first = end = 0;
+        }
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return first + index;
+    }
+
+    /**
+     * Makes room at the end for more onsets, moving the onsets to the front if that is enough, as they are when
+     * used as a window, or else growing the arrays.
+     */
+    private void makeRoom(int count) {
+        if (end + count <= times.length) {
+            return;
+        }
+        if (this == EMPTY) {
+            throw new UnsupportedOperationException("Onsets.EMPTY cannot be added to");
+        }
+        int size = size();
+        double[] newTimes = times, newSaliences = saliences;
+        if (size + count > times.length / 2) {
+            int capacity = Math.max(4, 2 * (size + count));
+            newTimes = new double[capacity];
+            newSaliences = new double[capacity];
+        }
+        System.arraycopy(times, first, newTimes, 0, size);
+        System.arraycopy(saliences, first, newSaliences, 0, size);
+        times = newTimes;
+        saliences = newSaliences;
+        first = 0;
+        end = size;
+    }
+
+    /**
+     * @return the onsets like a list of {@link Onset}s, e.g. "[(0.51, 3.2), (0.74, 2.8)]".
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = first; i < end; i++) {
+            if (i > first) {
+                sb.append(", ");
+            }
+            sb.append('(').append(times[i]).append(", ").append(saliences[i]).append(')');
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,306 @@
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Times the stages of a dispatcher pipeline: the latency of each {@link AudioProcessor} and of whole frames, the
+ * frames per second, the real-time factor, and the frames that were late or dropped.
+ * <p>
+ * Add each processor through {@link #wrap(String, AudioProcessor)}, in order. A frame starts at the first stage and
+ * ends after the last one, or at a stage that drops it by returning false, which stops the dispatcher passing it on.
+ * A frame is late if it took longer than the time it covers, the hop between frames, as a live pipeline would then
+ * fall behind. The metrics can be printed with {@link #report()}, every so often with {@link
+ * #startReporting(PrintStream, long)}, and read through JMX after {@link #registerMBeans()}.
+ */
+public class PipelineMetrics {
+    /**
+     * The metrics of the whole pipeline, as seen through JMX.
+     */
+    public interface PipelineMXBean {
+        long getFrames();
+
+        long getLateFrames();
+
+        long getDroppedFrames();
+
+        double getFramesPerSecond();
+
+        double getRealTimeFactor();
+
+        double getMeanFrameMicros();
+
+        double getP99FrameMicros();
+    }
+
+    /**
+     * The metrics of a stage, as seen through JMX.
+     */
+    public interface StageMXBean {
+        String getName();
+
+        long getFrames();
+
+        long getDroppedFrames();
+
+        double getMeanMicros();
+
+        double getP50Micros();
+
+        double getP99Micros();
+
+        double getMaxMicros();
+    }
+
+    private final String name;
+    private final long frameNanos;      // the hop between frames
+    private final List<Stage> stages = new ArrayList<>();
+    private final LatencyHistogram frameLatency = new LatencyHistogram();
+    private final Pipeline pipeline = new Pipeline();
+    private final AtomicLong lateFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private volatile long firstFrameStart = -1, lastFrameEnd;
+    private long frameStart;    // of the frame going through the stages
+    private ScheduledExecutorService reporter = null;
+    private final List<ObjectName> mbeans = new ArrayList<>();
+
+    /**
+     * @param name         name of the pipeline, for the report and JMX
+     * @param frameSeconds the time between frames, (BUFFER_SIZE - BUFFER_OVERLAP) / SAMPLE_RATE
+     */
+    public PipelineMetrics(String name, double frameSeconds) {
+        this.name = name;
+        this.frameNanos = (long) (frameSeconds * 1e9);
+    }
+
+    /**
+     * Times the processor as the next stage of the pipeline.
+     *
+     * @param stage name of the stage
+     * @return the processor to add to the dispatcher instead
+     */
+    public AudioProcessor wrap(String stage, AudioProcessor processor) {
+        Stage timed = new Stage(stage, processor, stages.size());
+        stages.add(timed);
+        return timed;
+    }
+
+    private class Stage implements AudioProcessor, StageMXBean {
+        private final String name;
+        private final AudioProcessor processor;
+        private final int index;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong dropped = new AtomicLong();
+
+        Stage(String name, AudioProcessor processor, int index) {
+            this.name = name;
+            this.processor = processor;
+            this.index = index;
+        }
+
+        @Override
+        public boolean process(AudioEvent audioEvent) {
+            long start = System.nanoTime();
+            if (index == 0) {
+                frameStart = start;
+                if (firstFrameStart < 0) {
+                    firstFrameStart = start;
+                }
+            }
+            boolean passOn = processor.process(audioEvent);
+            long end = System.nanoTime();
+            latency.record(end - start);
+
+            if (!passOn) {
+                dropped.incrementAndGet();
+                droppedFrames.incrementAndGet();
+            }
+            if (!passOn || index == stages.size() - 1) {
+                frameLatency.record(end - frameStart);
+                if (end - frameStart > frameNanos) {
+                    lateFrames.incrementAndGet();
+                }
+                lastFrameEnd = end;
+            }
+            return passOn;
+        }
+
+        @Override
+        public void processingFinished() {
+            processor.processingFinished();
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getFrames() {
+            return latency.getCount();
+        }
+
+        @Override
+        public long getDroppedFrames() {
+            return dropped.get();
+        }
+
+        @Override
+        public double getMeanMicros() {
+            return latency.getMean() / 1000;
+        }
+
+        @Override
+        public double getP50Micros() {
+            return latency.getValueAtPercentile(50) / 1000.0;
+        }
+
+        @Override
+        public double getP99Micros() {
+            return latency.getValueAtPercentile(99) / 1000.0;
+        }
+
+        @Override
+        public double getMaxMicros() {
+            return latency.getMax() / 1000.0;
+        }
+    }
+
+    private class Pipeline implements PipelineMXBean {
+        @Override
+        public long getFrames() {
+            return frameLatency.getCount();
+        }
+
+        @Override
+        public long getLateFrames() {
+            return lateFrames.get();
+        }
+
+        @Override
+        public long getDroppedFrames() {
+            return droppedFrames.get();
+        }
+
+        /**
+         * @return frames processed per second of wall time, since the first frame
+         */
+        @Override
+        public double getFramesPerSecond() {
+            long elapsed = lastFrameEnd - firstFrameStart;
+            return firstFrameStart < 0 || elapsed <= 0 ? 0 : getFrames() * 1e9 / elapsed;
+        }
+
+        /**
+         * @return wall time taken per second of audio: below 1 is faster than real time
+         */
+        @Override
+        public double getRealTimeFactor() {
+            long frames = getFrames();
+            return frames == 0 ? 0 : (double) (lastFrameEnd - firstFrameStart) / (frames * frameNanos);
+        }
+
+        @Override
+        public double getMeanFrameMicros() {
+            return frameLatency.getMean() / 1000;
+        }
+
+        @Override
+        public double getP99FrameMicros() {
+            return frameLatency.getValueAtPercentile(99) / 1000.0;
+        }
+    }
+
+    public PipelineMXBean getPipeline() {
+        return pipeline;
+    }
+
+    public List<? extends StageMXBean> getStages() {
+        return stages;
+    }
+
+    /**
+     * @return a table of the metrics of the pipeline and each stage, latencies in microseconds.
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s: %d frames, %.1f frames/s, real-time factor %.4f, %d late, %d dropped%n", name,
+                pipeline.getFrames(), pipeline.getFramesPerSecond(), pipeline.getRealTimeFactor(),
+                pipeline.getLateFrames(), pipeline.getDroppedFrames()));
+        sb.append(String.format("%-20s %10s %10s %10s %10s %10s %8s%n", "stage", "frames", "mean us", "p50 us",
+                "p99 us", "max us", "dropped"));
+        for (Stage stage : stages) {
+            sb.append(String.format("%-20s %10d %10.1f %10.1f %10.1f %10.1f %8d%n", stage.name, stage.getFrames(),
+                    stage.getMeanMicros(), stage.getP50Micros(), stage.getP99Micros(), stage.getMaxMicros(),
+                    stage.getDroppedFrames()));
+        }
+        sb.append(String.format("%-20s %10d %10.1f %10.1f %10.1f %10.1f %8d%n", "frame", pipeline.getFrames(),
+                pipeline.getMeanFrameMicros(), frameLatency.getValueAtPercentile(50) / 1000.0,
+                pipeline.getP99FrameMicros(), frameLatency.getMax() / 1000.0, pipeline.getDroppedFrames()));
+        return sb.toString();
+    }
+
+    /**
+     * Prints the {@link #report()} periodically, on a daemon thread, until {@link #stopReporting()}.
+     */
+    public synchronized void startReporting(final PrintStream out, long periodMillis) {
+        stopReporting();
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + " metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> out.print(report()), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, as CommBetter:type=Pipeline,name=&lt;name&gt; and a
+     * CommBetter:type=Stage,pipeline=&lt;name&gt;,name=&lt;stage&gt; per stage. Register after adding the stages.
+     */
+    public synchronized void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            register(server, new ObjectName("CommBetter:type=Pipeline,name=" + ObjectName.quote(name)), pipeline);
+            for (Stage stage : stages) {
+                register(server, new ObjectName("CommBetter:type=Stage,pipeline=" + ObjectName.quote(name)
+                        + ",name=" + ObjectName.quote(stage.name)), stage);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void register(MBeanServer server, ObjectName objectName, Object mbean) throws JMException {
+        server.registerMBean(mbean, objectName);
+        mbeans.add(objectName);
+    }
+
+    public synchronized void unregisterMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : mbeans) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+        }
+        mbeans.clear();
+    }
+}
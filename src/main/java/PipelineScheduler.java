@@ -0,0 +1,351 @@
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs many pipelines frame by frame on a few carrier threads, rather than each {@link be.tarsos.dsp.AudioDispatcher}
+ * on a thread of its own.
+ * <p>
+ * An AudioDispatcher holds a thread for as long as its audio lasts, blocked reading its stream between frames. Here a
+ * pipeline is a {@link StreamDispatcher}, and a carrier thread runs it for a turn of a few frames, then moves on to
+ * the next pipeline that has audio, round robin, so that a long recording or a session with a backlog cannot starve
+ * the others. A pipeline is either {@link #submit(StreamDispatcher, TarsosDSPAudioInputStream) submitted} with a
+ * stream, e.g. of a WAV file, read a turn at a time, or {@link #open(StreamDispatcher, Runnable) opened} to have its
+ * audio written to it as it arrives, e.g. by a {@link StreamingServer}.
+ * <p>
+ * The frames written and not yet processed are capped, over all the pipelines and for each one, as a writer that
+ * outpaces the carriers would otherwise queue audio without bound. A write that reaches a cap returns false, and the
+ * pipeline's writer is called back once there is room again. A stream is only read in a pipeline's turn, so it has no
+ * frames waiting.
+ */
+public class PipelineScheduler implements Closeable {
+    public static final int DEFAULT_FRAMES_PER_TURN = 32;
+    public static final int DEFAULT_MAX_FRAMES_IN_FLIGHT = 100000;  // about 17 minutes of audio at a 10 ms hop
+    private static final int MAX_FRAMES_PER_PIPELINE = 400;         // about 4 s
+
+    private final BlockingQueue<Pipeline> runQueue = new LinkedBlockingQueue<>();
+    private final Queue<Pipeline> waitingWriters = new ConcurrentLinkedQueue<>();
+    private final List<Thread> carriers = new ArrayList<>();
+    private final int framesPerTurn;
+    private final long maxFramesInFlight;
+    private final AtomicLong framesInFlight = new AtomicLong();
+    private final Set<Pipeline> pipelines = ConcurrentHashMap.newKeySet();   // not yet done
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a scheduler with one carrier thread per available processor.
+     */
+    public PipelineScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public PipelineScheduler(int numCarriers) {
+        this(numCarriers, DEFAULT_FRAMES_PER_TURN, DEFAULT_MAX_FRAMES_IN_FLIGHT);
+    }
+
+    /**
+     * @param numCarriers       number of threads to run the pipelines on
+     * @param framesPerTurn     frames a pipeline processes before the carrier moves on to the next one
+     * @param maxFramesInFlight frames written to all the pipelines and not yet processed, before writes return false
+     */
+    public PipelineScheduler(int numCarriers, int framesPerTurn, long maxFramesInFlight) {
+        this.framesPerTurn = framesPerTurn;
+        this.maxFramesInFlight = maxFramesInFlight;
+        for (int i = 0; i < numCarriers; i++) {
+            Thread carrier = new Thread(this::carry, "PipelineScheduler carrier " + i);
+            carrier.setDaemon(true);
+            carrier.start();
+            carriers.add(carrier);
+        }
+    }
+
+    /**
+     * Runs a pipeline on the audio of a stream, until its end, then closes the stream.
+     *
+     * @param dispatcher the pipeline, with its processors added, for the format of the stream
+     */
+    public Pipeline submit(StreamDispatcher dispatcher, TarsosDSPAudioInputStream stream) {
+        Pipeline pipeline = new Pipeline(dispatcher, stream, null);
+        pipeline.schedule();
+        return pipeline;
+    }
+
+    /**
+     * Opens a pipeline to write audio to, until {@link Pipeline#finish()}.
+     *
+     * @param dispatcher the pipeline, with its processors added
+     * @param onWritable called, on a carrier thread, when the pipeline can be written to again after a write returned
+     *                   false
+     */
+    public Pipeline open(StreamDispatcher dispatcher, Runnable onWritable) {
+        return new Pipeline(dispatcher, null, onWritable);
+    }
+
+    /**
+     * @return the number of pipelines not yet done
+     */
+    public int getNumPipelines() {
+        return pipelines.size();
+    }
+
+    /**
+     * @return the frames written to the pipelines and not yet processed
+     */
+    public long getFramesInFlight() {
+        return framesInFlight.get();
+    }
+
+    /**
+     * Stops the carriers, dropping the pipelines not yet done: their {@link Pipeline#completion()} completes
+     * exceptionally.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread carrier : carriers) {
+            carrier.interrupt();
+        }
+        for (Thread carrier : carriers) {
+            try {
+                carrier.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Pipeline pipeline : pipelines) {
+            pipeline.fail(new IllegalStateException("The scheduler is closed"));
+        }
+    }
+
+    private void carry() {
+        while (!closed) {
+            Pipeline pipeline;
+            try {
+                pipeline = runQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            pipeline.runTurn();
+            pipeline.scheduled.set(false);
+            if (pipeline.hasWork()) {
+                pipeline.schedule();
+            }
+        }
+    }
+
+    /**
+     * Calls back the writers waiting for room, that have it now.
+     */
+    private void wakeWriters() {
+        for (int i = waitingWriters.size(); i > 0 && framesInFlight.get() < maxFramesInFlight; i--) {
+            Pipeline pipeline = waitingWriters.poll();
+            if (pipeline == null) {
+                return;
+            }
+            if (pipeline.isWritable() && pipeline.waiting.compareAndSet(true, false)) {
+                pipeline.onWritable.run();
+            } else if (pipeline.waiting.get()) {
+                waitingWriters.add(pipeline);
+            }
+        }
+    }
+
+    /**
+     * A pipeline run by the scheduler.
+     */
+    public class Pipeline {
+        private final StreamDispatcher dispatcher;
+        private final TarsosDSPAudioInputStream stream;
+        private final Runnable onWritable;
+        private final int stepBytes;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean waiting = new AtomicBoolean();
+
+        // audio written, and the chunk being processed
+        private final Queue<byte[]> input = new ConcurrentLinkedQueue<>();
+        private final AtomicLong pendingBytes = new AtomicLong();
+        private byte[] chunk = null;
+        private int chunkOffset = 0;
+        private volatile boolean endOfInput = false;
+
+        private byte[] readBuffer = null;   // for a stream
+        private volatile boolean done = false;
+
+        private Pipeline(StreamDispatcher dispatcher, TarsosDSPAudioInputStream stream, Runnable onWritable) {
+            this.dispatcher = dispatcher;
+            this.stream = stream;
+            this.onWritable = onWritable;
+            this.stepBytes = dispatcher.getStepBytes();
+            pipelines.add(this);
+        }
+
+        /**
+         * Adds audio for the pipeline to process. The audio is copied.
+         *
+         * @return false if the frames waiting, of this pipeline or of all of them, have reached their cap: the audio
+         * was added, but the writer should wait to be called back before writing more.
+         */
+        public boolean write(byte[] pcm, int offset, int length) {
+            if (endOfInput) {
+                throw new IllegalStateException("The pipeline is finished");
+            }
+            byte[] copy = new byte[length];
+            System.arraycopy(pcm, offset, copy, 0, length);
+            input.add(copy);
+            long before = pendingBytes.getAndAdd(length);
+            framesInFlight.addAndGet((before + length) / stepBytes - before / stepBytes);
+            schedule();
+
+            if (isWritable()) {
+                return true;
+            }
+            waiting.set(true);
+            waitingWriters.add(this);
+            // there may have been room made since, with no writers waiting to be woken
+            if (isWritable() && waiting.compareAndSet(true, false)) {
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Ends the audio written: the pipeline processes what is left, then finishes.
+         */
+        public void finish() {
+            endOfInput = true;
+            schedule();
+        }
+
+        /**
+         * @return frames written to this pipeline and not yet processed
+         */
+        public long getPendingFrames() {
+            return pendingBytes.get() / stepBytes;
+        }
+
+        private boolean isWritable() {
+            return getPendingFrames() < Math.min(MAX_FRAMES_PER_PIPELINE, maxFramesInFlight)
+                    && framesInFlight.get() < maxFramesInFlight;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * @return completes when the pipeline has finished, or exceptionally if it failed
+         */
+        public CompletableFuture<Void> completion() {
+            return completion;
+        }
+
+        /**
+         * Blocks until the pipeline has finished.
+         */
+        public void await() throws InterruptedException {
+            try {
+                completion.get();
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+            }
+        }
+
+        private void schedule() {
+            if (!done && scheduled.compareAndSet(false, true)) {
+                runQueue.add(this);
+            }
+        }
+
+        private boolean hasWork() {
+            return !done && (stream != null || chunk != null || !input.isEmpty() || endOfInput);
+        }
+
+        /**
+         * Processes the next few frames, on a carrier thread.
+         */
+        private void runTurn() {
+            try {
+                if (stream != null) {
+                    readTurn();
+                } else {
+                    writeTurn();
+                }
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void readTurn() throws IOException {
+            if (readBuffer == null) {
+                readBuffer = new byte[framesPerTurn * stepBytes];
+            }
+            int read = 0, count = 0;
+            while (read < readBuffer.length && (count = stream.read(readBuffer, read, readBuffer.length - read)) > 0) {
+                read += count;
+            }
+            dispatcher.write(readBuffer, 0, read);
+            if (count < 0) {
+                stream.close();
+                end();
+            }
+        }
+
+        private void writeTurn() {
+            boolean ended = endOfInput;     // before looking at the input, as the last of it is added before
+            int budget = framesPerTurn * stepBytes;
+            while (budget > 0 && (chunk != null || (chunk = input.poll()) != null)) {
+                int count = Math.min(budget, chunk.length - chunkOffset);
+                dispatcher.write(chunk, chunkOffset, count);
+                chunkOffset += count;
+                budget -= count;
+                if (chunkOffset == chunk.length) {
+                    chunk = null;
+                    chunkOffset = 0;
+                }
+                long before = pendingBytes.getAndAdd(-count);
+                framesInFlight.addAndGet((before - count) / stepBytes - before / stepBytes);
+            }
+            wakeWriters();
+            if (ended && chunk == null && input.isEmpty()) {
+                end();
+            }
+        }
+
+        private void end() {
+            dispatcher.finish();
+            done = true;
+            pipelines.remove(this);
+            completion.complete(null);
+        }
+
+        private void fail(Exception e) {
+            done = true;
+            pipelines.remove(this);
+            framesInFlight.addAndGet(-(pendingBytes.getAndSet(0) / stepBytes));
+            input.clear();
+            wakeWriters();
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException closing) {
+                    e.addSuppressed(closing);
+                }
+            }
+            completion.completeExceptionally(e);
+        }
+    }
+}
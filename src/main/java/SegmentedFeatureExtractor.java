@@ -0,0 +1,310 @@
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.mfcc.MFCC;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Extracts the features of a single long WAV file by splitting it into time segments that are processed
+ * concurrently, then stitching the ARFF rows back together in order.
+ * <p>
+ * The output is identical to {@link WAVProcessor#processWAVFileForFeatures}:
+ * <ol>
+ * <li>The VoiceActivityDetector features of every frame are computed in parallel. The detector's state (the
+ * observation window minimums and the running silence energy) depends on the whole history of the recording, so no
+ * finite warm-up can reproduce it. Instead, the cheap labelling step runs over the features in order.</li>
+ * <li>The MFCCs and deltas are computed in parallel, each segment starting 2N frames early and running 2N frames
+ * past its end, so the delta-delta context of every frame written out is the same as in a sequential run.</li>
+ * </ol>
+ */
+public class SegmentedFeatureExtractor {
+    // 4 previous and 4 look ahead frames - this caters for N = 2, for delta, delta-delta MFCCs
+    private static final int DELTA_CONTEXT = 4;
+    // segments shorter than this are not worth the warm-up, ~5 s of 10 ms frames
+    private static final int MIN_SEGMENT_FRAMES = 500;
+
+    private final ExecutorService executor;
+    private final int numThreads;
+
+    /**
+     * Creates an extractor with one worker thread per available processor.
+     */
+    public SegmentedFeatureExtractor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public SegmentedFeatureExtractor(int numThreads) {
+        this.numThreads = numThreads;
+        this.executor = Executors.newFixedThreadPool(numThreads);
+    }
+
+    /**
+     * Processes a WAV file for features and saves it into an ARFF file, using one segment per worker thread.
+     * Blocks until the ARFF file is written.
+     *
+     * @param inputFilename Full path file name without extension
+     * @param append String to append to filename to indicate different runs for experiments
+     * @param user User to label voiced segments
+     */
+    public void processWAVFileForFeatures(String inputFilename, String append,
+            int SAMPLE_RATE, int BUFFER_SIZE, int BUFFER_OVERLAP,
+            int numCepstralCoeffs, int numMelFilters, float lowerFilterFreq, float upperFilterFreq, User user) {
+        processWAVFileForFeatures(inputFilename, append, numThreads, SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP,
+                numCepstralCoeffs, numMelFilters, lowerFilterFreq, upperFilterFreq, user);
+    }
+
+    /**
+     * Processes a WAV file for features and saves it into an ARFF file. Blocks until the ARFF file is written.
+     *
+     * @param inputFilename Full path file name without extension
+     * @param append String to append to filename to indicate different runs for experiments
+     * @param numSegments Number of segments to split the file into. Fewer are used for short files.
+     * @param user User to label voiced segments
+     */
+    public void processWAVFileForFeatures(String inputFilename, String append, int numSegments,
+            int SAMPLE_RATE, int BUFFER_SIZE, int BUFFER_OVERLAP,
+            int numCepstralCoeffs, int numMelFilters, float lowerFilterFreq, float upperFilterFreq, User user) {
+        File wavFile = new File(inputFilename + ".wav");
+        File arffFile = new File(inputFilename + append + ".arff");
+        List<File> parts = new ArrayList<>();
+        List<Future<File>> partFutures = new ArrayList<>();
+        boolean started = false, written = false;
+
+        try {
+            WAVFileInputStream stream = new WAVFileInputStream(wavFile);
+            long numSamples = stream.getFrameLength();
+            stream.close();
+
+            // Split the frames into segments, [segmentStarts[i], segmentStarts[i + 1])
+            int numFrames = getNumFrames(numSamples, BUFFER_SIZE, BUFFER_OVERLAP);
+            numSegments = Math.max(1, Math.min(numSegments, numFrames / MIN_SEGMENT_FRAMES));
+            int[] segmentStarts = new int[numSegments + 1];
+            for (int i = 0; i <= numSegments; i++) {
+                segmentStarts[i] = (int) ((long) numFrames * i / numSegments);
+            }
+
+            // 1. VAD features of every frame, in parallel
+            List<Future<float[]>> featureFutures = new ArrayList<>();
+            for (int i = 0; i < numSegments; i++) {
+                final int start = segmentStarts[i], end = segmentStarts[i + 1];
+                final boolean isLast = i == numSegments - 1;
+                featureFutures.add(executor.submit(() -> computeVADFeatures(wavFile, start, isLast ? -1 : end,
+                        SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP)));
+            }
+
+            // 2. Label the frames in order
+            VoiceActivityDetector vad = new VoiceActivityDetector(SAMPLE_RATE, BUFFER_SIZE);
+            boolean[] voiced = new boolean[numFrames];
+            int frame = 0;
+            for (Future<float[]> future : featureFutures) {
+                float[] features = future.get();
+                for (int i = 0; i < features.length; i += 3) {
+                    if (frame == voiced.length) {
+                        voiced = Arrays.copyOf(voiced, voiced.length * 2 + 1);
+                    }
+                    voiced[frame++] = vad.isVoiced(features[i], features[i + 1], features[i + 2]);
+                }
+            }
+            final boolean[] voicedFrames = voiced;
+
+            // 3. MFCCs and deltas, in parallel, each segment written to its own part file
+            for (int i = 0; i < numSegments; i++) {
+                final int start = segmentStarts[i], end = segmentStarts[i + 1];
+                final boolean isLast = i == numSegments - 1;
+                final File part = new File(inputFilename + append + ".arff.part" + i);
+                parts.add(part);
+                partFutures.add(executor.submit(() -> {
+                    writeFeatures(wavFile, part, start, isLast ? -1 : end, voicedFrames, SAMPLE_RATE, BUFFER_SIZE,
+                            BUFFER_OVERLAP, numCepstralCoeffs, numMelFilters, lowerFilterFreq, upperFilterFreq,
+                            user);
+                    return part;
+                }));
+            }
+
+            // 4. Stitch the parts together behind the header
+            try (FileOutputStream out = new FileOutputStream(arffFile, false)) {
+                started = true;
+                out.write(AudioUtils.getARFFHeader(inputFilename).getBytes());
+                FileChannel outChannel = out.getChannel();
+                for (Future<File> future : partFutures) {
+                    try (FileChannel inChannel = new FileInputStream(future.get()).getChannel()) {
+                        long position = 0, size = inChannel.size();
+                        while (position < size) {
+                            position += inChannel.transferTo(position, size - position, outChannel);
+                        }
+                    }
+                }
+            }
+            written = true;
+        } catch (IOException | ExecutionException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        } finally {
+            // the segments still being written would write their parts after they are deleted
+            for (Future<File> future : partFutures) {
+                future.cancel(false);
+                try {
+                    if (!future.isCancelled() && !Thread.currentThread().isInterrupted()) {
+                        future.get();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    // reported when stitching, or moot as the ARFF file is not written
+                }
+            }
+            for (File part : parts) {
+                part.delete();
+            }
+            // a half written ARFF file is worse than none
+            if (started && !written) {
+                arffFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Computes the number of frames an AudioDispatcher reads from a stream. The first frame is a full buffer, every
+     * frame after reads a step of new samples, and the last frame is zero padded.
+     */
+    public static int getNumFrames(long numSamples, int BUFFER_SIZE, int BUFFER_OVERLAP) {
+        if (numSamples <= 0) {
+            return 0;
+        }
+        int stepSize = BUFFER_SIZE - BUFFER_OVERLAP;
+        return (int) Math.max(1, (numSamples - BUFFER_OVERLAP + stepSize - 1) / stepSize);
+    }
+
+    /**
+     * Creates a dispatcher that reads the frames [startFrame, endFrame] of a WAV file.
+     *
+     * @param endFrame last frame to read, inclusive, or -1 to read to the end of the file.
+     */
+    private static AudioDispatcher segmentDispatcher(File wavFile, int startFrame, int endFrame,
+            int BUFFER_SIZE, int BUFFER_OVERLAP) throws IOException {
+        int stepSize = BUFFER_SIZE - BUFFER_OVERLAP;
+        long numSamples = endFrame < 0 ? Long.MAX_VALUE
+                : (long) stepSize * (endFrame - startFrame) + BUFFER_SIZE;
+        WAVFileInputStream stream = new WAVFileInputStream(wavFile, (long) stepSize * startFrame, numSamples);
+        return new AudioDispatcher(stream, BUFFER_SIZE, BUFFER_OVERLAP);
+    }
+
+    /**
+     * @param endFrame end of the segment, exclusive, or -1 for the last segment.
+     * @return the energy, dominant frequency and spectral flatness of each frame in the segment.
+     */
+    private static float[] computeVADFeatures(File wavFile, int startFrame, int endFrame,
+            int SAMPLE_RATE, int BUFFER_SIZE, int BUFFER_OVERLAP) throws IOException {
+        AudioDispatcher dispatcher = segmentDispatcher(wavFile, startFrame, endFrame < 0 ? -1 : endFrame - 1,
+                BUFFER_SIZE, BUFFER_OVERLAP);
+        VoiceActivityDetector vad = new VoiceActivityDetector(SAMPLE_RATE, BUFFER_SIZE);
+        final float[][] features = {new float[3 * Math.max(1, endFrame - startFrame)]};
+        final int[] count = {0};
+
+        dispatcher.addAudioProcessor(new AudioProcessor() {
+            private final float[] frameFeatures = new float[3];
+
+            @Override
+            public boolean process(AudioEvent audioEvent) {
+                vad.computeFeatures(audioEvent.getFloatBuffer(), frameFeatures);
+                if (count[0] + 3 > features[0].length) {
+                    features[0] = Arrays.copyOf(features[0], features[0].length * 2);
+                }
+                System.arraycopy(frameFeatures, 0, features[0], count[0], 3);
+                count[0] += 3;
+                return true;
+            }
+
+            @Override
+            public void processingFinished() {
+
+            }
+        });
+        dispatcher.run();
+
+        return Arrays.copyOf(features[0], count[0]);
+    }
+
+    /**
+     * Writes the ARFF rows of the frames [startFrame, endFrame), warming up the delta buffer on the frames either
+     * side of the segment.
+     *
+     * @param endFrame end of the segment, exclusive, or -1 for the last segment.
+     */
+    private static void writeFeatures(File wavFile, File part, int startFrame, int endFrame, boolean[] voiced,
+            int SAMPLE_RATE, int BUFFER_SIZE, int BUFFER_OVERLAP,
+            int numCepstralCoeffs, int numMelFilters, float lowerFilterFreq, float upperFilterFreq, User user)
+            throws IOException {
+        final int firstFrame = Math.max(0, startFrame - DELTA_CONTEXT);
+        final float frameStep = ((float) (BUFFER_SIZE - BUFFER_OVERLAP)) / SAMPLE_RATE;
+        AudioDispatcher dispatcher = segmentDispatcher(wavFile, firstFrame,
+                endFrame < 0 ? -1 : endFrame - 1 + DELTA_CONTEXT, BUFFER_SIZE, BUFFER_OVERLAP);
+
+        final ARFFFeatureWriter writer = new ARFFFeatureWriter(part.getPath(), null); // rows only
+        final DeltaMFCCBuffer deltaBuffer = new DeltaMFCCBuffer(numCepstralCoeffs);
+        final float[] unvoicedMFCC = new float[numCepstralCoeffs];
+        final MFCC mfcc = new MFCC(BUFFER_SIZE, (float) SAMPLE_RATE, numCepstralCoeffs, numMelFilters,
+                lowerFilterFreq, upperFilterFreq);
+
+        dispatcher.addAudioProcessor(mfcc);
+        dispatcher.addAudioProcessor(new AudioProcessor() {
+            int frame = firstFrame;         // frame being pushed
+            int outputFrame = firstFrame;   // frame being written out
+
+            @Override
+            public boolean process(AudioEvent audioEvent) {
+                // frames past the labelled ones only happen if the file grew, treat them as unvoiced
+                boolean isVoiced = frame < voiced.length && voiced[frame];
+                if (deltaBuffer.push(frame * frameStep, isVoiced ? mfcc.getMFCC() : unvoicedMFCC,
+                        isVoiced ? user : User.NONE)) {
+                    writeFrame();
+                }
+                frame++;
+                return true;
+            }
+
+            @Override
+            public void processingFinished() {
+                // Only the last segment pads the end, the others stop at their look ahead frames
+                if (endFrame < 0) {
+                    while (deltaBuffer.flush()) {
+                        writeFrame();
+                    }
+                }
+            }
+
+            private void writeFrame() {
+                // the warm-up frames belong to the previous segment
+                if (outputFrame >= startFrame && (endFrame < 0 || outputFrame < endFrame)) {
+                    try {
+                        writer.write(deltaBuffer.getOutputFrame());
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+                outputFrame++;
+            }
+        });
+        dispatcher.run();
+
+        writer.close();
+    }
+
+    /**
+     * Stops the worker threads. The extractor cannot be used afterwards.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
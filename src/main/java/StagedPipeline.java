@@ -0,0 +1,207 @@
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs the processors of a pipeline in stages, each stage on a thread of its own, so that one stream is processed on
+ * several cores at once, e.g. a live session that needs frames out as soon as possible.
+ * <p>
+ * Added to a dispatcher as its only processor, this copies each frame into a {@link FrameRing} and returns, so the
+ * dispatcher's thread is left to decode the next one. The audio stage runs the audio processors on the copy, then
+ * takes the {@link AudioProcessingResult} they made of it and passes it on to the frame stages, each of which does
+ * its part, e.g. classifying it, then passes it on to the next, through a ring each. Every stage has a single thread
+ * and the rings are queues, so the frames reach each stage in order, as they would when processed sequentially.
+ * <p>
+ * The audio processors share the frame they work on, e.g. through a field, as in a dispatcher; each frame stage is
+ * handed the frame. A stage that throws is reported and the frame dropped, without stopping the others. When the
+ * dispatcher finishes, this waits for the frames still in the stages, then finishes each stage in turn, so the
+ * pipeline is done by the time the dispatcher is.
+ */
+public class StagedPipeline implements AudioProcessor {
+    /**
+     * The frames each ring holds: 0.64 s at a 10 ms hop.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private static class AudioSlot {
+        float[] buffer;
+        long samplesProcessed;
+        int overlap;
+    }
+
+    private static class FrameSlot {
+        AudioProcessingResult frame;
+    }
+
+    private final String name;
+    private final TarsosDSPAudioFormat format;
+    private final int bufferSize;
+    private final int capacity;
+    private final Supplier<AudioProcessingResult> audioResult;
+    private final List<AudioProcessor> audioProcessors = new ArrayList<>();
+    private final List<String> stageNames = new ArrayList<>();
+    private final List<Consumer<AudioProcessingResult>> stages = new ArrayList<>();
+    private final List<Runnable> stagesFinished = new ArrayList<>();
+
+    private FrameRing<AudioSlot> audio = null;
+    private final List<Thread> threads = new ArrayList<>();
+
+    /**
+     * @param name        name of the pipeline, for its threads
+     * @param sampleRate  sample rate of the audio
+     * @param bufferSize  samples per frame
+     * @param capacity    frames each ring holds, before a stage waits for the next one to catch up
+     * @param audioResult gives the frame the audio processors made of the audio, once they have all processed it
+     */
+    public StagedPipeline(String name, float sampleRate, int bufferSize, int capacity,
+                          Supplier<AudioProcessingResult> audioResult) {
+        this.name = name;
+        this.format = new TarsosDSPAudioFormat(sampleRate, 16, 1, true, false);
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+        this.audioResult = audioResult;
+    }
+
+    /**
+     * Adds a processor to the audio stage, the first one.
+     */
+    public void addAudioProcessor(AudioProcessor audioProcessor) {
+        audioProcessors.add(audioProcessor);
+    }
+
+    /**
+     * Adds a stage after the ones added so far, on a thread of its own.
+     *
+     * @param stage    does its part of each frame
+     * @param finished run once the stage has had the last frame, or null
+     */
+    public void addStage(String stageName, Consumer<AudioProcessingResult> stage, Runnable finished) {
+        stageNames.add(stageName);
+        stages.add(stage);
+        stagesFinished.add(finished);
+    }
+
+    /**
+     * Copies the frame to the audio stage, starting the stages on the first one.
+     */
+    @Override
+    public boolean process(AudioEvent audioEvent) {
+        if (audio == null) {
+            start();
+        }
+        AudioSlot slot = audio.claim();
+        System.arraycopy(audioEvent.getFloatBuffer(), 0, slot.buffer, 0, bufferSize);
+        slot.samplesProcessed = audioEvent.getSamplesProcessed();
+        slot.overlap = audioEvent.getOverlap();
+        audio.publish();
+        return true;
+    }
+
+    /**
+     * Waits for the stages to process the frames they have, and finish.
+     */
+    @Override
+    public void processingFinished() {
+        if (audio == null) {
+            start();
+        }
+        audio.close();
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void start() {
+        audio = new FrameRing<>(capacity, () -> {
+            AudioSlot slot = new AudioSlot();
+            slot.buffer = new float[bufferSize];
+            return slot;
+        });
+        List<FrameRing<FrameSlot>> rings = new ArrayList<>();
+        for (int i = 0; i < stages.size(); i++) {
+            rings.add(new FrameRing<>(capacity, FrameSlot::new));
+        }
+
+        final FrameRing<FrameSlot> first = rings.isEmpty() ? null : rings.get(0);
+        threads.add(new Thread(() -> runAudioStage(first), name + " audio"));
+        for (int i = 0; i < stages.size(); i++) {
+            final int stage = i;
+            final FrameRing<FrameSlot> next = i + 1 < rings.size() ? rings.get(i + 1) : null;
+            threads.add(new Thread(() -> runStage(stage, rings.get(stage), next), name + " " + stageNames.get(i)));
+        }
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void runAudioStage(FrameRing<FrameSlot> next) {
+        AudioEvent audioEvent = new AudioEvent(format);
+        AudioSlot slot;
+        while ((slot = audio.take()) != null) {
+            audioEvent.setFloatBuffer(slot.buffer);
+            audioEvent.setOverlap(slot.overlap);
+            audioEvent.setBytesProcessed(slot.samplesProcessed * format.getFrameSize());
+            boolean passOn = true;
+            try {
+                for (AudioProcessor processor : audioProcessors) {
+                    if (!processor.process(audioEvent)) {
+                        passOn = false;
+                        break;
+                    }
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                passOn = false;
+            }
+            audio.release();
+            if (passOn && next != null) {
+                next.claim().frame = audioResult.get();
+                next.publish();
+            }
+        }
+        for (AudioProcessor processor : audioProcessors) {
+            processor.processingFinished();
+        }
+        if (next != null) {
+            next.close();
+        }
+    }
+
+    private void runStage(int stage, FrameRing<FrameSlot> ring, FrameRing<FrameSlot> next) {
+        Consumer<AudioProcessingResult> consumer = stages.get(stage);
+        FrameSlot slot;
+        while ((slot = ring.take()) != null) {
+            AudioProcessingResult frame = slot.frame;
+            slot.frame = null;
+            ring.release();
+            try {
+                consumer.accept(frame);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                continue;
+            }
+            if (next != null) {
+                next.claim().frame = frame;
+                next.publish();
+            }
+        }
+        if (stagesFinished.get(stage) != null) {
+            stagesFinished.get(stage).run();
+        }
+        if (next != null) {
+            next.close();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dispatches audio that is pushed to it as frames to processors, as an {@link be.tarsos.dsp.AudioDispatcher} does
+ * for audio it reads from a stream.
+ * <p>
+ * An AudioDispatcher blocks its thread reading the stream. This is written to, with whatever audio has arrived, e.g.
+ * from a non-blocking socket, and processes each frame that the audio completes, before returning. The frames, their
+ * time stamps and overlaps are those an AudioDispatcher would give for the same audio, including the zero padded
+ * last frame, so the processors see no difference. Not thread safe: write from one thread at a time.
+ */
+public class StreamDispatcher {
+    private final List<AudioProcessor> audioProcessors = new ArrayList<>();
+    private final TarsosDSPAudioFormat format;
+    private final TarsosDSPAudioFloatConverter converter;
+    private final AudioEvent audioEvent;
+    private final float[] audioFloatBuffer;
+    private final byte[] audioByteBuffer;
+    private final int floatOverlap, floatStepSize;
+    private final int byteOverlap, byteStepSize;
+
+    private boolean firstBlock = true;  // the first frame is read whole, later ones a step at a time
+    private int blockBytes = 0;         // bytes of the block being filled
+    private long bytesProcessed = 0;
+    private boolean finished = false;
+
+    /**
+     * @param format          format of the audio written
+     * @param audioBufferSize samples per frame
+     * @param bufferOverlap   samples that each frame overlaps the previous one
+     */
+    public StreamDispatcher(TarsosDSPAudioFormat format, int audioBufferSize, int bufferOverlap) {
+        this.format = format;
+        this.converter = TarsosDSPAudioFloatConverter.getConverter(format);
+        this.audioEvent = new AudioEvent(format);
+        this.audioFloatBuffer = new float[audioBufferSize];
+        this.audioByteBuffer = new byte[audioBufferSize * format.getFrameSize()];
+        this.floatOverlap = bufferOverlap;
+        this.floatStepSize = audioBufferSize - bufferOverlap;
+        this.byteOverlap = bufferOverlap * format.getFrameSize();
+        this.byteStepSize = floatStepSize * format.getFrameSize();
+        audioEvent.setFloatBuffer(audioFloatBuffer);
+    }
+
+    public void addAudioProcessor(AudioProcessor audioProcessor) {
+        audioProcessors.add(audioProcessor);
+    }
+
+    /**
+     * Adds audio, processing the frames it completes. A frame can be split across writes anywhere, even within a
+     * sample.
+     */
+    public void write(byte[] bytes, int offset, int length) {
+        if (finished) {
+            throw new IllegalStateException("The stream is finished");
+        }
+        while (length > 0) {
+            int blockStart = firstBlock ? 0 : byteOverlap;
+            int blockSize = firstBlock ? audioByteBuffer.length : byteStepSize;
+            int count = Math.min(length, blockSize - blockBytes);
+            System.arraycopy(bytes, offset, audioByteBuffer, blockStart + blockBytes, count);
+            blockBytes += count;
+            offset += count;
+            length -= count;
+
+            if (blockBytes == blockSize) {
+                if (firstBlock) {
+                    converter.toFloatArray(audioByteBuffer, 0, audioFloatBuffer, 0, audioFloatBuffer.length);
+                } else {
+                    System.arraycopy(audioFloatBuffer, floatStepSize, audioFloatBuffer, 0, floatOverlap);
+                    converter.toFloatArray(audioByteBuffer, byteOverlap, audioFloatBuffer, floatOverlap,
+                            floatStepSize);
+                }
+                dispatch();
+            }
+        }
+    }
+
+    /**
+     * Ends the stream: processes the audio left over, zero padded to a frame, and tells the processors that
+     * processing is finished.
+     */
+    public void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (blockBytes > 0) {
+            int blockStart = firstBlock ? 0 : byteOverlap;
+            for (int i = blockStart + blockBytes; i < audioByteBuffer.length; i++) {
+                audioByteBuffer[i] = 0;
+            }
+            // as the AudioDispatcher does, a step is converted, even of a first frame
+            if (!firstBlock) {
+                System.arraycopy(audioFloatBuffer, floatStepSize, audioFloatBuffer, 0, floatOverlap);
+            }
+            converter.toFloatArray(audioByteBuffer, blockStart, audioFloatBuffer, firstBlock ? 0 : floatOverlap,
+                    floatStepSize);
+            dispatch();
+        }
+        for (AudioProcessor processor : audioProcessors) {
+            processor.processingFinished();
+        }
+    }
+
+    /**
+     * @return the bytes of audio each frame after the first adds
+     */
+    public int getStepBytes() {
+        return byteStepSize;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return the time stamp, in seconds, of the next frame: as an AudioDispatcher counts, the whole first frame and
+     * a step for each frame after it
+     */
+    public double getSecondsProcessed() {
+        return (double) bytesProcessed / format.getFrameSize() / format.getSampleRate();
+    }
+
+    private void dispatch() {
+        audioEvent.setOverlap(firstBlock ? 0 : floatOverlap);
+        audioEvent.setBytesProcessed(bytesProcessed);
+        for (AudioProcessor processor : audioProcessors) {
+            if (!processor.process(audioEvent)) {
+                break;
+            }
+        }
+        bytesProcessed += firstBlock ? audioByteBuffer.length : byteStepSize;
+        firstBlock = false;
+        blockBytes = 0;
+    }
+}
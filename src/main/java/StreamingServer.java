@@ -0,0 +1,455 @@
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs live guidance sessions on audio streamed to it, over local TCP or Unix domain sockets, or named pipes.
+ * <p>
+ * Each connection is a {@link StreamingSession}: the client sends raw PCM in {@link StreamingSession#FORMAT}, and the
+ * server sends back each guidance event as it fires, a line of {@link GuidanceEvent#toString()}. When the client
+ * shuts down its output, the session finishes the audio left over, sends the last events and closes the connection.
+ * <p>
+ * The sockets are served by a single I/O thread with a selector, so that hundreds of sessions do not need a thread
+ * each. The audio read is written to the session's pipeline on a {@link PipelineScheduler}, which processes it on
+ * its carrier threads, a few frames of a session at a time. A connection that sends faster than its session keeps up
+ * is not read from until the scheduler has room for it again. The carriers share the model, each classifying with a
+ * copy of its own, as Weka models are not safe to share between threads.
+ * <p>
+ * Named pipes cannot be selected on, so each is read on a thread of its own, its events written to a file or
+ * another pipe. Unix domain sockets need Java 16 or later.
+ */
+public class StreamingServer implements Closeable {
+    private static final int READ_BUFFER_SIZE = 1 << 14;
+
+    private final ThreadLocal<FrameClassifier> frameClassifiers;     // of each carrier or pipe thread
+    private final PipelineScheduler scheduler;
+    private final boolean ownScheduler;
+    private final Selector selector;
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();    // run on the I/O thread
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final AtomicInteger sessions = new AtomicInteger();
+    private Thread ioThread = null;
+    private volatile boolean running = false;
+
+    /**
+     * @param classifier the model, copied for each thread processing sessions
+     * @param compiled   the model compiled by {@link ModelCompiler#compile(Classifier, Instances)}, or null to only use
+     *                   Weka
+     * @param numWorkers number of threads to process the sessions on, the carriers of a scheduler of the server's
+     */
+    public StreamingServer(Classifier classifier, CompiledClassifier compiled, int numWorkers) throws IOException {
+        this(classifier, compiled, new PipelineScheduler(numWorkers), true);
+    }
+
+    /**
+     * @param classifier the model, copied for each carrier thread
+     * @param compiled   the model compiled by {@link ModelCompiler#compile(Classifier, Instances)}, or null to only use
+     *                   Weka
+     * @param scheduler  runs the sessions, e.g. alongside recordings processed offline; left running on close
+     */
+    public StreamingServer(Classifier classifier, CompiledClassifier compiled, PipelineScheduler scheduler)
+            throws IOException {
+        this(classifier, compiled, scheduler, false);
+    }
+
+    private StreamingServer(Classifier classifier, CompiledClassifier compiled, PipelineScheduler scheduler,
+                            boolean ownScheduler) throws IOException {
+        this.frameClassifiers = FrameClassifier.copies(classifier, compiled);
+        this.scheduler = scheduler;
+        this.ownScheduler = ownScheduler;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Accepts connections on a local TCP port.
+     *
+     * @param port the port, or 0 for any free one
+     * @return the address listened on
+     */
+    public SocketAddress listenTCP(int port) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        listen(server);
+        return server.getLocalAddress();
+    }
+
+    /**
+     * Accepts connections on a Unix domain socket, replacing any file at the path. Needs Java 16 or later.
+     */
+    public void listenUnix(String path) throws IOException {
+        ServerSocketChannel server;
+        SocketAddress address;
+        try {
+            ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+            server = (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class)
+                    .invoke(null, unix);
+            address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+                    .getMethod("of", String.class).invoke(null, path);
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            throw new IOException("Unix domain sockets need Java 16 or later", e);
+        }
+        Files.deleteIfExists(Paths.get(path));
+        server.bind(address);
+        new File(path).deleteOnExit();
+        listen(server);
+    }
+
+    private void listen(final ServerSocketChannel server) throws IOException {
+        server.configureBlocking(false);
+        onSelector(() -> {
+            try {
+                server.register(selector, SelectionKey.OP_ACCEPT);
+            } catch (ClosedChannelException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Runs a session on audio from a named pipe, on a thread of its own, until the writer closes the pipe.
+     *
+     * @param pipe   the pipe, e.g. made by mkfifo, to read the PCM from
+     * @param events the file or pipe to write the events to
+     * @return the thread of the session
+     */
+    public Thread servePipe(final String pipe, final String events) {
+        return servePipe(pipe, events, false);
+    }
+
+    /**
+     * @param staged whether to run the session in stages, on threads of their own besides the one reading the pipe,
+     *               for a stream that is to have its events with the least delay
+     */
+    public Thread servePipe(final String pipe, final String events, final boolean staged) {
+        Thread thread = new Thread(() -> {
+            try (InputStream in = new FileInputStream(pipe);
+                 final BufferedWriter out = new BufferedWriter(new FileWriter(events))) {
+                sessions.incrementAndGet();
+                StreamingSession session = new StreamingSession(frameClassifiers, staged, null, event -> {
+                    try {
+                        out.write(event.toString());
+                        out.newLine();
+                        out.flush();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+                byte[] buffer = new byte[READ_BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    session.write(buffer, 0, read);
+                }
+                session.finish();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                sessions.decrementAndGet();
+            }
+        }, "StreamingServer " + pipe);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Starts serving the sockets listened on, on the I/O thread.
+     */
+    public synchronized void start() {
+        if (ioThread != null) {
+            return;
+        }
+        running = true;
+        ioThread = new Thread(this::run, "StreamingServer I/O");
+        ioThread.start();
+    }
+
+    /**
+     * @return the number of sessions running
+     */
+    public int getNumSessions() {
+        return sessions.get();
+    }
+
+    /**
+     * Stops serving, closing the connections and dropping their sessions.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        Thread thread;
+        synchronized (this) {
+            thread = ioThread;
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+        if (ownScheduler) {
+            scheduler.close();
+        }
+    }
+
+    private void onSelector(Runnable task) {
+        selectorTasks.add(task);
+        selector.wakeup();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept((ServerSocketChannel) key.channel());
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        connection.read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.write();
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    private void accept(ServerSocketChannel server) throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            if (channel.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);   // events are small and urgent
+            }
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+            sessions.incrementAndGet();
+        }
+    }
+
+    /**
+     * A connection and its session. Reads and writes are on the I/O thread, the session on the scheduler's carriers.
+     */
+    private class Connection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private final PipelineScheduler.Pipeline pipeline;
+        private boolean readPaused = false;
+
+        private final Queue<ByteBuffer> output = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean writeRequested = new AtomicBoolean();
+        private volatile boolean sessionFinished = false;
+        private boolean closed = false;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            StreamingSession session = new StreamingSession(frameClassifiers, false, null, event -> {
+                output.add(ByteBuffer.wrap((event.toString() + "\n").getBytes(StandardCharsets.US_ASCII)));
+                requestWrite();
+            });
+            this.pipeline = scheduler.open(session.getDispatcher(), () -> onSelector(this::resumeReading));
+            pipeline.completion().whenComplete((done, failure) -> {
+                if (failure != null) {
+                    failure.printStackTrace();
+                }
+                sessionFinished = true;
+                requestWrite();
+            });
+        }
+
+        /**
+         * Reads what has arrived, on the I/O thread, for the session to process.
+         */
+        void read() {
+            int read;
+            try {
+                readBuffer.clear();
+                read = channel.read(readBuffer);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (read > 0) {
+                if (!pipeline.write(readBuffer.array(), 0, read)) {
+                    readPaused = true;
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+            } else if (read < 0) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                pipeline.finish();
+            }
+        }
+
+        private void resumeReading() {
+            if (readPaused && !closed) {
+                readPaused = false;
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+
+        /**
+         * Has the I/O thread send the events, once for those queued so far.
+         */
+        private void requestWrite() {
+            if (writeRequested.compareAndSet(false, true)) {
+                onSelector(() -> {
+                    writeRequested.set(false);
+                    write();
+                });
+            }
+        }
+
+        /**
+         * Sends the events queued, on the I/O thread, and closes the connection once the session is finished and its
+         * events sent.
+         */
+        void write() {
+            if (closed) {
+                return;
+            }
+            boolean finished = sessionFinished;     // before the output, as its last events are queued before
+            try {
+                ByteBuffer buffer;
+                while ((buffer = output.peek()) != null) {
+                    channel.write(buffer);
+                    if (buffer.hasRemaining()) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    output.poll();
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (finished) {
+                close();
+            }
+        }
+
+        /**
+         * Closes the connection, on the I/O thread. A session cut short processes the audio it has, its events
+         * dropped.
+         */
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connections.remove(this);
+            sessions.decrementAndGet();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (!pipeline.isDone()) {
+                pipeline.finish();
+            }
+        }
+    }
+
+    /**
+     * Serves sessions until killed.
+     * <p>
+     * Usage: {@code StreamingServer filepath fileName [--port n] [--unix path] [--pipe pcmPipe eventsFile]
+     * [--staged-pipe pcmPipe eventsFile] [--threads n]}, with the model read from filepath + fileName + ".model" and
+     * compiled as by {@link WAVProcessor#processWAVRAWFile(String, String)}. Listens on local TCP port 5050 if nothing
+     * else is given. A staged pipe's session runs in stages, see {@link StagedPipeline}.
+     */
+    public static void main(String[] args) throws Exception {
+        String filepathname = args[0] + args[1];
+        Classifier classifier = (Classifier) SerializationHelper.read(filepathname + ".model");
+        CompiledClassifier compiled = null;
+        if (new File(filepathname + " test.arff").exists()) {
+            compiled = ModelCompiler.compile(classifier, PredictionProcessor.readARFF(args[0], args[1] + " test"));
+        }
+
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        for (int i = 2; i < args.length - 1; i++) {
+            if (args[i].equals("--threads")) {
+                numThreads = Integer.parseInt(args[i + 1]);
+            }
+        }
+        StreamingServer server = new StreamingServer(classifier, compiled, numThreads);
+        boolean listening = false;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    System.out.println("Listening on " + server.listenTCP(Integer.parseInt(args[++i])));
+                    listening = true;
+                    break;
+                case "--unix":
+                    server.listenUnix(args[++i]);
+                    System.out.println("Listening on " + args[i]);
+                    listening = true;
+                    break;
+                case "--pipe":
+                case "--staged-pipe":
+                    server.servePipe(args[i + 1], args[i + 2], args[i].equals("--staged-pipe"));
+                    i += 2;
+                    break;
+                case "--threads":
+                    i++;
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+            }
+        }
+        if (!listening) {
+            System.out.println("Listening on " + server.listenTCP(5050));
+        }
+        server.start();
+    }
+}
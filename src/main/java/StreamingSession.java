@@ -0,0 +1,131 @@
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import weka.classifiers.Classifier;
+
+import java.util.function.Consumer;
+
+/**
+ * A live guidance session: the pipeline of {@link AudioUtils#processRAWFileForLog} run on audio as it arrives, e.g.
+ * over a connection, with the guidance events handed on as they fire rather than logged.
+ * <p>
+ * The audio is raw PCM in {@link #FORMAT}. It can be written in pieces of any size; each frame it completes is
+ * processed before {@link #write(byte[], int, int)} returns, so the events of a frame are out as soon as it has
+ * arrived. Frames are classified inline, on the writing thread. Not thread safe: write from one thread at a time.
+ * <p>
+ * A session can run in stages instead, see {@link AudioUtils#addStagedLogProcessors}, for a stream that is to have
+ * several cores: a write then only decodes the frames, the events are handed on from the last stage's thread, and
+ * {@link #finish()} waits for the frames still in the stages.
+ */
+public class StreamingSession {
+    /**
+     * The format of the audio sessions take: 16-bit signed little endian mono PCM at 8 kHz.
+     */
+    public static final TarsosDSPAudioFormat FORMAT = new TarsosDSPAudioFormat(WAVProcessor.SAMPLE_RATE, 16, 1,
+            true, false);
+
+    private final StreamDispatcher dispatcher;
+    private volatile long frames = 0;   // counted by one thread, the writer's or the last stage's
+
+    /**
+     * @param classifier the model, used by this session only, as Weka models are not safe to share between threads
+     * @param compiled   the model compiled by {@link ModelCompiler#compile(Classifier, weka.core.Instances)}, or null
+     *                   to only use Weka
+     * @param events     receives each guidance event as it fires
+     */
+    public StreamingSession(Classifier classifier, CompiledClassifier compiled, Consumer<GuidanceEvent> events) {
+        this(classifier, compiled, null, null, events);
+    }
+
+    /**
+     * @param metrics times each stage of the pipeline, or null
+     * @param output  receives each frame, as it would be logged, or null
+     */
+    public StreamingSession(Classifier classifier, CompiledClassifier compiled, PipelineMetrics metrics,
+                            final Consumer<AudioProcessingResult> output, final Consumer<GuidanceEvent> events) {
+        this(FrameClassifier.single(classifier, compiled), metrics, false, output, events);
+    }
+
+    /**
+     * @param staged whether to run the session in stages, each on a thread of its own
+     * @param output receives each frame, as it would be logged, or null
+     */
+    public StreamingSession(Classifier classifier, CompiledClassifier compiled, boolean staged,
+                            final Consumer<AudioProcessingResult> output, final Consumer<GuidanceEvent> events) {
+        this(FrameClassifier.single(classifier, compiled), null, staged, output, events);
+    }
+
+    /**
+     * @param frameClassifiers the {@link FrameClassifier} of each thread that classifies the session's frames, e.g.
+     *                         {@link FrameClassifier#copies} shared by sessions run on the same threads
+     */
+    public StreamingSession(ThreadLocal<FrameClassifier> frameClassifiers, boolean staged,
+                            final Consumer<AudioProcessingResult> output, final Consumer<GuidanceEvent> events) {
+        this(frameClassifiers, null, staged, output, events);
+    }
+
+    private StreamingSession(ThreadLocal<FrameClassifier> frameClassifiers, PipelineMetrics metrics, boolean staged,
+                             final Consumer<AudioProcessingResult> output, final Consumer<GuidanceEvent> events) {
+        dispatcher = new StreamDispatcher(FORMAT, WAVProcessor.BUFFER_SIZE, WAVProcessor.BUFFER_OVERLAP);
+        Consumer<AudioProcessingResult> handOn = frame -> {
+            frames++;
+            if (output != null) {
+                output.accept(frame);
+            }
+            int[] eventBuffer = frame.getEventBuffer();
+            for (int type = 0; type < eventBuffer.length; type++) {
+                if (eventBuffer[type] != 0) {
+                    events.accept(new GuidanceEvent(frame.getEndTime(), type));
+                }
+            }
+        };
+        if (staged) {
+            AudioUtils.addStagedLogProcessors(dispatcher::addAudioProcessor, frameClassifiers,
+                    WAVProcessor.SAMPLE_RATE, WAVProcessor.BUFFER_SIZE, handOn, () -> {
+                    });
+        } else {
+            AudioUtils.addLogProcessors(dispatcher::addAudioProcessor, frameClassifiers, 0, metrics,
+                    WAVProcessor.SAMPLE_RATE, WAVProcessor.BUFFER_SIZE, handOn, () -> {
+                    });
+        }
+    }
+
+    /**
+     * @return the pipeline of the session, e.g. to {@link PipelineScheduler#open(StreamDispatcher, Runnable) open} on a
+     * scheduler, which then writes the audio to it rather than the session
+     */
+    public StreamDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Adds audio, processing the frames it completes and handing on their events, or passing them to the stages.
+     */
+    public void write(byte[] pcm, int offset, int length) {
+        dispatcher.write(pcm, offset, length);
+    }
+
+    /**
+     * Ends the session, processing the audio left over as a last, zero padded frame, and in stages waits for the
+     * frames to be through them.
+     */
+    public void finish() {
+        dispatcher.finish();
+    }
+
+    public boolean isFinished() {
+        return dispatcher.isFinished();
+    }
+
+    /**
+     * @return the number of frames processed
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return the time stamp, in seconds, of the next frame
+     */
+    public double getSecondsProcessed() {
+        return dispatcher.getSecondsProcessed();
+    }
+}
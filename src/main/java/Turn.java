@@ -1,5 +1,3 @@
-import java.util.ArrayList;
-
 /**
  * Created by KennyChoo on 12/5/17.
  */
@@ -10,14 +8,13 @@ public class Turn {
     private float endTime = 0;
     private User user = User.NONE;
     private String content = "";    // transcript of speech in that turn
-    private ArrayList<Onset> onsets = null;
+    private Onsets onsets = null;
 
-    public Turn(float startTime, float endTime, User user, ArrayList<Onset> onsets) {
+    public Turn(float startTime, float endTime, User user, Onsets onsets) {
         this(startTime, endTime, user, "", onsets);
     }
 
-    public Turn(float startTime, float endTime, User user, String content, ArrayList<Onset>
-            onsets) {
+    public Turn(float startTime, float endTime, User user, String content, Onsets onsets) {
         this.startTime = startTime;
         this.endTime = endTime;
         this.user = user;
@@ -27,7 +24,8 @@ public class Turn {
 
     public Turn(AudioProcessingResult result) {
         this(result.getStartTime(), result.getStartTime() + AudioProcessingResult.frameLength,
-                result.getUser(), result.getOnsets());
+                result.getUser(), new Onsets());
+        onsets.addAll(result.getOnsets());  // a copy, as the turn's onsets grow with the turn
     }
 
     public float getStartTime() {
@@ -62,15 +60,15 @@ public class Turn {
         this.content = content;
     }
 
-    public ArrayList<Onset> getOnsets() {
+    public Onsets getOnsets() {
         return onsets;
     }
 
-    public void addOnsets(ArrayList<Onset> onsets) {
+    public void addOnsets(Onsets onsets) {
         this.onsets.addAll(onsets);
     }
 
-    public void setOnsets(ArrayList<Onset> onsets) {
+    public void setOnsets(Onsets onsets) {
         this.onsets = onsets;
     }
 
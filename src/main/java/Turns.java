@@ -1,3 +1,9 @@
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -11,6 +17,42 @@ public class Turns extends ArrayList<Turn> {
     public static final float timeTolerancePauseBetweenFrames = 0.5f;  // default should be 0.5s
     public static final float timeToleranceSilenceAfterFrames = 0f;    // 0 so we know
 
+    // retention
+    private final int maxTurns;     // turns kept in memory, at least
+    private final String filename;  // older turns are appended here, or dropped if null
+    private BufferedWriter bw = null;
+    private int numOlderTurns = 0;
+    private boolean closed = false;
+
+    /**
+     * Keeps all the turns in memory.
+     */
+    public Turns() {
+        this.maxTurns = Integer.MAX_VALUE;
+        this.filename = null;
+    }
+
+    /**
+     * Keeps only the latest turns in memory, so that a session of any length takes the same memory. Once there are
+     * twice as many turns, the older ones are appended to a file, one {@link Turn#toString()} per line, and dropped
+     * from the list. Indices in the list then no longer count from the start of the session, see {@link
+     * #getNumTurns()}.
+     *
+     * @param maxTurns the number of latest turns to keep in memory
+     * @param filename the file to append older turns to, or null to only drop them
+     */
+    public Turns(int maxTurns, String filename) {
+        this.maxTurns = maxTurns;
+        this.filename = filename;
+        if (filename != null) {
+            try {
+                bw = new BufferedWriter(new FileWriter(filename, false));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     /**
      * Processes the latest AudioProcessingResult to see if
      * 1. A new turn should be added.
@@ -47,6 +89,9 @@ public class Turns extends ArrayList<Turn> {
             // was not part of turn, add new turn
             if (!isPartOfTurn) {
                 add(new Turn(result));
+                if (size() - maxTurns >= maxTurns) {
+                    removeOlderTurns(size() - maxTurns);
+                }
             }
         }
         // Event Detection happens when nobody speaks for a period after speaking
@@ -75,4 +120,70 @@ public class Turns extends ArrayList<Turn> {
         return isEmpty() ? null : get(size() - 1);
     }
 
+    /**
+     * @return the number of turns in the session, including those no longer in memory.
+     */
+    public int getNumTurns() {
+        return numOlderTurns + size();
+    }
+
+    private void removeOlderTurns(int count) {
+        if (bw != null) {
+            try {
+                for (int i = 0; i < count; i++) {
+                    bw.write(get(i).toString() + "\n");
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        removeRange(0, count);
+        numOlderTurns += count;
+    }
+
+    /**
+     * Writes all the turns of the session, one per line: those no longer in memory, then those in the list.
+     *
+     * @param writer where to write the turns to, not the file given for the older turns
+     */
+    public void writeTo(Writer writer) throws IOException {
+        if (bw != null) {
+            if (closed) {   // the file has them all
+                copy(filename, writer);
+                return;
+            }
+            bw.flush();
+            copy(filename, writer);
+        }
+        for (Turn t : this) {
+            writer.write(t.toString() + "\n");
+        }
+    }
+
+    /**
+     * Copies a text file to the writer.
+     */
+    static void copy(String filename, Writer writer) throws IOException {
+        try (Reader reader = new FileReader(filename)) {
+            char[] buffer = new char[8192];
+            for (int n; (n = reader.read(buffer)) != -1; ) {
+                writer.write(buffer, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Appends the turns still in memory to the file for the older turns, and closes it. The turns are kept in the
+     * list, but no more can be added.
+     */
+    public void close() throws IOException {
+        if (bw != null && !closed) {
+            for (Turn t : this) {
+                bw.write(t.toString() + "\n");
+            }
+            bw.close();
+            closed = true;
+        }
+    }
+
 }
@@ -3,8 +3,13 @@ import be.tarsos.dsp.util.fft.FloatFFT;
 
 /**
  * Created by KennyChoo on 11/5/17.
+ * <p>
+ * The features of a frame are computed in one pass over the samples and one over the spectrum, with preallocated
+ * buffers, so labelling a frame creates no objects. An instance must not be shared between threads.
  */
 public class VoiceActivityDetector {
+    private static final double P_REF = 0.00002;    // reference level: threshold of human hearing
+    private static final double LN_10 = Math.log(10);
 
     // Properties
     private float min_e = Float.MAX_VALUE, e_gain_diff = 6; // 6 dB ~twice the SNR above the min dBSPL
@@ -17,6 +22,8 @@ public class VoiceActivityDetector {
 
     // Objects
     FloatFFT fft;
+    private final float[] fftBuffer;
+    private final float[] features = new float[3];
     private long silence_ctr = obsWindow;
 
     // frame label
@@ -25,20 +32,64 @@ public class VoiceActivityDetector {
     public VoiceActivityDetector(int SAMPLE_RATE, int BUFFER_SIZE) {
         freqbin = ((float) SAMPLE_RATE) / BUFFER_SIZE;
         fft = new FloatFFT(BUFFER_SIZE);
+        fftBuffer = new float[BUFFER_SIZE];
     }
 
     public boolean isVoiced(AudioEvent audioEvent) {
-        int count = 0;
-        isVoiced = false;
-        float[] samples = audioEvent.getFloatBuffer();
+        // Get the values of the three features
+        computeFeatures(audioEvent.getFloatBuffer(), features);
 
-        float[] freqSamp = getFFT(samples);
+        return isVoiced(features[0], features[1], features[2]);
+    }
 
-        // Get the values of the three features
-        float e = (float) AudioUtils.computedBSPL(samples);
-        double[] sqpow = AudioUtils.squaredPower(freqSamp);
-        float f = getMaxMagFreq(sqpow);
-        float sf = getSpectralFlatness(sqpow);
+    /**
+     * Computes the three features of a frame without updating the detector, so frames can be computed in any order,
+     * then passed through {@link #isVoiced(float, float, float)} in order. Not thread safe, as the FFT is done in a
+     * buffer of the detector: to compute frames in parallel, use a detector for each thread.
+     *
+     * @param samples  the audio samples of the frame
+     * @param features output of 3 values: energy (dB SPL), most dominant frequency and spectral flatness
+     */
+    public void computeFeatures(float[] samples, float[] features) {
+        // Energy, the same as AudioUtils.computedBSPL, while copying the samples for the FFT
+        double pRMS = 0;
+        for (int i = 0, il = samples.length; i < il; i++) {
+            float sample = samples[i];
+            pRMS += sample * sample;
+            fftBuffer[i] = sample;
+        }
+        pRMS /= samples.length;
+        pRMS = Math.pow(pRMS, 0.5);
+        features[0] = (float) (20 * Math.log10(pRMS / P_REF));
+
+        // Most dominant frequency and spectral flatness over the front half of the FFT output
+        fft.realForward(fftBuffer);
+        int n = samples.length / 2, maxidx = 0;
+        double max = -1, am = 0, logSum = 0;
+        for (int i = 0; i < n; i++) {
+            double sqpow = fftBuffer[i] * fftBuffer[i];
+            if (sqpow > max) {
+                max = sqpow;
+                maxidx = i;
+            }
+            am += sqpow;
+            logSum += Math.log(sqpow);
+        }
+        features[1] = maxidx * freqbin;
+        features[2] = getSpectralFlatness(logSum, am, n);
+    }
+
+    /**
+     * Labels a frame from its features, and updates the minimums. Frames must be passed in order.
+     *
+     * @param e  energy of the frame in dB SPL
+     * @param f  most dominant frequency of the frame
+     * @param sf spectral flatness of the frame
+     * @return true if the frame is voiced.
+     */
+    public boolean isVoiced(float e, float f, float sf) {
+        int count = 0;
+        isVoiced = false;
 
         // initial observation window, Observe
         if (obsWindow-- > 0) {
@@ -81,40 +132,19 @@ public class VoiceActivityDetector {
         return isVoiced;
     }
 
-    private float getSpectralFlatness(double[] sqpow) {
-        double gm = 1, am = 0;
-
-        for (double val : sqpow) {
-            gm *= val;
-            am += val;
-        }
-
-        gm = Math.pow(gm, 1.0 / sqpow.length);
-        am = am / sqpow.length;
-
-        if (gm == 0)
+    /**
+     * Spectral flatness in dB: the geometric mean over the arithmetic mean of the power spectrum. The geometric mean
+     * is computed in the log domain, as the product of the powers underflows.
+     *
+     * @param logSum sum of the natural logarithms of the powers
+     * @param am     sum of the powers
+     * @param n      number of powers
+     */
+    private static float getSpectralFlatness(double logSum, double am, int n) {
+        // a silent bin makes the geometric mean 0
+        if (logSum == Double.NEGATIVE_INFINITY)
             return 0;
-        double output = 10 * Math.log10(gm / am);
+        double output = 10 * (logSum / n - Math.log(am / n)) / LN_10;
         return (float) (output);
     }
-
-    private float getMaxMagFreq(double[] sqpow) {
-        // get max
-        int maxidx = 0;
-        for (int i = 1, il = sqpow.length; i < il; i++) {
-            if (sqpow[i] > sqpow[maxidx]) {
-                maxidx = i;
-            }
-        }
-        return maxidx * freqbin;
-    }
-
-    private float[] getFFT(float[] samples) {
-        float[] dest = new float[samples.length];
-        float[] output = new float[samples.length/2];
-        System.arraycopy(samples, 0, dest, 0, samples.length);
-        fft.realForward(dest);
-        System.arraycopy(dest, 0, output, 0, output.length);
-        return output;  // only output the front half
-    }
 }
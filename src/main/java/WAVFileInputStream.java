@@ -0,0 +1,240 @@
+import be.tarsos.dsp.io.TarsosDSPAudioFloatConverter;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A memory-mapped WAV file reader for TarsosDSP.
+ * <p>
+ * Unlike {@link AndroidFileInputStream}, which assumes a 44 byte header, the RIFF chunks are parsed to find the
+ * "fmt " and "data" chunks, skipping any others (LIST, fact, etc.). WAVE_FORMAT_EXTENSIBLE headers are resolved to
+ * their sub-format. The audio data is mapped into memory, so reads are plain memory copies rather than a system
+ * call per buffer, and the true frame length is known up front.
+ */
+public class WAVFileInputStream implements TarsosDSPAudioInputStream {
+    // WAVE format tags
+    public static final int WAVE_FORMAT_PCM = 0x0001;
+    public static final int WAVE_FORMAT_IEEE_FLOAT = 0x0003;
+    public static final int WAVE_FORMAT_ALAW = 0x0006;
+    public static final int WAVE_FORMAT_MULAW = 0x0007;
+    public static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    // Data larger than this is mapped a region at a time, as a MappedByteBuffer is limited to 2 GB
+    private static final long MAX_REGION_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final TarsosDSPAudioFormat format;
+    private final int formatTag;
+    private final long dataOffset;  // position of the audio data in the file
+    private final long dataLength;  // length of the audio data in bytes
+
+    private MappedByteBuffer region;    // currently mapped part of the audio data
+    private long regionStart;           // position of the region, relative to dataOffset
+    private long position;              // read position, relative to dataOffset
+
+    /**
+     * Opens a WAV file and parses its header.
+     *
+     * @param file the WAV file
+     * @throws IOException if the file cannot be read or is not a WAV file that TarsosDSP can decode.
+     */
+    public WAVFileInputStream(File file) throws IOException {
+        this(file, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Opens a window of a WAV file. The stream behaves as if the file only held the given sample frames, which lets
+     * a long recording be split into segments that are read independently.
+     *
+     * @param file       the WAV file
+     * @param startFrame first sample frame of the window
+     * @param numFrames  number of sample frames in the window, cut short at the end of the data
+     * @throws IOException if the file cannot be read or is not a WAV file that TarsosDSP can decode.
+     */
+    public WAVFileInputStream(File file, long startFrame, long numFrames) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, 0);
+            if (header.getInt(0) != fourCC("RIFF") || header.getInt(8) != fourCC("WAVE")) {
+                throw new IOException(file + " is not a RIFF WAVE file");
+            }
+
+            // Walk the chunks till we have both the format and the data
+            ByteBuffer chunkHeader = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer fmt = null;
+            long offset = 12, dataStart = -1, dataSize = -1;
+            while (offset + 8 <= fileSize && (fmt == null || dataStart < 0)) {
+                chunkHeader.clear();
+                readFully(chunkHeader, offset);
+                int id = chunkHeader.getInt(0);
+                long size = chunkHeader.getInt(4) & 0xFFFFFFFFL;
+                long body = offset + 8;
+
+                if (id == fourCC("fmt ")) {
+                    if (size < 16) {
+                        throw new IOException("fmt chunk of " + file + " is too short: " + size + " bytes");
+                    }
+                    fmt = ByteBuffer.allocate((int) Math.min(size, 40)).order(ByteOrder.LITTLE_ENDIAN);
+                    readFully(fmt, body);
+                } else if (id == fourCC("data")) {
+                    dataStart = body;
+                    // streaming writers leave the size as 0 or 0xFFFFFFFF, the data then runs to the end of file
+                    dataSize = (size == 0 || size == 0xFFFFFFFFL || body + size > fileSize) ? fileSize - body : size;
+                }
+
+                // chunks are padded to an even number of bytes
+                offset = body + size + (size & 1);
+            }
+            if (fmt == null) {
+                throw new IOException(file + " has no fmt chunk");
+            }
+            if (dataStart < 0) {
+                throw new IOException(file + " has no data chunk");
+            }
+
+            int tag = fmt.getShort(0) & 0xFFFF;
+            int channels = fmt.getShort(2) & 0xFFFF;
+            int sampleRate = fmt.getInt(4);
+            int blockAlign = fmt.getShort(12) & 0xFFFF;
+            int bitsPerSample = fmt.getShort(14) & 0xFFFF;
+            if (tag == WAVE_FORMAT_EXTENSIBLE) {
+                if (fmt.capacity() < 26) {
+                    throw new IOException("WAVE_FORMAT_EXTENSIBLE fmt chunk of " + file + " is too short");
+                }
+                // the sub-format GUID starts with the actual format tag
+                tag = fmt.getShort(24) & 0xFFFF;
+            }
+            if (blockAlign == 0) {
+                blockAlign = channels * ((bitsPerSample + 7) / 8);
+            }
+
+            this.formatTag = tag;
+            this.format = new TarsosDSPAudioFormat(getEncoding(tag, bitsPerSample), sampleRate, bitsPerSample,
+                    channels, blockAlign, sampleRate, false);
+            // drop any trailing partial frame, then narrow down to the window
+            long totalFrames = dataSize / blockAlign;
+            long windowStart = Math.min(Math.max(startFrame, 0), totalFrames);
+            long windowFrames = Math.min(Math.max(numFrames, 0), totalFrames - windowStart);
+            this.dataOffset = dataStart + windowStart * blockAlign;
+            this.dataLength = windowFrames * blockAlign;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static TarsosDSPAudioFormat.Encoding getEncoding(int tag, int bitsPerSample) throws IOException {
+        switch (tag) {
+            case WAVE_FORMAT_PCM:
+                // 8 bit WAV is unsigned, everything wider is signed
+                return bitsPerSample <= 8 ? TarsosDSPAudioFormat.Encoding.PCM_UNSIGNED
+                        : TarsosDSPAudioFormat.Encoding.PCM_SIGNED;
+            case WAVE_FORMAT_IEEE_FLOAT:
+                return TarsosDSPAudioFloatConverter.PCM_FLOAT;
+            case WAVE_FORMAT_ALAW:
+                return TarsosDSPAudioFormat.Encoding.ALAW;
+            case WAVE_FORMAT_MULAW:
+                return TarsosDSPAudioFormat.Encoding.ULAW;
+            default:
+                throw new IOException("Unsupported WAV format tag: 0x" + Integer.toHexString(tag));
+        }
+    }
+
+    private static int fourCC(String id) {
+        return (id.charAt(0)) | (id.charAt(1) << 8) | (id.charAt(2) << 16) | (id.charAt(3) << 24);
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of WAV header");
+            }
+        }
+    }
+
+    /**
+     * Maps the region of the audio data that holds the current read position.
+     */
+    private void mapRegion() throws IOException {
+        regionStart = position - (position % MAX_REGION_SIZE);
+        long size = Math.min(MAX_REGION_SIZE, dataLength - regionStart);
+        region = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + regionStart, size);
+    }
+
+    @Override
+    public long skip(long bytesToSkip) throws IOException {
+        long skipped = Math.max(0, Math.min(bytesToSkip, dataLength - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (position >= dataLength) {
+            return -1;
+        }
+        int total = 0;
+        while (total < len && position < dataLength) {
+            if (region == null || position < regionStart || position >= regionStart + region.capacity()) {
+                mapRegion();
+            }
+            int regionPosition = (int) (position - regionStart);
+            int count = Math.min(len - total, region.capacity() - regionPosition);
+            region.position(regionPosition);
+            region.get(b, off + total, count);
+            total += count;
+            position += count;
+        }
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        region = null;
+        channel.close();
+    }
+
+    @Override
+    public TarsosDSPAudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the number of sample frames in the data chunk, or in the window.
+     */
+    @Override
+    public long getFrameLength() {
+        return dataLength / format.getFrameSize();
+    }
+
+    /**
+     * @return the WAVE format tag, resolved to the sub-format for WAVE_FORMAT_EXTENSIBLE.
+     */
+    public int getFormatTag() {
+        return formatTag;
+    }
+
+    /**
+     * @return the position of the audio data in the file, in bytes.
+     */
+    public long getDataOffset() {
+        return dataOffset;
+    }
+
+    /**
+     * @return the duration of the audio in seconds.
+     */
+    public double getDurationInSeconds() {
+        return ((double) getFrameLength()) / format.getSampleRate();
+    }
+}
@@ -1,12 +1,15 @@
 import be.tarsos.dsp.AudioDispatcher;
 import be.tarsos.dsp.AudioEvent;
 import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
 import be.tarsos.dsp.mfcc.MFCC;
 import weka.classifiers.Classifier;
 import weka.core.SerializationHelper;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Created by KennyChoo on 3/5/17.
@@ -21,6 +24,7 @@ public class WAVProcessor {
     public static final float lowerFilterFreq = 64; // Hz
     public static final float upperFilterFreq = (float) 4000; // Hz - human frequencies
     public static final float trainPercentage = 0.9f;
+    public static final long FEATURE_CACHE_BYTES = 4L << 30;  // 4 GB of ARFF files
 
     public static final String filepath = "./bin/";
     public static final String fileUser = "P04-1";
@@ -44,24 +48,26 @@ public class WAVProcessor {
         int SAMPLE_RATE = 8000, BUFFER_SIZE = 160, BUFFER_OVERLAP = 80;
         int numCepstralCoeffs = 13, numMelFilters = 40; float lowerFilterFreq = 64, upperFilterFreq = 4000;
         String[] pids = {"P01", "P03", "P04", "P06", "P07"};
-        processParticipants(filepath, pids, "_" + BUFFER_SIZE + "_" + BUFFER_OVERLAP, SAMPLE_RATE, BUFFER_SIZE,
-                BUFFER_OVERLAP, numCepstralCoeffs, numMelFilters, lowerFilterFreq, upperFilterFreq);
-
-//        SAMPLE_RATE = 8000; BUFFER_SIZE = 240; BUFFER_OVERLAP = 80;
-//        numCepstralCoeffs = 13; numMelFilters = 40; lowerFilterFreq = 64; upperFilterFreq = 4000;
-//        processParticipants(filepath, pids, "_" + BUFFER_SIZE + "_" + BUFFER_OVERLAP, SAMPLE_RATE, BUFFER_SIZE,
-//                BUFFER_OVERLAP, numCepstralCoeffs, numMelFilters, lowerFilterFreq, upperFilterFreq);
+        FeatureCache cache = null;
+        try {
+            cache = new FeatureCache(filepath + "feature cache", FEATURE_CACHE_BYTES);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        processParticipantsBatch(filepath, pids, "_" + BUFFER_SIZE + "_" + BUFFER_OVERLAP, SAMPLE_RATE, BUFFER_SIZE,
+                BUFFER_OVERLAP, numCepstralCoeffs, numMelFilters, lowerFilterFreq, upperFilterFreq, cache);
 
         // --- Experiments show that 20-30ms frames are the best ---
-//        SAMPLE_RATE = 8000; BUFFER_SIZE = 320; BUFFER_OVERLAP = 80;
-//        numCepstralCoeffs = 13; numMelFilters = 40; lowerFilterFreq = 64; upperFilterFreq = 4000;
-//        processParticipants(filepath, pids, "_" + BUFFER_SIZE + "_" + BUFFER_OVERLAP, SAMPLE_RATE, BUFFER_SIZE,
-//                BUFFER_OVERLAP, numCepstralCoeffs, numMelFilters, lowerFilterFreq, upperFilterFreq);
-//
-//        SAMPLE_RATE = 8000; BUFFER_SIZE = 320; BUFFER_OVERLAP = 160;
-//        numCepstralCoeffs = 13; numMelFilters = 40; lowerFilterFreq = 64; upperFilterFreq = 4000;
-//        processParticipants(filepath, pids, "_" + BUFFER_SIZE + "_" + BUFFER_OVERLAP, SAMPLE_RATE, BUFFER_SIZE,
-//                BUFFER_OVERLAP, numCepstralCoeffs, numMelFilters, lowerFilterFreq, upperFilterFreq);
+        // sweep the frame sizes, reading and decoding each WAV file once for all of them
+//        processParticipantsSweep(filepath, pids, SAMPLE_RATE, Arrays.asList(
+//                new BatchFeatureExtractor.Configuration(160, 80, numCepstralCoeffs, numMelFilters, lowerFilterFreq,
+//                        upperFilterFreq),
+//                new BatchFeatureExtractor.Configuration(240, 80, numCepstralCoeffs, numMelFilters, lowerFilterFreq,
+//                        upperFilterFreq),
+//                new BatchFeatureExtractor.Configuration(320, 80, numCepstralCoeffs, numMelFilters, lowerFilterFreq,
+//                        upperFilterFreq),
+//                new BatchFeatureExtractor.Configuration(320, 160, numCepstralCoeffs, numMelFilters, lowerFilterFreq,
+//                        upperFilterFreq)), cache);
     }
 
     public static void processParticipants(String filepath, String[] pids, String append,
@@ -74,6 +80,51 @@ public class WAVProcessor {
         }
     }
 
+    /**
+     * Processes the participants on a bounded pool of worker threads, one per available processor. Every WAV file
+     * of every participant is a separate task, and each participant's raw file is merged as soon as its three
+     * files are done. Blocks until all are written, then prints the throughput.
+     */
+    public static void processParticipantsBatch(String filepath, String[] pids, String append,
+        int SAMPLE_RATE, int BUFFER_SIZE, int BUFFER_OVERLAP,
+        int numCepstralCoeffs, int numMelFilters, float lowerFilterFreq, float upperFilterFreq) {
+        processParticipantsBatch(filepath, pids, append, SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP,
+                numCepstralCoeffs, numMelFilters, lowerFilterFreq, upperFilterFreq, null);
+    }
+
+    /**
+     * Processes the participants as {@link #processParticipantsBatch(String, String[], String, int, int, int, int,
+     * int, float, float)} does, copying the ARFF files of the WAV files already extracted with these parameters from
+     * the cache.
+     *
+     * @param cache the features extracted before, or null to extract every file
+     */
+    public static void processParticipantsBatch(String filepath, String[] pids, String append,
+        int SAMPLE_RATE, int BUFFER_SIZE, int BUFFER_OVERLAP,
+        int numCepstralCoeffs, int numMelFilters, float lowerFilterFreq, float upperFilterFreq, FeatureCache cache) {
+        BatchFeatureExtractor extractor = new BatchFeatureExtractor(Runtime.getRuntime().availableProcessors(),
+                cache);
+        extractor.processParticipants(filepath, pids, append, SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP,
+                numCepstralCoeffs, numMelFilters, lowerFilterFreq, upperFilterFreq);
+        extractor.shutdown();
+    }
+
+    /**
+     * Processes the participants with every configuration, as a parameter sweep, on a bounded pool of worker threads,
+     * one per available processor. Each WAV file is read and decoded once, then its features extracted with each
+     * configuration at the same time. Blocks until all are written, then prints the throughput.
+     *
+     * @param configurations the parameters of each extraction, with a different append each
+     * @param cache the features extracted before, or null to extract every file
+     */
+    public static void processParticipantsSweep(String filepath, String[] pids, int SAMPLE_RATE,
+        List<BatchFeatureExtractor.Configuration> configurations, FeatureCache cache) {
+        BatchFeatureExtractor extractor = new BatchFeatureExtractor(Runtime.getRuntime().availableProcessors(),
+                cache);
+        extractor.processParticipants(filepath, pids, SAMPLE_RATE, configurations);
+        extractor.shutdown();
+    }
+
     public static void processParticipant(String filepath, String pid, String append,
         int SAMPLE_RATE, int BUFFER_SIZE, int BUFFER_OVERLAP,
         int numCepstralCoeffs, int numMelFilters, float lowerFilterFreq, float upperFilterFreq) {
@@ -193,141 +244,274 @@ public class WAVProcessor {
     public static Thread processWAVFileForFeatures(String inputFilename, String append,
             int SAMPLE_RATE, int BUFFER_SIZE, int BUFFER_OVERLAP,
             int numCepstralCoeffs, int numMelFilters, float lowerFilterFreq, float upperFilterFreq, User user) {
-        BufferedWriter bw = null;
-        Thread thread;
+        AudioDispatcher dispatcher = featureDispatcher(inputFilename, append, SAMPLE_RATE, BUFFER_SIZE,
+                BUFFER_OVERLAP, numCepstralCoeffs, numMelFilters, lowerFilterFreq, upperFilterFreq, user);
 
-        // default: 4. 4 previous and 4 look ahead buffers - this caters for N = 2, for delta, delta-delta MFCCs
-        int N = 2;
-        int fBuff = N * 2;
-        int fBuffMax = fBuff * 2 + 1;
+        // Initiate the thread and return it for blocking
+        Thread thread = new Thread(dispatcher);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Processes a WAV file for features and saves it into a binary columnar feature file (see {@link FeatureStore}),
+     * which is smaller and faster to read back than ARFF. Use {@link FeatureStore#exportToARFF(String, String)} to
+     * get the ARFF file that {@link #processWAVFileForFeatures(String, String, int, int, int, int, int, float, float,
+     * User)} would have written.
+     *
+     * @param inputFilename Full path file name without extension
+     * @param append String to append to filename to indicate different runs for experiments
+     * @param user User to label voiced segments
+     * @return the Thread object that has been started for processing. This enables blocking functions.
+     */
+    public static Thread processWAVFileForFeatureStore(String inputFilename, String append,
+            int SAMPLE_RATE, int BUFFER_SIZE, int BUFFER_OVERLAP,
+            int numCepstralCoeffs, int numMelFilters, float lowerFilterFreq, float upperFilterFreq, User user) {
+        FeatureWriter writer = null;
 
         try {
-            bw = new BufferedWriter(new FileWriter(inputFilename + append + ".arff", false));
-            bw.write(AudioUtils.getARFFHeader(inputFilename)); // Write the ARFF header
+            writer = new FeatureStoreWriter(inputFilename + append + FeatureStore.EXTENSION, inputFilename);
         }
         catch (IOException e) {
             e.printStackTrace();
         }
 
+        AudioDispatcher dispatcher = featureDispatcher(inputFilename, writer, SAMPLE_RATE, BUFFER_SIZE,
+                BUFFER_OVERLAP, numCepstralCoeffs, numMelFilters, lowerFilterFreq, upperFilterFreq, user);
+
+        // Initiate the thread and return it for blocking
+        Thread thread = new Thread(dispatcher);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Sets up the feature extraction pipeline of a WAV file without running it. Running the returned dispatcher
+     * (on any thread or executor) writes out the ARFF file, the same as
+     * {@link #processWAVFileForFeatures(String, String, int, int, int, int, int, float, float, User)}.
+     *
+     * @param inputFilename Full path file name without extension
+     * @param append String to append to filename to indicate different runs for experiments
+     * @param user User to label voiced segments
+     * @return the dispatcher with all the audio processors added, not yet started.
+     */
+    public static AudioDispatcher featureDispatcher(String inputFilename, String append,
+            int SAMPLE_RATE, int BUFFER_SIZE, int BUFFER_OVERLAP,
+            int numCepstralCoeffs, int numMelFilters, float lowerFilterFreq, float upperFilterFreq, User user) {
+        FeatureWriter writer = null;
+
+        try {
+            writer = new AsyncRowWriter(inputFilename + append + ".arff",
+                    AudioUtils.getARFFHeader(inputFilename).getBytes(), ARFFRowEncoder::encodeFeatureVector,
+                    AsyncRowWriter.OverflowPolicy.BLOCK);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return featureDispatcher(inputFilename, writer, SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP,
+                numCepstralCoeffs, numMelFilters, lowerFilterFreq, upperFilterFreq, user);
+    }
+
+    /**
+     * Sets up the feature extraction pipeline of a WAV file without running it. Running the returned dispatcher
+     * writes the features of every frame to the writer, and closes it when done.
+     *
+     * @param inputFilename Full path file name without extension
+     * @param writer Destination of the features, e.g. an {@link AsyncRowWriter} or a {@link FeatureStoreWriter}
+     * @param user User to label voiced segments
+     * @return the dispatcher with all the audio processors added, not yet started.
+     */
+    public static AudioDispatcher featureDispatcher(String inputFilename, FeatureWriter writer,
+            int SAMPLE_RATE, int BUFFER_SIZE, int BUFFER_OVERLAP,
+            int numCepstralCoeffs, int numMelFilters, float lowerFilterFreq, float upperFilterFreq, User user) {
         // Create the audio dispatcher
         AudioDispatcher dispatcher = AudioUtils.audioDispatcherFromFile(new File(inputFilename + ".wav"), SAMPLE_RATE,
                 BUFFER_SIZE, BUFFER_OVERLAP);
+        addFeatureProcessors(dispatcher::addAudioProcessor, writer, SAMPLE_RATE, BUFFER_SIZE, numCepstralCoeffs,
+                numMelFilters, lowerFilterFreq, upperFilterFreq, user);
+        return dispatcher;
+    }
+
+    /**
+     * Sets up the feature extraction pipeline of a WAV file already decoded, without running it. Running the returned
+     * dispatcher writes out the same ARFF file as {@link #featureDispatcher(String, String, int, int, int, int, int,
+     * float, float, User)}, without reading the WAV file again.
+     *
+     * @param audio the samples of the WAV file, e.g. shared by the dispatchers of a parameter sweep
+     * @param inputFilename Full path file name without extension
+     * @param append String to append to filename to indicate different runs for experiments
+     * @param user User to label voiced segments
+     * @return the dispatcher with all the audio processors added, not yet started.
+     */
+    public static DecodedAudio.Dispatcher featureDispatcher(DecodedAudio audio, String inputFilename, String append,
+            int SAMPLE_RATE, int BUFFER_SIZE, int BUFFER_OVERLAP,
+            int numCepstralCoeffs, int numMelFilters, float lowerFilterFreq, float upperFilterFreq, User user) {
+        FeatureWriter writer = null;
+
+        try {
+            writer = new AsyncRowWriter(inputFilename + append + ".arff",
+                    AudioUtils.getARFFHeader(inputFilename).getBytes(), ARFFRowEncoder::encodeFeatureVector,
+                    AsyncRowWriter.OverflowPolicy.BLOCK);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        DecodedAudio.Dispatcher dispatcher = audio.dispatcher(BUFFER_SIZE, BUFFER_OVERLAP);
+        addFeatureProcessors(dispatcher::addAudioProcessor, writer, SAMPLE_RATE, BUFFER_SIZE, numCepstralCoeffs,
+                numMelFilters, lowerFilterFreq, upperFilterFreq, user);
+        return dispatcher;
+    }
+
+    /**
+     * Processes a WAV file for features and saves it into an ARFF file, the same as {@link
+     * #processWAVFileForFeatures(String, String, int, int, int, int, int, float, float, User)}, as a pipeline of the
+     * scheduler rather than on a thread of its own.
+     *
+     * @param inputFilename Full path file name without extension
+     * @param append String to append to filename to indicate different runs for experiments
+     * @param user User to label voiced segments
+     * @return the pipeline, already running. This enables blocking functions.
+     */
+    public static PipelineScheduler.Pipeline processWAVFileForFeatures(PipelineScheduler scheduler,
+            String inputFilename, String append, int SAMPLE_RATE, int BUFFER_SIZE, int BUFFER_OVERLAP,
+            int numCepstralCoeffs, int numMelFilters, float lowerFilterFreq, float upperFilterFreq, User user) {
+        FeatureWriter writer = null;
 
-        // Initialise the audio processing result object buffer
-//        final AudioProcessingResult[] apr = new AudioProcessingResult[fBuff * 2 + 1];
+        try {
+            writer = new AsyncRowWriter(inputFilename + append + ".arff",
+                    AudioUtils.getARFFHeader(inputFilename).getBytes(), ARFFRowEncoder::encodeFeatureVector,
+                    AsyncRowWriter.OverflowPolicy.BLOCK);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
 
-        final ArrayList<AudioProcessingResult> processingResults = new ArrayList<>();
+        TarsosDSPAudioInputStream stream = AudioUtils.audioStreamFromFile(new File(inputFilename + ".wav"),
+                SAMPLE_RATE);
+        StreamDispatcher dispatcher = new StreamDispatcher(stream.getFormat(), BUFFER_SIZE, BUFFER_OVERLAP);
+        addFeatureProcessors(dispatcher::addAudioProcessor, writer, SAMPLE_RATE, BUFFER_SIZE, numCepstralCoeffs,
+                numMelFilters, lowerFilterFreq, upperFilterFreq, user);
+        return scheduler.submit(dispatcher, stream);
+    }
+
+    /**
+     * Adds the processors of the feature extraction pipeline, which write the features of every frame to the
+     * writer, and close it when done.
+     *
+     * @param pipeline adds a processor to the pipeline, e.g. an {@link AudioDispatcher}'s or a {@link
+     *                 StreamDispatcher}'s addAudioProcessor
+     * @param writer Destination of the features, e.g. an {@link AsyncRowWriter} or a {@link FeatureStoreWriter}
+     * @param user User to label voiced segments
+     */
+    private static void addFeatureProcessors(Consumer<AudioProcessor> pipeline, FeatureWriter writer,
+            int SAMPLE_RATE, int BUFFER_SIZE,
+            int numCepstralCoeffs, int numMelFilters, float lowerFilterFreq, float upperFilterFreq, User user) {
+        // 4 previous and 4 look ahead frames - this caters for N = 2, for delta, delta-delta MFCCs
+        final DeltaMFCCBuffer deltaBuffer = new DeltaMFCCBuffer(numCepstralCoeffs);
+        final float[] unvoicedMFCC = new float[numCepstralCoeffs];
 
         // Initialise Voice Activity Detector
         VoiceActivityDetector vad = new VoiceActivityDetector(SAMPLE_RATE, BUFFER_SIZE);
 
         // Init audio processor objects
-        BufferedWriter finalBw = bw;    // file writer
+        final FeatureWriter finalWriter = writer;    // file writer
         final MFCC mfcc = new MFCC(BUFFER_SIZE, (float) SAMPLE_RATE, numCepstralCoeffs, numMelFilters,
                 lowerFilterFreq, upperFilterFreq);// MFCC
 
         //--- Start adding audio processors ---
-        dispatcher.addAudioProcessor(mfcc);
-        dispatcher.addAudioProcessor(new AudioProcessor() {
-            int ctr = 0;
+        pipeline.accept(mfcc);
+        pipeline.accept(new AudioProcessor() {
             @Override
             public boolean process(AudioEvent audioEvent) {
-                AudioProcessingResult apr = new AudioProcessingResult();
-
                 // Check if voiced
-                apr.setVoiced(vad.isVoiced(audioEvent));
-
-                // Set the features
-                apr.setStartTime((float) audioEvent.getTimeStamp());
-                apr.setMFCC(apr.isVoiced() ? mfcc.getMFCC() : new float[13]);
-                apr.setUser(apr.isVoiced() ? user : User.NONE);
-
-                // Deal with START case - buffer the "previous" with copies of the same
-                if (processingResults.isEmpty()) {
-                    for (int i = 0, il = fBuff; i <= il; i++) {
-                        processingResults.add(apr);
-                    }
-                }
-                // Deal with NORMAL cases
-                else {
-                    processingResults.add(apr);
-
-                    // Buffer overflow, remove first buffer
-                    if (processingResults.size() > fBuffMax) {
-                        processingResults.remove(0);    // slide the window one step to the right
-                    }
-
-                    // Buffer is full, process for delta, delta-delta MFCCs
-                    if (processingResults.size() == fBuffMax) {
-                        AudioUtils.computeDeltaMFCC(processingResults);
-                        AudioProcessingResult middleFrame = processingResults.get(fBuff);
-
-                        // Write out the buffer
-                        try {
-                            // Only start writing when the buffer is full - grab the middle array
-                            finalBw.write(middleFrame.getFeatureVector());
-                            finalBw.newLine();
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        }
-                    }
+                boolean isVoiced = vad.isVoiced(audioEvent);
+
+                // Buffer the features, the middle frame is written out once its look ahead frames are in
+                if (deltaBuffer.push((float) audioEvent.getTimeStamp(), isVoiced ? mfcc.getMFCC() : unvoicedMFCC,
+                        isVoiced ? user : User.NONE)) {
+                    writeFrame();
                 }
                 return true;
             }
 
             @Override
             public void processingFinished() {
-                // TODO to be tested
-                AudioProcessingResult lastRes = processingResults.get(processingResults.size() - 1);
-
-                for (int i = 0; i < fBuff; i++) {
-                    processingResults.add(lastRes);
-                    processingResults.remove(0);
-
-                    AudioUtils.computeDeltaMFCC(processingResults);
-
-                    AudioProcessingResult middleFrame = processingResults.get(fBuff);
-
-                    // Write out the buffer
-                    try {
-                        // Only start writing when the buffer is full - grab the middle array
-                        finalBw.write(middleFrame.getFeatureVector());
-                        finalBw.newLine();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+                // Pad the end with the last frame to write out the remaining look ahead frames
+                while (deltaBuffer.flush()) {
+                    writeFrame();
                 }
 
-
                 // Close the file writer
                 try {
-                    finalBw.close();
+                    finalWriter.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            private void writeFrame() {
+                try {
+                    finalWriter.write(deltaBuffer.getOutputFrame());
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
             }
         });
+    }
 
-        // Initiate the thread and return it for blocking
-        thread = new Thread(dispatcher);
-        thread.start();
-        return thread;
+    /**
+     * Processes a single WAV file for features and saves it into an ARFF file, splitting the file into time segments
+     * that are processed concurrently, one per available processor. The ARFF file is the same as that of
+     * {@link #processWAVFileForFeatures(String, String, int, int, int, int, int, float, float, User)}. Blocks until
+     * the ARFF file is written.
+     *
+     * @param inputFilename Full path file name without extension
+     * @param append String to append to filename to indicate different runs for experiments
+     * @param user User to label voiced segments
+     */
+    public static void processWAVFileForFeaturesSegmented(String inputFilename, String append,
+            int SAMPLE_RATE, int BUFFER_SIZE, int BUFFER_OVERLAP,
+            int numCepstralCoeffs, int numMelFilters, float lowerFilterFreq, float upperFilterFreq, User user) {
+        SegmentedFeatureExtractor extractor = new SegmentedFeatureExtractor();
+        extractor.processWAVFileForFeatures(inputFilename, append, SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP,
+                numCepstralCoeffs, numMelFilters, lowerFilterFreq, upperFilterFreq, user);
+        extractor.shutdown();
     }
 
     /**
      * Computes the features, runs the classifier to identify users and output reminder events
+     * <p>
+     * The classifier is read from fileName.model. If there is a held-out set for it, fileName test.arff, the
+     * classifier is compiled, and used compiled if it predicts the same as Weka on all of that set.
      *
      * @param filepath
      * @param fileName
      * @return
      */
     public static Thread processWAVRAWFile(String filepath, String fileName) {
+        return processWAVRAWFile(filepath, fileName, 0);
+    }
+
+    /**
+     * Computes the features, runs the classifier to identify users and output reminder events, classifying the
+     * frames in batches on a number of threads. For reprocessing recordings offline.
+     *
+     * @param numThreads number of threads to classify on, or 0 to classify each frame as it is read
+     */
+    public static Thread processWAVRAWFile(String filepath, String fileName, int numThreads) {
         String filepathname = filepath + fileName;
         // User classifier
         try {
             Classifier classifier = (Classifier) SerializationHelper.read(filepathname + ".model");
-            AudioDispatcher dispatcher = AudioUtils.processRAWFileForLog(filepathname, classifier, SAMPLE_RATE, BUFFER_SIZE,
-                    BUFFER_OVERLAP);
+            CompiledClassifier compiled = null;
+            if (new File(filepathname + " test.arff").exists()) {
+                compiled = ModelCompiler.compile(classifier,
+                        PredictionProcessor.readARFF(filepath, fileName + " test"));
+            }
+            AudioDispatcher dispatcher = AudioUtils.processRAWFileForLog(filepathname, classifier, compiled,
+                    numThreads, SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP);
             Thread thread = new Thread(dispatcher);
             thread.start();
             return thread;
@@ -337,6 +521,31 @@ public class WAVProcessor {
         return null;
     }
 
+    /**
+     * Computes the features, runs the classifier to identify users and output reminder events, as {@link
+     * #processWAVRAWFile(String, String)} does, as a pipeline of the scheduler rather than on a thread of its own.
+     *
+     * @return the pipeline, already running, or null if the classifier cannot be read
+     */
+    public static PipelineScheduler.Pipeline processWAVRAWFile(PipelineScheduler scheduler, String filepath,
+                                                               String fileName) {
+        String filepathname = filepath + fileName;
+        // User classifier
+        try {
+            Classifier classifier = (Classifier) SerializationHelper.read(filepathname + ".model");
+            CompiledClassifier compiled = null;
+            if (new File(filepathname + " test.arff").exists()) {
+                compiled = ModelCompiler.compile(classifier,
+                        PredictionProcessor.readARFF(filepath, fileName + " test"));
+            }
+            return AudioUtils.processRAWFileForLog(scheduler, filepathname, classifier, compiled, SAMPLE_RATE,
+                    BUFFER_SIZE, BUFFER_OVERLAP);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
 
 
 }
@@ -0,0 +1,71 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class ARFFDataCursorTest {
+    private static final String ARFF = "% comment\r\n" +
+            "@RELATION test\r\n" +
+            "\r\n" +
+            "@ATTRIBUTE a NUMERIC\r\n" +
+            "@ATTRIBUTE class {NONE, ADULT, CHILD}\r\n" +
+            "\r\n" +
+            "@DATA\r\n" +
+            "1.5,ADULT\r\n" +
+            "% skipped\r\n" +
+            "\r\n" +
+            "-2.0, CHILD\r\n" +
+            "3.0,?";
+
+    @Test
+    public void readsRowsInPlace() throws Exception {
+        ARFFDataCursor cursor = new ARFFDataCursor(writeARFF(ARFF).getPath());
+        assertEquals("test", cursor.getRelation());
+        assertEquals(2, cursor.getAttributes().size());
+
+        assertTrue(cursor.next());
+        assertEquals(2, cursor.getNumFields());
+        assertEquals(3, cursor.getFieldEnd(0));
+        assertEquals(4, cursor.getFieldStart(1));
+        assertEquals(User.ADULT, cursor.getUser());
+        assertEquals("1.5,ADULT", getRow(cursor));
+        long firstRow = cursor.getRowOffset();
+
+        assertTrue(cursor.next());
+        assertEquals(User.CHILD, cursor.getUser());
+        assertEquals("-2.0, CHILD", getRow(cursor));
+
+        assertTrue(cursor.next());
+        assertEquals(User.NONE, cursor.getUser());
+        assertEquals("3.0,?", getRow(cursor));
+        assertFalse(cursor.next());
+
+        cursor.seek(firstRow);
+        assertTrue(cursor.next());
+        assertEquals("1.5,ADULT", getRow(cursor));
+        cursor.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsFilesWithoutData() throws Exception {
+        new ARFFDataCursor(writeARFF("@RELATION test\n@ATTRIBUTE a NUMERIC\n").getPath());
+    }
+
+    private static String getRow(ARFFDataCursor cursor) {
+        byte[] row = new byte[cursor.getRowLength()];
+        cursor.copyRow(0, row.length, row, 0);
+        return new String(row);
+    }
+
+    private static File writeARFF(String content) throws IOException {
+        File file = File.createTempFile("cursor", ".arff");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("US-ASCII"));
+        out.close();
+        return file;
+    }
+}
@@ -0,0 +1,80 @@
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ARFFRowEncoderTest {
+    private static final float[] SPECIAL = {0f, -0f, 1f, -1f, 0.001f, 9.999999E-4f, 1.0E7f, 9999999f, 0.1f,
+            1.4E-45f, Float.MIN_NORMAL, Float.MAX_VALUE, Float.NaN, Float.POSITIVE_INFINITY,
+            Float.NEGATIVE_INFINITY, 3.3871888E7f, 7.4505806E-9f, 123456.79f, -2.7182817f};
+
+    @Test
+    public void matchesFloatToString() {
+        byte[] buf = new byte[ARFFRowEncoder.MAX_FLOAT_LENGTH];
+        for (float value : SPECIAL) {
+            assertFloat(value, buf);
+        }
+
+        Random random = new Random(0);
+        for (int i = 0; i < 1000000; i++) {
+            assertFloat(Float.intBitsToFloat(random.nextInt()), buf);
+            assertFloat((float) random.nextGaussian() * 20, buf);
+        }
+    }
+
+    private static void assertFloat(float value, byte[] buf) {
+        int length = ARFFRowEncoder.appendFloat(value, buf, 0);
+        assertEquals(Float.toString(value), new String(buf, 0, length));
+    }
+
+    @Test
+    public void matchesFeatureVector() {
+        Random random = new Random(0);
+        AudioProcessingResult frame = new AudioProcessingResult();
+        frame.setMFCC(randomFloats(random, 13));
+        frame.setDMFCC(randomFloats(random, 12));
+        frame.setDDMFCC(randomFloats(random, 12));
+        frame.setUser(User.CHILD);
+
+        byte[] buf = new byte[ARFFRowEncoder.MAX_ROW_LENGTH];
+        int length = ARFFRowEncoder.encodeFeatureVector(frame, buf, 0);
+        assertEquals(frame.getFeatureVector() + System.lineSeparator(), new String(buf, 0, length));
+    }
+
+    @Test
+    public void matchesLogString() {
+        Random random = new Random(1);
+        AudioProcessingResult frame = new AudioProcessingResult();
+        frame.setStartTime(12.34f);
+        frame.setDbSPL(71.25f);
+        frame.setMFCC(randomFloats(random, 13));
+        frame.setUser(User.ADULT);
+        frame.setEventBuffer(new int[]{0, 1, 0, 12, -3});
+
+        byte[] buf = new byte[ARFFRowEncoder.MAX_ROW_LENGTH];
+        int length = ARFFRowEncoder.encodeLogRow(frame, buf, 0);
+        assertEquals(frame.getLogString() + System.lineSeparator(), new String(buf, 0, length));
+
+        frame.setMFCC(null);
+        length = ARFFRowEncoder.encodeLogRow(frame, buf, 0);
+        assertEquals(frame.getLogString() + System.lineSeparator(), new String(buf, 0, length));
+    }
+
+    @Test
+    public void matchesIntegerToString() {
+        byte[] buf = new byte[11];
+        int[] values = {0, 1, -1, 9, 10, 99, 100, Integer.MAX_VALUE, Integer.MIN_VALUE, -123456};
+        for (int value : values) {
+            assertEquals(Integer.toString(value), new String(buf, 0, ARFFRowEncoder.appendInt(value, buf, 0)));
+        }
+    }
+
+    private static float[] randomFloats(Random random, int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = (float) random.nextGaussian() * 50;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,168 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class AsyncRowWriterTest {
+    private static final int PAGE_SIZE = 2 * ARFFRowEncoder.MAX_ROW_LENGTH;
+
+    /**
+     * Runs the writing out of the pages only when told to, as a disk that has stalled.
+     */
+    private static class StalledDisk implements Executor {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        synchronized void catchUp() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
+    @Test
+    public void writesTheSameFileAsARFFFeatureWriter() throws Exception {
+        List<AudioProcessingResult> frames = frames(5000);
+        byte[] header = "@DATA\n".getBytes();
+
+        File file = tempFile();
+        AsyncRowWriter writer = new AsyncRowWriter(file.getPath(), header, ARFFRowEncoder::encodeFeatureVector,
+                AsyncRowWriter.OverflowPolicy.BLOCK, PAGE_SIZE, 3);
+        for (AudioProcessingResult frame : frames) {
+            writer.write(frame);
+        }
+        writer.close();
+
+        byte[] rows = Files.readAllBytes(write(frames).toPath());
+        byte[] expected = Arrays.copyOf(header, header.length + rows.length);
+        System.arraycopy(rows, 0, expected, header.length, rows.length);
+        assertArrayEquals(expected, Files.readAllBytes(file.toPath()));
+        assertEquals(0, writer.getDroppedRows());
+    }
+
+    @Test
+    public void writesTheSameLogAsTheLogStrings() throws Exception {
+        List<AudioProcessingResult> frames = frames(3000);
+        StringBuilder expected = new StringBuilder(AudioProcessingResult.getLogHeaderString());
+        expected.append(System.lineSeparator());
+        for (AudioProcessingResult frame : frames) {
+            expected.append(frame.getLogString()).append(System.lineSeparator());
+        }
+
+        File file = tempFile();
+        AsyncRowWriter writer = new AsyncRowWriter(file.getPath(),
+                (AudioProcessingResult.getLogHeaderString() + System.lineSeparator()).getBytes(),
+                ARFFRowEncoder::encodeLogRow, AsyncRowWriter.OverflowPolicy.BLOCK);
+        for (AudioProcessingResult frame : frames) {
+            writer.write(frame);
+        }
+        writer.close();
+
+        assertEquals(expected.toString(), new String(Files.readAllBytes(file.toPath())));
+    }
+
+    @Test
+    public void dropsRowsWhileTheDiskHasStalled() throws Exception {
+        List<AudioProcessingResult> frames = frames(100);
+        StalledDisk disk = new StalledDisk();
+        File file = tempFile();
+        AsyncRowWriter writer = new AsyncRowWriter(file.getPath(), null, ARFFRowEncoder::encodeFeatureVector,
+                AsyncRowWriter.OverflowPolicy.DROP, PAGE_SIZE, 2, disk);
+        for (AudioProcessingResult frame : frames.subList(0, 50)) {
+            writer.write(frame);
+        }
+        long dropped = writer.getDroppedRows();
+        assertTrue(dropped > 0);
+        disk.catchUp();
+        for (AudioProcessingResult frame : frames.subList(50, 100)) {
+            writer.write(frame);
+            disk.catchUp();
+        }
+        writer.close();
+
+        // the rows of the two pages before the stall, then those after it, whole
+        int kept = (int) (50 - dropped);
+        List<AudioProcessingResult> expected = new ArrayList<>(frames.subList(0, kept));
+        expected.addAll(frames.subList(50, 100));
+        assertArrayEquals(Files.readAllBytes(write(expected).toPath()), Files.readAllBytes(file.toPath()));
+        assertEquals(dropped, writer.getDroppedRows());
+    }
+
+    @Test
+    public void spillsWhileTheDiskHasStalled() throws Exception {
+        List<AudioProcessingResult> frames = frames(2000);
+        StalledDisk disk = new StalledDisk();
+        File file = tempFile();
+        AsyncRowWriter writer = new AsyncRowWriter(file.getPath(), null, ARFFRowEncoder::encodeFeatureVector,
+                AsyncRowWriter.OverflowPolicy.SPILL, PAGE_SIZE, 2, disk);
+        for (int i = 0; i < frames.size(); i++) {
+            writer.write(frames.get(i));
+            if (i % 700 == 699) {
+                disk.catchUp();
+            }
+        }
+        assertTrue(writer.getSpilledBytes() > 0);
+        writer.close();
+        disk.catchUp();
+
+        assertArrayEquals(Files.readAllBytes(write(frames).toPath()), Files.readAllBytes(file.toPath()));
+        assertEquals(0, writer.getDroppedRows());
+    }
+
+    /**
+     * @return the file of rows only an ARFFFeatureWriter writes of the frames
+     */
+    private static File write(List<AudioProcessingResult> frames) throws Exception {
+        File file = tempFile();
+        ARFFFeatureWriter writer = new ARFFFeatureWriter(file.getPath(), null);
+        for (AudioProcessingResult frame : frames) {
+            writer.write(frame);
+        }
+        writer.close();
+        return file;
+    }
+
+    private static File tempFile() throws Exception {
+        File file = File.createTempFile("rows", ".arff");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static List<AudioProcessingResult> frames(int count) {
+        Random random = new Random(count);
+        List<AudioProcessingResult> frames = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            AudioProcessingResult frame = new AudioProcessingResult();
+            frame.setStartTime(i * 0.01f);
+            frame.setDbSPL((float) random.nextGaussian() * 10 + 60);
+            frame.setMFCC(floats(random, 13));
+            frame.setDMFCC(floats(random, 12));
+            frame.setDDMFCC(floats(random, 12));
+            frame.setUser(User.values()[random.nextInt(3)]);
+            int[] events = new int[5];
+            Arrays.fill(events, random.nextInt(3) - 1);
+            frame.setEventBuffer(events);
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    private static float[] floats(Random random, int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = (float) random.nextGaussian() * 50;
+        }
+        return values;
+    }
+}
@@ -1,7 +1,11 @@
 import org.junit.Test;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -89,4 +93,93 @@ public class AudioUtilsTest {
         assertEquals(expected, actual, 0);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void rebalanceClassInARFF() throws Exception {
+        String mergedFile = writeTestARFF();
+
+        // 10 ADULT, 4 CHILD and 6 NONE rows: ADULT is cut down to the 6 of the middle class
+        File balanced = new File(mergedFile + " balanced.arff");
+        balanced.deleteOnExit();
+        AudioUtils.rebalanceClassInARFF(mergedFile, 1);
+        List<String> rows = getDataRows(balanced);
+        assertEquals(16, rows.size());
+        int adult = 0, previous = -1;
+        for (String row : rows) {
+            int i = Integer.parseInt(row.split(",")[0]);
+            assertTrue(i > previous);   // file order is kept
+            previous = i;
+            if (row.endsWith("ADULT")) {
+                adult++;
+            }
+        }
+        assertEquals(6, adult);
+
+        // the same seed picks the same rows
+        AudioUtils.rebalanceClassInARFF(mergedFile, 1);
+        assertEquals(rows, getDataRows(balanced));
+    }
+
+    @Test
+    public void split() throws Exception {
+        String file = writeTestARFF();
+        File dir = new File(file).getParentFile();
+        String name = new File(file).getName();
+        File train = new File(file + " tp0.5 train.arff");
+        File test = new File(file + " tp0.5 test.arff");
+        train.deleteOnExit();
+        test.deleteOnExit();
+
+        AudioUtils.split(0.5f, dir.getPath() + "/", name);
+
+        // every other row of each class, in file order
+        assertEquals(Arrays.asList("1,ADULT", "3,ADULT", "5,ADULT", "7,ADULT", "9,ADULT", "11,CHILD", "13,CHILD",
+                "15,NONE", "17,NONE", "19,NONE"), getDataRows(train));
+        assertEquals(10, getDataRows(test).size());
+    }
+
+    @Test
+    public void splitFolds() throws Exception {
+        String file = writeTestARFF();
+        File dir = new File(file).getParentFile();
+        String name = new File(file).getName();
+
+        AudioUtils.splitFolds(3, dir.getPath() + "/", name);
+
+        int testRows = 0;
+        for (int fold = 0; fold < 3; fold++) {
+            File train = new File(file + " fold" + fold + " train.arff");
+            File test = new File(file + " fold" + fold + " test.arff");
+            train.deleteOnExit();
+            test.deleteOnExit();
+            List<String> testData = getDataRows(test);
+            testRows += testData.size();
+            assertEquals(20, testData.size() + getDataRows(train).size());
+        }
+        assertEquals(20, testRows);
+        assertEquals(Arrays.asList("0,ADULT", "3,ADULT", "6,ADULT", "9,ADULT", "10,CHILD", "13,CHILD", "14,NONE",
+                "17,NONE"), getDataRows(new File(file + " fold0 test.arff")));
+    }
+
+    /**
+     * Writes an ARFF file with 10 ADULT, 4 CHILD and 6 NONE rows, whose first field is the row number.
+     *
+     * @return path, filename, no extension
+     */
+    private static String writeTestARFF() throws Exception {
+        File file = File.createTempFile("merged", ".arff");
+        file.deleteOnExit();
+        FileWriter fw = new FileWriter(file);
+        fw.write(AudioUtils.getARFFHeader("merged"));
+        for (int i = 0; i < 20; i++) {
+            User user = i < 10 ? User.ADULT : (i < 14 ? User.CHILD : User.NONE);
+            fw.write(i + "," + user + "\n");
+        }
+        fw.close();
+        return file.getPath().substring(0, file.getPath().length() - ".arff".length());
+    }
+
+    private static List<String> getDataRows(File file) throws Exception {
+        List<String> lines = Files.readAllLines(file.toPath());
+        return lines.subList(lines.indexOf("@DATA") + 1, lines.size());
+    }
+}
@@ -0,0 +1,57 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BatchFrameClassifierTest {
+    @Test
+    public void handsOnFramesInOrder() {
+        final List<AudioProcessingResult> consumed = new ArrayList<>();
+        BatchFrameClassifier classifier = new BatchFrameClassifier(new TestAudio.LoudnessClassifier(true), null, 4, 5,
+                consumed::add);
+
+        List<AudioProcessingResult> frames = new ArrayList<>();
+        for (int i = 0; i < 103; i++) {
+            AudioProcessingResult frame = new AudioProcessingResult();
+            frame.setStartTime(i);
+            frame.setDbSPL(i % 3 == 0 ? 80 : 50);
+            frame.setMFCC(new float[13]);
+            frames.add(frame);
+            classifier.add(frame);
+        }
+        classifier.finish();
+
+        assertEquals(frames.size(), consumed.size());
+        for (int i = 0; i < frames.size(); i++) {
+            assertSame(frames.get(i), consumed.get(i));
+            assertEquals(i % 3 == 0 ? User.ADULT : User.CHILD, consumed.get(i).getUser());
+        }
+    }
+
+    @Test
+    public void logsLikeInlineClassification() throws Exception {
+        String filename = TestAudio.writeWAV(60, 14);
+        File log = new File(filename + " log.csv");
+        log.deleteOnExit();
+        AudioUtils.processRAWFileForLog(filename, new TestAudio.LoudnessClassifier(true), null, 0,
+                WAVProcessor.SAMPLE_RATE, WAVProcessor.BUFFER_SIZE, WAVProcessor.BUFFER_OVERLAP).run();
+        List<String> expected = Files.readAllLines(log.toPath());
+
+        AudioUtils.processRAWFileForLog(filename, new TestAudio.LoudnessClassifier(true), null, 4,
+                WAVProcessor.SAMPLE_RATE, WAVProcessor.BUFFER_SIZE, WAVProcessor.BUFFER_OVERLAP).run();
+        assertEquals(expected, Files.readAllLines(log.toPath()));
+
+        int withEvents = 0;
+        for (String row : expected.subList(1, expected.size())) {
+            if (!row.endsWith(", 0, 0, 0, 0, 0")) {
+                withEvents++;
+            }
+        }
+        assertTrue(expected.size() > 5000);
+        assertTrue(withEvents > 0);
+    }
+}
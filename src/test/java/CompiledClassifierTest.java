@@ -0,0 +1,72 @@
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompiledClassifierTest {
+    @Test
+    public void treesFollowTheirSplits() {
+        // x0 <= 1 ? NONE : (x1 < 5 ? ADULT : CHILD)
+        int[][] attribute = {{0, -1, 1, -1, -1}};
+        double[][] split = {{1, 0, 5, 0, 0}};
+        int[][] left = {{1, -1, 3, -1, -1}}, right = {{2, -1, 4, -1, -1}}, leaf = {{-1, 0, -1, 1, 2}};
+        double[][] leaves = {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}};
+
+        CompiledClassifier j48 = new CompiledClassifier.TreeEnsemble(attribute, split, left, right, leaf, leaves,
+                true, false, 3);
+        assertEquals(0, j48.classify(new double[]{1, 9, 0}), 0);
+        assertEquals(0, j48.classify(new double[]{1 + 1e-7, 9, 0}), 0);   // within C45Split's 1e-6
+        assertEquals(1, j48.classify(new double[]{2, 4, 0}), 0);
+        assertEquals(1, j48.classify(new double[]{2, 5 - 1e-7, 0}), 0);
+        assertEquals(2, j48.classify(new double[]{2, 5.1, 0}), 0);
+
+        CompiledClassifier randomTree = new CompiledClassifier.TreeEnsemble(attribute, split, left, right, leaf,
+                leaves, false, true, 3);
+        assertEquals(1, randomTree.classify(new double[]{1, 4, 0}), 0);   // values equal to the split go right
+        assertEquals(2, randomTree.classify(new double[]{2, 5, 0}), 0);
+    }
+
+    @Test
+    public void forestsAddUpTheirLeaves() {
+        // two stumps on x0, the second one outvoting the first above 0
+        int[][] attribute = {{0, -1, -1}, {0, -1, -1}};
+        double[][] split = {{0, 0, 0}, {0, 0, 0}};
+        int[][] left = {{1, -1, -1}, {1, -1, -1}}, right = {{2, -1, -1}, {2, -1, -1}};
+        int[][] leaf = {{-1, 0, 1}, {-1, 2, 3}};
+        double[][] leaves = {{0.6, 0.4, 0}, {0.6, 0.4, 0}, {0.5, 0.5, 0}, {0, 0.1, 0.9}};
+        CompiledClassifier forest = new CompiledClassifier.TreeEnsemble(attribute, split, left, right, leaf, leaves,
+                false, true, 3);
+        assertEquals(0, forest.classify(new double[]{-1, 0}), 0);
+        assertEquals(2, forest.classify(new double[]{1, 0}), 0);
+
+        double[][] empty = {{0, 0, 0}, {0, 0, 0}, {0, 0, 0}, {0, 0, 0}};
+        CompiledClassifier unclassified = new CompiledClassifier.TreeEnsemble(attribute, split, left, right, leaf,
+                empty, false, true, 3);
+        assertTrue(Double.isNaN(unclassified.classify(new double[]{1, 0})));
+    }
+
+    @Test
+    public void logisticRegressionSkipsTheClass() {
+        // predictors x0 and x2, the class at 1
+        double[][] weights = {{0.5, -1}, {2, 0}, {0, 3}};
+        CompiledClassifier logistic = new CompiledClassifier.LogisticRegression(weights, 1, 3);
+        assertEquals(0, logistic.classify(new double[]{1, 2, 0}), 0);    // v = {2.5, -1, 0}
+        assertEquals(1, logistic.classify(new double[]{-1, 0, 1}), 0);   // v = {-1.5, 2, 0}
+        assertEquals(2, logistic.classify(new double[]{-1, 0, -1}), 0);  // v = {-1.5, -4, 0}
+    }
+
+    @Test
+    public void pairwiseLinearVotes() {
+        // attributes x0 and x1 normalized from [0, 10] and [0, 2] to [0, 1], the class at 2
+        double[] center = {0, 0, 0}, divisor = {10, 2, 1};
+        boolean[] zero = {false, false, false};
+        int[] first = {0, 0, 1}, second = {1, 2, 2};
+        int[][] indices = {{0}, {1}, {0, 1}};
+        double[][] weights = {{1}, {1}, {-1, 1}};
+        double[] bias = {0.5, 0.5, 0};
+        CompiledClassifier smo = new CompiledClassifier.PairwiseLinear(center, divisor, zero, 1, 0, first, second,
+                indices, weights, bias, 3);
+        assertEquals(0, smo.classify(new double[]{2, 0.2, 0}), 0);
+        assertEquals(1, smo.classify(new double[]{8, 0.2, 0}), 0);
+        assertEquals(2, smo.classify(new double[]{2, 1.8, 0}), 0);
+    }
+}
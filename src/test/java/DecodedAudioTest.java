@@ -0,0 +1,150 @@
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DecodedAudioTest {
+    private static final int SAMPLE_RATE = 8000;
+
+    @Test
+    public void framesAsTheAudioDispatcherDoes() throws Exception {
+        int[][] framings = {{160, 80}, {240, 80}, {320, 160}, {256, 0}};
+        for (int length : new int[]{50, 100, 160, 1000, 1037, 8000}) {
+            File wav = File.createTempFile("decoded", ".wav");
+            wav.deleteOnExit();
+            AudioUtils.writeWAVFile(wav.getPath(), AudioUtils.shorts2Bytes(noise(length, length)), (short) 1,
+                    (short) 1, SAMPLE_RATE, (short) 16);
+            DecodedAudio audio = DecodedAudio.read(wav, SAMPLE_RATE);
+            assertEquals(length, audio.getLength());
+
+            for (int[] framing : framings) {
+                AudioDispatcher expected = AudioUtils.audioDispatcherFromFile(wav, SAMPLE_RATE, framing[0],
+                        framing[1]);
+                List<String> expectedFrames = record(expected::addAudioProcessor);
+                expected.run();
+
+                DecodedAudio.Dispatcher dispatcher = audio.dispatcher(framing[0], framing[1]);
+                List<String> frames = record(dispatcher::addAudioProcessor);
+                dispatcher.run();
+
+                String message = length + " samples, " + framing[0] + "/" + framing[1];
+                assertEquals(message, expectedFrames, frames);
+                assertEquals(message, expected.secondsProcessed(), dispatcher.secondsProcessed(), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void sweepWritesTheFilesOfEachConfiguration() throws Exception {
+        File directory = Files.createTempDirectory("sweep").toFile();
+        directory.deleteOnExit();
+        String filepath = directory.getPath() + "/";
+        TestAudio.writeWAV(directory, "P01-C", 3, 1);
+        TestAudio.writeWAV(directory, "P01-A", 2, 2);
+        TestAudio.writeWAV(directory, "P01raw", 4, 3);
+
+        List<BatchFeatureExtractor.Configuration> configurations = Arrays.asList(
+                new BatchFeatureExtractor.Configuration(160, 80, 13, 40, 64, 4000),
+                new BatchFeatureExtractor.Configuration(240, 80, 13, 40, 64, 4000),
+                new BatchFeatureExtractor.Configuration("_320_160_20", 320, 160, 20, 30, 100, 3800));
+        BatchFeatureExtractor extractor = new BatchFeatureExtractor(2);    // fewer than the files decoded
+        extractor.processParticipants(filepath, new String[]{"P01"}, SAMPLE_RATE, configurations);
+        for (BatchFeatureExtractor.Configuration c : configurations) {
+            extractor.processParticipants(filepath, new String[]{"P01"}, " one" + c.append, SAMPLE_RATE,
+                    c.BUFFER_SIZE, c.BUFFER_OVERLAP, c.numCepstralCoeffs, c.numMelFilters, c.lowerFilterFreq,
+                    c.upperFilterFreq);
+        }
+        extractor.shutdown();
+
+        for (BatchFeatureExtractor.Configuration c : configurations) {
+            for (String output : new String[]{"P01-C", "P01-A", "P01raw", "P01raw_out"}) {
+                String swept = filepath + output.replace("_out", c.append + "_out");
+                String one = filepath + output.replace("_out", " one" + c.append + "_out");
+                if (!output.endsWith("_out")) {
+                    swept += c.append;
+                    one += " one" + c.append;
+                }
+                assertEquals(swept, read(one + ".arff"), read(swept + ".arff"));
+            }
+        }
+    }
+
+    @Test
+    public void sweepSkipsTheMergeOfAFileThatCannotBeRead() throws Exception {
+        File directory = Files.createTempDirectory("sweep").toFile();
+        directory.deleteOnExit();
+        String filepath = directory.getPath() + "/";
+        TestAudio.writeWAV(directory, "P01-C", 2, 1);
+        TestAudio.writeWAV(directory, "P01-A", 2, 2);
+        File raw = new File(directory, "P01raw.wav");
+        raw.deleteOnExit();
+        Files.write(raw.toPath(), "not a WAV file".getBytes());
+        // the features of an earlier recording, not to be merged
+        BatchFeatureExtractor.Configuration configuration = new BatchFeatureExtractor.Configuration(160, 80, 13, 40,
+                64, 4000);
+        File stale = new File(filepath + "P01raw" + configuration.append + ".arff");
+        stale.deleteOnExit();
+        Files.write(stale.toPath(), AudioUtils.getARFFHeader("stale").getBytes());
+
+        // one file decoded at a time, so the files after the one that fails wait for it to give back its permit
+        BatchFeatureExtractor extractor = new BatchFeatureExtractor(1);
+        extractor.processParticipants(filepath, new String[]{"P01"}, SAMPLE_RATE, Arrays.asList(configuration));
+        extractor.shutdown();
+
+        assertFalse(read(filepath + "P01-C" + configuration.append + ".arff").isEmpty());
+        new File(filepath + "P01-A" + configuration.append + ".arff").deleteOnExit();
+        File merged = new File(filepath + "P01raw" + configuration.append + "_out.arff");
+        merged.deleteOnExit();
+        assertFalse(merged.exists());
+    }
+
+    /**
+     * @return the time stamp, overlap and samples of each frame the processor is given, and when it finishes
+     */
+    private static List<String> record(java.util.function.Consumer<AudioProcessor> pipeline) {
+        final List<String> frames = new ArrayList<>();
+        pipeline.accept(new AudioProcessor() {
+            @Override
+            public boolean process(AudioEvent audioEvent) {
+                frames.add(audioEvent.getTimeStamp() + " " + audioEvent.getOverlap() + " "
+                        + Arrays.toString(audioEvent.getFloatBuffer()));
+                return true;
+            }
+
+            @Override
+            public void processingFinished() {
+                frames.add("finished");
+            }
+        });
+        return frames;
+    }
+
+    /**
+     * @return the lines of the file, but for the time it was created and its name
+     */
+    private static List<String> read(String filename) throws Exception {
+        File file = new File(filename);
+        file.deleteOnExit();
+        List<String> lines = new ArrayList<>(Files.readAllLines(file.toPath()));
+        lines.removeIf(line -> line.startsWith("% (a) Created") || line.startsWith("@RELATION"));
+        return lines;
+    }
+
+    private static short[] noise(int length, long seed) {
+        Random random = new Random(seed);
+        short[] samples = new short[length];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (random.nextGaussian() * 3000);
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,97 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DeltaMFCCBufferTest {
+    @Test
+    public void matchesComputeDeltaMFCC() throws Exception {
+        // same frames as AudioUtilsTest.computeDeltaMFCC
+        float[][] m = {
+                {100, 1, 2}, {100, 7, 8}, {100, 10, 5}, {100, 4, 5}, {100, 13, 7},
+                {100, 10, 11}, {100, 4, 5}, {100, 13, 14}, {100, 13, 14}
+        };
+        DeltaMFCCBuffer buffer = new DeltaMFCCBuffer(3);
+
+        // frame 4 is the middle frame once all 9 frames are in
+        for (int i = 0; i < m.length; i++) {
+            boolean ready = buffer.push(i, m[i], User.NONE);
+            assertEquals(i >= 4, ready);
+        }
+        AudioProcessingResult frame = buffer.getOutputFrame();
+        assertEquals(4, frame.getStartTime(), 0);
+        assertArrayEquals(new float[]{-0.6f, 0.6f}, frame.getDMFCC(), 0.01f);
+        assertArrayEquals(new float[]{-0.36f, 0.28f}, frame.getDDMFCC(), 0.01f);
+    }
+
+    @Test
+    public void matchesArrayListWindow() throws Exception {
+        Random random = new Random(42);
+        int numFrames = 250, numCoeffs = 13;
+        float[][] mfccs = new float[numFrames][numCoeffs];
+        for (float[] mfcc : mfccs) {
+            for (int j = 0; j < numCoeffs; j++) {
+                mfcc[j] = random.nextFloat() * 100 - 50;
+            }
+        }
+
+        ArrayList<AudioProcessingResult> expected = slidingWindow(mfccs);
+
+        DeltaMFCCBuffer buffer = new DeltaMFCCBuffer(numCoeffs);
+        int written = 0;
+        for (int i = 0; i < numFrames; i++) {
+            if (buffer.push(i, mfccs[i], User.ADULT)) {
+                assertSameFeatures(expected.get(written++), buffer.getOutputFrame());
+            }
+        }
+        while (buffer.flush()) {
+            assertSameFeatures(expected.get(written++), buffer.getOutputFrame());
+        }
+        assertEquals(numFrames, written);
+    }
+
+    private static void assertSameFeatures(AudioProcessingResult expected, AudioProcessingResult actual) {
+        assertEquals(expected.getFeatureVector(), actual.getFeatureVector());
+    }
+
+    /**
+     * The sliding ArrayList window that WAVProcessor.processWAVFileForFeatures used before DeltaMFCCBuffer.
+     */
+    private static ArrayList<AudioProcessingResult> slidingWindow(float[][] mfccs) {
+        int fBuff = 4, fBuffMax = fBuff * 2 + 1;
+        ArrayList<AudioProcessingResult> processingResults = new ArrayList<>();
+        ArrayList<AudioProcessingResult> output = new ArrayList<>();
+
+        for (float[] mfcc : mfccs) {
+            AudioProcessingResult apr = new AudioProcessingResult();
+            apr.setMFCC(mfcc);
+            apr.setUser(User.ADULT);
+
+            if (processingResults.isEmpty()) {
+                for (int i = 0; i <= fBuff; i++) {
+                    processingResults.add(apr);
+                }
+            } else {
+                processingResults.add(apr);
+                if (processingResults.size() > fBuffMax) {
+                    processingResults.remove(0);
+                }
+                if (processingResults.size() == fBuffMax) {
+                    AudioUtils.computeDeltaMFCC(processingResults);
+                    output.add(processingResults.get(fBuff));
+                }
+            }
+        }
+
+        AudioProcessingResult lastRes = processingResults.get(processingResults.size() - 1);
+        for (int i = 0; i < fBuff; i++) {
+            processingResults.add(lastRes);
+            processingResults.remove(0);
+            AudioUtils.computeDeltaMFCC(processingResults);
+            output.add(processingResults.get(fBuff));
+        }
+        return output;
+    }
+}
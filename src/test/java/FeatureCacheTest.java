@@ -0,0 +1,189 @@
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class FeatureCacheTest {
+    private static final int SAMPLE_RATE = 8000, BUFFER_SIZE = 160, BUFFER_OVERLAP = 80;
+
+    private final List<File> directories = new ArrayList<>();
+
+    @After
+    public void deleteTheDirectories() throws Exception {
+        for (File directory : directories) {
+            try (Stream<Path> paths = Files.walk(directory.toPath())) {
+                // the files before the directories they are in
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void keysByTheAudioAndTheParameters() throws Exception {
+        File directory = tempDirectory();
+        FeatureCache cache = new FeatureCache(directory.getPath() + "/cache", 1 << 20);
+        String wav = TestAudio.writeWAV(directory, "P01-C", 1, 1);
+        String key = key(cache, wav, User.CHILD, BUFFER_SIZE);
+
+        assertEquals(key, key(cache, wav, User.CHILD, BUFFER_SIZE));
+        assertEquals(key, key(cache, TestAudio.writeWAV(directory, "copy", 1, 1), User.CHILD, BUFFER_SIZE));
+        assertNotEquals(key, key(cache, wav, User.ADULT, BUFFER_SIZE));
+        assertNotEquals(key, key(cache, wav, User.CHILD, 2 * BUFFER_SIZE));
+        assertNotEquals(key, cache.key(wav, FeatureStore.EXTENSION, User.CHILD, SAMPLE_RATE, BUFFER_SIZE,
+                BUFFER_OVERLAP, 13, 40, 64, 4000));
+        assertNotEquals(key, key(cache, TestAudio.writeWAV(directory, "P01-C", 1, 2), User.CHILD, BUFFER_SIZE));
+    }
+
+    @Test
+    public void writesTheRowsOfAHitUnderItsOwnHeader() throws Exception {
+        File directory = tempDirectory();
+        FeatureCache cache = new FeatureCache(directory.getPath() + "/cache", 1 << 20);
+        File features = tempARFF(directory, "features.arff", 1000, 1);
+
+        File copy = new File(directory, "copy.arff");
+        String header = AudioUtils.getARFFHeader("copy");
+        assertFalse(cache.get("a.arff", copy.getPath(), header));
+        assertFalse(copy.exists());
+        cache.put("a.arff", features.getPath());
+        assertEquals(1000, cache.getSize());
+        assertTrue(cache.get("a.arff", copy.getPath(), header));
+        String rows = new String(Files.readAllBytes(features.toPath()));
+        rows = rows.substring(rows.indexOf("@DATA\n") + "@DATA\n".length());
+        assertEquals(header + rows, new String(Files.readAllBytes(copy.toPath())));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsed() throws Exception {
+        File directory = tempDirectory();
+        String cacheDirectory = directory.getPath() + "/cache";
+        FeatureCache cache = new FeatureCache(cacheDirectory, 2500);
+        File copy = new File(directory, "copy.arff");
+
+        cache.put("a.arff", tempARFF(directory, "a", 1000, 1).getPath());
+        cache.put("b.arff", tempARFF(directory, "b", 1000, 2).getPath());
+        assertTrue(cache.get("a.arff", copy.getPath(), ""));
+        cache.put("c.arff", tempARFF(directory, "c", 1000, 3).getPath());
+
+        assertTrue(cache.get("a.arff", copy.getPath(), ""));
+        assertFalse(cache.get("b.arff", copy.getPath(), ""));
+        assertTrue(cache.get("c.arff", copy.getPath(), ""));
+        assertEquals(2000, cache.getSize());
+
+        // the order of use outlives the cache object
+        cache = new FeatureCache(cacheDirectory, 2500);
+        cache.put("d.arff", tempARFF(directory, "d", 1000, 4).getPath());
+        assertFalse(cache.get("a.arff", copy.getPath(), ""));
+        assertTrue(cache.get("c.arff", copy.getPath(), ""));
+        assertTrue(cache.get("d.arff", copy.getPath(), ""));
+    }
+
+    @Test
+    public void extractsOnlyTheFilesThatChanged() throws Exception {
+        File directory = tempDirectory();
+        String filepath = directory.getPath() + "/";
+        TestAudio.writeWAV(directory, "P01-C", 2, 1);
+        TestAudio.writeWAV(directory, "P01-A", 2, 2);
+        TestAudio.writeWAV(directory, "P01raw", 2, 3);
+        String[] outputs = {"P01-C_1.arff", "P01-A_1.arff", "P01raw_1.arff", "P01raw_1_out.arff"};
+
+        FeatureCache cache = new FeatureCache(filepath + "cache", 1 << 24);
+        extract(filepath, cache);
+        assertEquals(3, cache.getMisses());
+        List<List<String>> extracted = new ArrayList<>();
+        for (int i = 0; i < outputs.length; i++) {
+            extracted.add(read(new File(directory, outputs[i])));
+            assertTrue(new File(directory, outputs[i]).delete());
+        }
+
+        TestAudio.writeWAV(directory, "P01-A", 2, 4);
+        extract(filepath, cache);
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        assertEquals(extracted.get(0), read(new File(directory, outputs[0])));
+        assertEquals(extracted.get(2), read(new File(directory, outputs[2])));
+        assertNotEquals(extracted.get(1), read(new File(directory, outputs[1])));
+    }
+
+    @Test
+    public void aRenamedCopyHasItsOwnHeader() throws Exception {
+        File directory = tempDirectory();
+        String filepath = directory.getPath() + "/";
+        for (String participant : new String[]{"P01", "P02"}) {
+            TestAudio.writeWAV(directory, participant + "-C", 2, 1);
+            TestAudio.writeWAV(directory, participant + "-A", 2, 2);
+            TestAudio.writeWAV(directory, participant + "raw", 2, 3);
+        }
+
+        FeatureCache cache = new FeatureCache(filepath + "cache", 1 << 24);
+        extract(filepath, "P01", cache);
+        extract(filepath, "P02", cache);
+        assertEquals(3, cache.getHits());
+        for (String output : new String[]{"-C_1.arff", "-A_1.arff", "raw_1.arff"}) {
+            List<String> original = read(new File(directory, "P01" + output));
+            List<String> copy = read(new File(directory, "P02" + output));
+            assertTrue(copy.contains("@RELATION " + (filepath + "P02" + output).replace("_1.arff", "")));
+            assertFalse(copy.contains("@RELATION " + (filepath + "P01" + output).replace("_1.arff", "")));
+            original.removeIf(line -> line.startsWith("@RELATION"));
+            copy.removeIf(line -> line.startsWith("@RELATION"));
+            assertEquals(original, copy);
+        }
+    }
+
+    private static void extract(String filepath, FeatureCache cache) {
+        extract(filepath, "P01", cache);
+    }
+
+    private static void extract(String filepath, String participant, FeatureCache cache) {
+        BatchFeatureExtractor extractor = new BatchFeatureExtractor(2, cache);
+        extractor.processParticipants(filepath, new String[]{participant}, "_1", SAMPLE_RATE, BUFFER_SIZE,
+                BUFFER_OVERLAP, 13, 40, 64, 4000);
+        extractor.shutdown();
+    }
+
+    private static String key(FeatureCache cache, String wav, User user, int bufferSize) throws Exception {
+        return cache.key(wav, ".arff", user, SAMPLE_RATE, bufferSize, BUFFER_OVERLAP, 13, 40, 64, 4000);
+    }
+
+    /**
+     * @return a directory deleted, with all in it, after the test
+     */
+    private File tempDirectory() throws Exception {
+        File directory = Files.createTempDirectory("cache").toFile();
+        directories.add(directory);
+        return directory;
+    }
+
+    /**
+     * @return an ARFF file of the feature header and rows of random digits, length bytes of them
+     */
+    private static File tempARFF(File directory, String name, int length, long seed) throws Exception {
+        Random random = new Random(seed);
+        StringBuilder arff = new StringBuilder(AudioUtils.getARFFHeader(name));
+        for (int i = 0; i < length; i++) {
+            arff.append(i % 10 == 9 ? '\n' : (char) ('0' + random.nextInt(10)));
+        }
+        File file = new File(directory, name);
+        Files.write(file.toPath(), arff.toString().getBytes());
+        return file;
+    }
+
+    /**
+     * @return the lines of the file, but for the time it was created
+     */
+    private static List<String> read(File file) throws Exception {
+        List<String> lines = new ArrayList<>(Files.readAllLines(file.toPath()));
+        lines.removeIf(line -> line.startsWith("% (a) Created"));
+        return lines;
+    }
+}
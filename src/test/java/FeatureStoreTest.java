@@ -0,0 +1,113 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FeatureStoreTest {
+    private static final String[] ATTRIBUTES = {"a", "b"};
+    private static final String[] CLASS_VALUES = {"NONE", "ADULT", "CHILD"};
+    private static final int SAMPLE_RATE = 8000, BUFFER_SIZE = 160, BUFFER_OVERLAP = 80;
+
+    @Test
+    public void readsBackAcrossBlocks() throws Exception {
+        File file = File.createTempFile("store", FeatureStore.EXTENSION);
+        file.deleteOnExit();
+
+        // 7 rows in blocks of 3, so the last block is partial
+        FeatureStoreWriter writer = new FeatureStoreWriter(file.getPath(), "test", ATTRIBUTES, CLASS_VALUES, 3);
+        for (int row = 0; row < 7; row++) {
+            writer.write(new float[]{row, -row * 0.5f}, (byte) (row % 3));
+        }
+        writer.close();
+
+        FeatureStoreReader reader = new FeatureStoreReader(file.getPath());
+        assertEquals(7, reader.getNumRows());
+        assertEquals(3, reader.getNumBlocks());
+        assertEquals("test", reader.getRelation());
+        assertArrayEquals(ATTRIBUTES, reader.getAttributeNames());
+        assertArrayEquals(CLASS_VALUES, reader.getClassValues());
+
+        float[] values = new float[2];
+        for (int row = 0; row < 7; row++) {
+            assertEquals(row, reader.getFloat(row, 0), 0);
+            assertEquals(row % 3, reader.getLabel(row));
+            reader.getRow(row, values);
+            assertArrayEquals(new float[]{row, -row * 0.5f}, values, 0);
+        }
+
+        float[] column = new float[3];
+        assertEquals(1, reader.getColumn(2, 1, column));
+        assertEquals(-3f, column[0], 0);
+        reader.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws Exception {
+        File file = File.createTempFile("other", FeatureStore.EXTENSION);
+        file.deleteOnExit();
+        AudioUtils.writeWAVFile(file.getPath(), new byte[4], (short) 1, (short) 1, 8000, (short) 16);
+        new FeatureStoreReader(file.getPath());
+    }
+
+    @Test
+    public void exportsTheARFFOfTheFeaturePipeline() throws Exception {
+        String wav = TestAudio.writeWAV(5, 5);
+        extractARFF(wav, "_arff", User.CHILD);
+        extractStore(wav, "_cbf", User.CHILD);
+        FeatureStore.exportToARFF(wav + "_cbf", wav + "_export");
+
+        List<String> expected = read(wav + "_arff.arff");
+        assertTrue(expected.size() > 400);
+        assertEquals(expected, read(wav + "_export.arff"));
+    }
+
+    @Test
+    public void writesTheUsersToRawLikeTheARFF() throws Exception {
+        String child = TestAudio.writeWAV(5, 6), adult = TestAudio.writeWAV(5, 7);
+        String raw = TestAudio.writeWAV(5, 8);
+        extractARFF(child, "", User.CHILD);
+        extractARFF(adult, "", User.ADULT);
+        extractARFF(raw, "", User.NONE);
+        AudioUtils.writeUsersToRaw(child, adult, raw);
+        List<String> expected = read(raw + "_out.arff");
+
+        extractStore(child, "", User.CHILD);
+        extractStore(adult, "", User.ADULT);
+        extractStore(raw, "", User.NONE);
+        new File(raw + "_out" + FeatureStore.EXTENSION).deleteOnExit();
+        FeatureStore.writeUsersToRaw(child, adult, raw);
+        FeatureStore.exportToARFF(raw + "_out", raw + "_out");
+
+        assertTrue(expected.stream().anyMatch(row -> row.endsWith(",ADULT")));
+        assertTrue(expected.stream().anyMatch(row -> row.endsWith(",CHILD")));
+        assertEquals(expected, read(raw + "_out.arff"));
+    }
+
+    private static void extractARFF(String wav, String append, User user) {
+        new File(wav + append + ".arff").deleteOnExit();
+        WAVProcessor.featureDispatcher(wav, append, SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP, 13, 40, 64, 4000, user)
+                .run();
+    }
+
+    private static void extractStore(String wav, String append, User user) throws Exception {
+        new File(wav + append + FeatureStore.EXTENSION).deleteOnExit();
+        WAVProcessor.processWAVFileForFeatureStore(wav, append, SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP, 13, 40, 64,
+                4000, user).join();
+    }
+
+    /**
+     * @return the lines of the ARFF file, but for the time it was created
+     */
+    private static List<String> read(String filename) throws Exception {
+        File file = new File(filename);
+        file.deleteOnExit();
+        List<String> lines = new ArrayList<>(Files.readAllLines(file.toPath()));
+        lines.removeIf(line -> line.startsWith("% (a) Created"));
+        return lines;
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.Test;
+import weka.classifiers.AbstractClassifier;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameClassifierTest {
+    @Test
+    public void reusesOneInstance() {
+        final List<Instance> seen = new ArrayList<>();
+        final List<Double> startTimes = new ArrayList<>(), mfcc13s = new ArrayList<>();
+        AbstractClassifier classifier = new AbstractClassifier() {
+            @Override
+            public void buildClassifier(Instances data) {
+            }
+
+            @Override
+            public double classifyInstance(Instance instance) {
+                seen.add(instance);
+                startTimes.add(instance.value(0));
+                mfcc13s.add(instance.value(15));
+                assertTrue(instance.isMissing(16));
+                assertSame(AudioProcessingResult.getInstancesHeader(), instance.dataset());
+                return instance.value(1) > 60 ? User.ADULT.ordinal() : User.CHILD.ordinal();
+            }
+        };
+
+        FrameClassifier frameClassifier = new FrameClassifier(classifier);
+        AudioProcessingResult loud = frame(0.5f, 70), quiet = frame(0.51f, 50);
+        assertEquals(User.ADULT, frameClassifier.classify(loud));
+        assertEquals(User.CHILD, frameClassifier.classify(quiet));
+        assertEquals(User.CHILD, quiet.getUser());
+
+        assertSame(seen.get(0), seen.get(1));
+        assertEquals(0.5f, startTimes.get(0), 0);
+        assertEquals(0.51f, startTimes.get(1), 0);
+        assertEquals(12, mfcc13s.get(1), 0);
+
+        // the same values as an instance of its own
+        double[] values = quiet.getInstanceValues(new double[AudioProcessingResult.NUM_INSTANCE_VALUES]);
+        Instance instance = quiet.getInstance();
+        for (int i = 0; i < values.length - 1; i++) {
+            assertEquals(values[i], instance.value(i), 0);
+        }
+    }
+
+    @Test
+    public void copiesTheModelForEachThread() throws Exception {
+        final ThreadLocal<FrameClassifier> copies = FrameClassifier.copies(new TestAudio.LoudnessClassifier(), null);
+        FrameClassifier mine = copies.get();
+        assertSame(mine, copies.get());
+        assertEquals(User.ADULT, mine.classify(frame(0, 80)));
+
+        final FrameClassifier[] other = new FrameClassifier[1];
+        final User[] user = new User[1];
+        Thread thread = new Thread(() -> {
+            other[0] = copies.get();
+            user[0] = other[0].classify(frame(0, 50));
+        });
+        thread.start();
+        thread.join();
+        assertNotSame(mine, other[0]);
+        assertEquals(User.CHILD, user[0]);
+    }
+
+    @Test
+    public void sharesASingleClassifierBetweenThreads() throws Exception {
+        final ThreadLocal<FrameClassifier> single = FrameClassifier.single(new TestAudio.LoudnessClassifier(), null);
+        FrameClassifier mine = single.get();
+        assertEquals(User.ADULT, mine.classify(frame(0, 80)));
+
+        final FrameClassifier[] other = new FrameClassifier[1];
+        Thread thread = new Thread(() -> other[0] = single.get());
+        thread.start();
+        thread.join();
+        assertSame(mine, other[0]);
+    }
+
+    private static AudioProcessingResult frame(float startTime, float dbSPL) {
+        AudioProcessingResult frame = new AudioProcessingResult();
+        frame.setStartTime(startTime);
+        frame.setDbSPL(dbSPL);
+        float[] mfcc = new float[13];
+        for (int i = 0; i < mfcc.length; i++) {
+            mfcc[i] = i;
+        }
+        frame.setMFCC(mfcc);
+        return frame;
+    }
+}
@@ -0,0 +1,74 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameRingTest {
+    private static class Slot {
+        long value;
+    }
+
+    @Test
+    public void roundsTheCapacityUpToAPowerOfTwo() {
+        assertEquals(1, new FrameRing<>(1, Slot::new).getCapacity());
+        assertEquals(4, new FrameRing<>(3, Slot::new).getCapacity());
+        assertEquals(64, new FrameRing<>(64, Slot::new).getCapacity());
+    }
+
+    @Test
+    public void reusesItsSlots() {
+        FrameRing<Slot> ring = new FrameRing<>(2, Slot::new);
+        List<Slot> claimed = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Slot slot = ring.claim();
+            slot.value = i;
+            claimed.add(slot);
+            ring.publish();
+            assertEquals(i, ring.take().value);
+            ring.release();
+        }
+        assertSame(claimed.get(0), claimed.get(2));
+        assertSame(claimed.get(1), claimed.get(5));
+        assertNotSame(claimed.get(0), claimed.get(1));
+    }
+
+    @Test
+    public void passesSlotsInOrderBetweenThreads() throws Exception {
+        final FrameRing<Slot> ring = new FrameRing<>(8, Slot::new);
+        final int count = 200000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                ring.claim().value = i;
+                ring.publish();
+                if (i % 50000 == 0) {
+                    sleep(20);  // let the consumer park
+                }
+            }
+            ring.close();
+        });
+        producer.start();
+
+        long expected = 0;
+        Slot slot;
+        while ((slot = ring.take()) != null) {
+            assertEquals(expected++, slot.value);
+            ring.release();
+            if (expected % 70000 == 0) {
+                sleep(20);  // let the producer park
+            }
+        }
+        producer.join();
+        assertEquals(count, expected);
+        assertNull(ring.take());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
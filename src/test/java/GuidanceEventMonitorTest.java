@@ -0,0 +1,133 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GuidanceEventMonitorTest {
+    private static final float HOP = 0.01f;
+
+    @Test
+    public void windowedChecksMatchScanningAllTurns() {
+        Random random = new Random(42);
+        GuidanceEventMonitor monitor = new GuidanceEventMonitor();
+        int overlaps = 0, fastSpeeches = 0, checks = 0;
+
+        int frame = 0;
+        for (int run = 0; run < 1500; run++) {
+            User user = User.values()[random.nextInt(3)];
+            int length = 1 + random.nextInt(user == User.NONE ? 700 : 80);
+            int onsetEvery = 2 + random.nextInt(20);
+            for (int i = 0; i < length; i++, frame++) {
+                AudioProcessingResult result = new AudioProcessingResult();
+                result.setStartTime(frame * HOP);
+                result.setUser(user);
+                if (user != User.NONE && frame % onsetEvery == 0) {
+                    result.addOnset(new Onset(frame * HOP, 1));
+                }
+
+                if (monitor.checkResult(result)) {
+                    checks++;
+                    boolean overlap = scanOverlap(monitor.getTurns(), result);
+                    boolean fastSpeech = scanFastSpeech(monitor.getTurns(), result);
+                    int[] events = monitor.getEventsBuffer();
+                    assertEquals(overlap, events != null && events[GuidanceEvent.OVERLAP] == 1);
+                    assertEquals(fastSpeech, events != null && events[GuidanceEvent.FAST_SPEECH] == 1);
+                    overlaps += overlap ? 1 : 0;
+                    fastSpeeches += fastSpeech ? 1 : 0;
+                }
+            }
+        }
+        assertTrue(overlaps > 0 && overlaps < checks);
+        assertTrue(fastSpeeches > 0 && fastSpeeches < checks);
+    }
+
+    @Test
+    public void keepsOnlyTheLatestTurnsInMemory() throws Exception {
+        File turnsFile = tempFile(), eventsFile = tempFile();
+        GuidanceEventMonitor all = new GuidanceEventMonitor();
+        GuidanceEventMonitor latest = new GuidanceEventMonitor(turnsFile.getPath(), eventsFile.getPath());
+
+        Random random = new Random(7);
+        int frame = 0, maxTurnsInMemory = 0;
+        for (int run = 0; run < 2000; run++) {
+            User user = User.values()[random.nextInt(3)];
+            int length = 1 + random.nextInt(user == User.NONE ? 200 : 150);
+            for (int i = 0; i < length; i++, frame++) {
+                List<AudioProcessingResult> results = new ArrayList<>();
+                for (int copy = 0; copy < 2; copy++) {
+                    AudioProcessingResult result = new AudioProcessingResult();
+                    result.setStartTime(frame * HOP);
+                    result.setUser(user);
+                    if (user != User.NONE && frame % 8 == 0) {
+                        result.addOnset(new Onset(frame * HOP, 1));
+                    }
+                    results.add(result);
+                }
+                assertEquals(all.checkResult(results.get(0)), latest.checkResult(results.get(1)));
+                assertArrayEquals(all.getEventsBuffer(), latest.getEventsBuffer());
+                maxTurnsInMemory = Math.max(maxTurnsInMemory, latest.getTurns().size());
+            }
+        }
+        assertEquals(all.getTurns().size(), latest.getTurns().getNumTurns());
+        assertTrue(maxTurnsInMemory < 128 && all.getTurns().size() > 500);
+
+        File allTurns = tempFile(), latestTurns = tempFile();
+        all.writeTurnsToFile(allTurns.getPath());
+        latest.writeTurnsToFile(latestTurns.getPath());
+        assertEquals(Files.readAllLines(allTurns.toPath()), Files.readAllLines(latestTurns.toPath()));
+
+        File allEvents = tempFile(), latestEvents = tempFile();
+        all.writeGuidanceEventsToFile(allEvents.getPath());
+        latest.close();
+        latest.writeGuidanceEventsToFile(latestEvents.getPath());
+        assertFalse(Files.readAllLines(allEvents.toPath()).isEmpty());
+        assertEquals(Files.readAllLines(allEvents.toPath()), Files.readAllLines(latestEvents.toPath()));
+        assertEquals(Files.readAllLines(allTurns.toPath()), Files.readAllLines(turnsFile.toPath()));
+    }
+
+    private static File tempFile() throws Exception {
+        File file = File.createTempFile("monitor", ".txt");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * The overlap check as a scan of all the turns.
+     */
+    private static boolean scanOverlap(Turns turns, AudioProcessingResult result) {
+        float startOfCheckFrame = result.getStartTime() - Turns.timeToleranceSilenceAfterFrames - 5;
+        int turnsInFrame = 0;
+        for (Turn turn : turns) {
+            if (turn.getEndTime() >= startOfCheckFrame || turn.getStartTime() >= startOfCheckFrame) {
+                turnsInFrame++;
+            }
+        }
+        for (int i = 1; i < turnsInFrame; i++) {
+            if (turns.get(i).getStartTime() - turns.get(i - 1).getEndTime() < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The fast speech check as a scan of all the adult onsets.
+     */
+    private static boolean scanFastSpeech(Turns turns, AudioProcessingResult result) {
+        float startOfCheckFrame = result.getStartTime() - Turns.timeToleranceSilenceAfterFrames - 5;
+        int onsetsInFrame = 0;
+        for (Turn turn : turns.getTurnsFor(User.ADULT)) {
+            for (int i = 0; i < turn.getOnsets().size(); i++) {
+                if (turn.getOnsets().getTime(i) >= startOfCheckFrame) {
+                    onsetsInFrame++;
+                }
+            }
+        }
+        return onsetsInFrame / 5f >= 1.6f;
+    }
+}
@@ -0,0 +1,41 @@
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    @Test
+    public void bucketsHoldTheirValues() {
+        for (int index = 0; index < LatencyHistogram.indexOf(Long.MAX_VALUE); index++) {
+            long lowest = LatencyHistogram.lowestValueAt(index), highest = LatencyHistogram.highestValueAt(index);
+            assertEquals(index, LatencyHistogram.indexOf(lowest));
+            assertEquals(index, LatencyHistogram.indexOf(highest));
+            assertEquals(highest + 1, LatencyHistogram.lowestValueAt(index + 1));
+            assertTrue(highest - lowest <= lowest / 64);
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueAt(LatencyHistogram.indexOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void percentilesAreWithinTheirBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(1);
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(5 + 10 * random.nextDouble());    // ~150 ns to ~500 ms
+            histogram.record(values[i]);
+        }
+        java.util.Arrays.sort(values);
+
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.getMax());
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long value = histogram.getValueAtPercentile(percentile);
+            assertTrue(value >= exact && value <= exact + exact / 64);
+        }
+        assertEquals(histogram.getMax(), histogram.getValueAtPercentile(100));
+        assertEquals(0, new LatencyHistogram().getValueAtPercentile(99));
+    }
+}
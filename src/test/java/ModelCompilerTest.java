@@ -0,0 +1,56 @@
+import org.junit.Test;
+import weka.classifiers.Classifier;
+import weka.classifiers.functions.Logistic;
+import weka.classifiers.functions.SMO;
+import weka.classifiers.trees.J48;
+import weka.classifiers.trees.REPTree;
+import weka.classifiers.trees.RandomForest;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ModelCompilerTest {
+    @Test
+    public void compiledModelsAgreeWithWeka() throws Exception {
+        Instances train = frames(300, 1), heldOut = frames(200, 2);
+        for (Classifier classifier : new Classifier[]{new J48(), new REPTree(), new RandomForest(), new Logistic(),
+                new SMO()}) {
+            String name = classifier.getClass().getSimpleName();
+            classifier.buildClassifier(train);
+            CompiledClassifier compiled = ModelCompiler.compile(classifier, heldOut);
+            assertNotNull(name, compiled);
+            assertEquals(name, 0, ModelCompiler.countDisagreements(classifier, compiled, heldOut));
+            assertEquals(name, 0, ModelCompiler.countDisagreements(classifier, compiled, train));
+        }
+    }
+
+    /**
+     * @return frames of silence, a loud low adult and a quieter high child, overlapping, with the class between the
+     * features so that the compiled models have to skip it
+     */
+    private static Instances frames(int count, long seed) {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        attributes.add(new Attribute("dbspl"));
+        attributes.add(new Attribute("pitch"));
+        attributes.add(new Attribute("user", Arrays.asList("NONE", "ADULT", "CHILD")));
+        attributes.add(new Attribute("mfcc01"));
+        Instances instances = new Instances("frames", attributes, count);
+        instances.setClassIndex(2);
+
+        Random random = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            int user = random.nextInt(3);
+            double dbspl = new double[]{30, 75, 60}[user] + 8 * random.nextGaussian();
+            double pitch = new double[]{0, 140, 280}[user] + 60 * random.nextGaussian();
+            double mfcc01 = dbspl / 10 + random.nextGaussian();
+            instances.add(new DenseInstance(1, new double[]{dbspl, pitch, user, mfcc01}));
+        }
+        return instances;
+    }
+}
@@ -0,0 +1,60 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OnsetsTest {
+    @Test
+    public void readsLikeAListOfOnsets() {
+        Onsets onsets = new Onsets();
+        List<Onset> list = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            onsets.add(i * 0.13, i + 0.5);
+            list.add(new Onset(i * 0.13, i + 0.5));
+        }
+        Onsets copy = new Onsets(2);
+        copy.addAll(onsets);
+        copy.add(list.get(3));
+        list.add(list.get(3));
+
+        assertEquals(list.size(), copy.size());
+        for (int i = 0; i < list.size(); i++) {
+            assertEquals(list.get(i).time, copy.getTime(i), 0);
+            assertEquals(list.get(i).salience, copy.get(i).salience, 0);
+        }
+        assertEquals(list.toString(), copy.toString());
+        assertEquals(new ArrayList<Onset>().toString(), Onsets.EMPTY.toString());
+    }
+
+    @Test
+    public void dropsOnsetsBeforeTheWindow() {
+        Onsets window = new Onsets(8);
+        int added = 0;
+        for (int second = 1; second <= 100; second++) {
+            for (; added < 3 * second; added++) {
+                window.add(added / 3.0, 1);
+            }
+            window.removeBefore(second - 2);
+            assertEquals(Math.min(added, 6), window.size());
+            assertEquals(added - window.size(), 3 * window.getTime(0), 1e-9);
+        }
+        window.removeBefore(1000);
+        assertTrue(window.isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void emptyCannotBeAddedTo() {
+        Onsets.EMPTY.add(1, 1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void readsOnlyItsOnsets() {
+        Onsets onsets = new Onsets(4);
+        onsets.add(1, 1);
+        onsets.add(2, 1);
+        onsets.removeBefore(1.5);
+        onsets.getTime(1);
+    }
+}
@@ -0,0 +1,88 @@
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class PipelineMetricsTest {
+    /**
+     * Takes its time, and drops every n-th frame.
+     */
+    private static AudioProcessor stage(final long sleepMillis, final int dropEvery) {
+        return new AudioProcessor() {
+            private int frames = 0;
+
+            @Override
+            public boolean process(AudioEvent audioEvent) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                return ++frames % dropEvery != 0;
+            }
+
+            @Override
+            public void processingFinished() {
+            }
+        };
+    }
+
+    @Test
+    public void timesStagesAndFrames() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics("test", 0.01);
+        AudioProcessor[] pipeline = {
+                metrics.wrap("fast", stage(0, Integer.MAX_VALUE)),
+                metrics.wrap("dropping", stage(2, 5)),
+                metrics.wrap("slow", stage(12, Integer.MAX_VALUE))
+        };
+
+        AudioEvent event = new AudioEvent(new TarsosDSPAudioFormat(8000, 16, 1, true, false));
+        for (int frame = 0; frame < 20; frame++) {
+            for (AudioProcessor processor : pipeline) {     // as the dispatcher does
+                if (!processor.process(event)) {
+                    break;
+                }
+            }
+        }
+
+        assertEquals(20, metrics.getStages().get(0).getFrames());
+        assertEquals(20, metrics.getStages().get(1).getFrames());
+        assertEquals(4, metrics.getStages().get(1).getDroppedFrames());
+        assertEquals(16, metrics.getStages().get(2).getFrames());
+        assertTrue(metrics.getStages().get(2).getP50Micros() >= 12000);
+
+        PipelineMetrics.PipelineMXBean total = metrics.getPipeline();
+        assertEquals(20, total.getFrames());
+        assertEquals(4, total.getDroppedFrames());
+        assertEquals(16, total.getLateFrames());    // 14 ms or more, of 10 ms
+        assertTrue(total.getRealTimeFactor() > 1);     // 232 ms or more, for 200 ms of audio
+        assertTrue(total.getFramesPerSecond() > 0 && total.getFramesPerSecond() < 100);
+        assertTrue(metrics.report().contains("dropping"));
+    }
+
+    @Test
+    public void registersWithJMX() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics("jmx test", 0.01);
+        AudioProcessor stage = metrics.wrap("MFCC", stage(0, 2));
+        metrics.registerMBeans();
+        stage.process(new AudioEvent(new TarsosDSPAudioFormat(8000, 16, 1, true, false)));
+        stage.process(new AudioEvent(new TarsosDSPAudioFormat(8000, 16, 1, true, false)));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pipeline = new ObjectName("CommBetter:type=Pipeline,name=" + ObjectName.quote("jmx test"));
+        ObjectName mfcc = new ObjectName("CommBetter:type=Stage,pipeline=" + ObjectName.quote("jmx test")
+                + ",name=" + ObjectName.quote("MFCC"));
+        assertEquals(2L, server.getAttribute(pipeline, "Frames"));
+        assertEquals(1L, server.getAttribute(mfcc, "DroppedFrames"));
+        assertEquals("MFCC", server.getAttribute(mfcc, "Name"));
+
+        metrics.unregisterMBeans();
+        assertFalse(server.isRegistered(pipeline));
+    }
+}
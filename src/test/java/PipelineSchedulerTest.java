@@ -0,0 +1,177 @@
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PipelineSchedulerTest {
+    private static final int SAMPLE_RATE = 8000, BUFFER_SIZE = 160, BUFFER_OVERLAP = 80;
+
+    @Test
+    public void writesTheSameFilesAsThreads() throws Exception {
+        List<String> filenames = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            filenames.add(TestAudio.writeWAV(3 + i, i));
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        for (String filename : filenames) {
+            threads.add(WAVProcessor.processWAVFileForFeatures(filename, " thread", SAMPLE_RATE, BUFFER_SIZE,
+                    BUFFER_OVERLAP, 13, 40, 64, 4000, User.ADULT));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (String filename : filenames) {
+            AudioUtils.processRAWFileForLog(filename, new TestAudio.LoudnessClassifier(), SAMPLE_RATE, BUFFER_SIZE,
+                    BUFFER_OVERLAP).run();
+            Files.move(new File(filename + " log.csv").toPath(), new File(filename + " thread log.csv").toPath());
+        }
+
+        PipelineScheduler scheduler = new PipelineScheduler(2, 8, PipelineScheduler.DEFAULT_MAX_FRAMES_IN_FLIGHT);
+        List<PipelineScheduler.Pipeline> pipelines = new ArrayList<>();
+        for (String filename : filenames) {
+            pipelines.add(WAVProcessor.processWAVFileForFeatures(scheduler, filename, " scheduled", SAMPLE_RATE,
+                    BUFFER_SIZE, BUFFER_OVERLAP, 13, 40, 64, 4000, User.ADULT));
+            pipelines.add(AudioUtils.processRAWFileForLog(scheduler, filename, new TestAudio.LoudnessClassifier(), null,
+                    SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP));
+        }
+        for (PipelineScheduler.Pipeline pipeline : pipelines) {
+            pipeline.await();
+            assertTrue(pipeline.isDone());
+        }
+        assertEquals(0, scheduler.getNumPipelines());
+        scheduler.close();
+
+        for (String filename : filenames) {
+            assertEquals(read(filename + " thread.arff"), read(filename + " scheduled.arff"));
+            assertEquals(read(filename + " thread log.csv"), read(filename + " log.csv"));
+        }
+    }
+
+    @Test
+    public void takesTurnsBetweenPipelines() throws Exception {
+        final int framesPerTurn = 4;
+        PipelineScheduler scheduler = new PipelineScheduler(1, framesPerTurn,
+                PipelineScheduler.DEFAULT_MAX_FRAMES_IN_FLIGHT);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch submitted = new CountDownLatch(1);
+        List<PipelineScheduler.Pipeline> pipelines = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String filename = TestAudio.writeWAV(1, i);
+            StreamDispatcher dispatcher = new StreamDispatcher(StreamingSession.FORMAT, BUFFER_SIZE, BUFFER_OVERLAP);
+            final int id = i;
+            dispatcher.addAudioProcessor(new AudioProcessor() {
+                @Override
+                public boolean process(AudioEvent audioEvent) {
+                    try {
+                        submitted.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    order.add(id);
+                    return true;
+                }
+
+                @Override
+                public void processingFinished() {
+                }
+            });
+            pipelines.add(scheduler.submit(dispatcher,
+                    AudioUtils.audioStreamFromFile(new File(filename + ".wav"), SAMPLE_RATE)));
+        }
+        submitted.countDown();
+        for (PipelineScheduler.Pipeline pipeline : pipelines) {
+            pipeline.await();
+        }
+        scheduler.close();
+
+        // a frame, then a step per frame, the last one zero padded; the first turn is a frame short, as the first
+        // frame takes two steps
+        int[] frames = new int[3];
+        int run = 0;
+        for (int i = 0; i < order.size(); i++) {
+            frames[order.get(i)]++;
+            run = i > 0 && order.get(i).equals(order.get(i - 1)) ? run + 1 : 1;
+            assertTrue("frame " + i, run <= framesPerTurn);
+        }
+        assertArrayEquals(new int[]{100, 100, 100}, frames);
+    }
+
+    @Test
+    public void capsTheFramesInFlight() throws Exception {
+        final int maxFramesInFlight = 10;
+        PipelineScheduler scheduler = new PipelineScheduler(1, 4, maxFramesInFlight);
+        final CountDownLatch processing = new CountDownLatch(1);
+        StreamDispatcher dispatcher = new StreamDispatcher(StreamingSession.FORMAT, BUFFER_SIZE, BUFFER_OVERLAP);
+        dispatcher.addAudioProcessor(new AudioProcessor() {
+            @Override
+            public boolean process(AudioEvent audioEvent) {
+                try {
+                    processing.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return true;
+            }
+
+            @Override
+            public void processingFinished() {
+            }
+        });
+        final CountDownLatch writable = new CountDownLatch(1);
+        PipelineScheduler.Pipeline pipeline = scheduler.open(dispatcher, writable::countDown);
+
+        byte[] frame = new byte[dispatcher.getStepBytes()];
+        int written = 0;
+        while (pipeline.write(frame, 0, frame.length)) {
+            written++;
+            assertTrue(written < 2 * maxFramesInFlight);
+        }
+        assertTrue(scheduler.getFramesInFlight() >= maxFramesInFlight - 4);
+        assertEquals(1, writable.getCount());
+
+        processing.countDown();
+        assertTrue(writable.await(10, TimeUnit.SECONDS));
+        pipeline.finish();
+        pipeline.await();
+        assertEquals(0, scheduler.getFramesInFlight());
+        scheduler.close();
+    }
+
+    @Test
+    public void failsThePipelinesLeftWhenClosed() throws Exception {
+        PipelineScheduler scheduler = new PipelineScheduler(1);
+        StreamDispatcher dispatcher = new StreamDispatcher(StreamingSession.FORMAT, BUFFER_SIZE, BUFFER_OVERLAP);
+        PipelineScheduler.Pipeline pipeline = scheduler.open(dispatcher, () -> {
+        });
+        byte[] frame = new byte[dispatcher.getStepBytes()];
+        pipeline.write(frame, 0, frame.length);
+        assertEquals(1, scheduler.getNumPipelines());
+
+        scheduler.close();
+        assertTrue(pipeline.isDone());
+        assertTrue(pipeline.completion().isCompletedExceptionally());
+        assertEquals(0, scheduler.getNumPipelines());
+        pipeline.await();   // returns, rather than waiting for a carrier
+    }
+
+    /**
+     * @return the lines of the file, but for the time it was created
+     */
+    private static List<String> read(String filename) throws Exception {
+        File file = new File(filename);
+        file.deleteOnExit();
+        List<String> lines = new ArrayList<>(Files.readAllLines(file.toPath()));
+        lines.removeIf(line -> line.startsWith("% (a) Created"));
+        return lines;
+    }
+}
@@ -0,0 +1,61 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SegmentedFeatureExtractorTest {
+    private static final int SAMPLE_RATE = 8000, BUFFER_SIZE = 160, BUFFER_OVERLAP = 80;
+
+    @Test
+    public void writesTheSameFileAsTheSequentialExtraction() throws Exception {
+        // 2000 frames, the last one zero padded: 3 segments are of 666 and 667 frames, 7 are cut to 4 of 500
+        String filename = TestAudio.writeWAV(20, 1);
+        WAVProcessor.featureDispatcher(filename, " sequential", SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP, 13, 40, 64,
+                4000, User.CHILD).run();
+        List<String> expected = read(filename + " sequential.arff");
+        assertEquals(2000, SegmentedFeatureExtractor.getNumFrames(20 * SAMPLE_RATE + 37, BUFFER_SIZE,
+                BUFFER_OVERLAP));
+
+        SegmentedFeatureExtractor extractor = new SegmentedFeatureExtractor(3);
+        for (int numSegments : new int[]{1, 2, 3, 4, 7}) {
+            extractor.processWAVFileForFeatures(filename, " segmented", numSegments, SAMPLE_RATE, BUFFER_SIZE,
+                    BUFFER_OVERLAP, 13, 40, 64, 4000, User.CHILD);
+            assertEquals(numSegments + " segments", expected, read(filename + " segmented.arff"));
+            assertFalse(new File(filename + " segmented.arff.part0").exists());
+        }
+        extractor.shutdown();
+    }
+
+    @Test
+    public void leavesNoPartsBehindOnFailure() throws Exception {
+        String filename = TestAudio.writeWAV(12, 2);
+        // the parts are written, then the ARFF file cannot be
+        File arffFile = new File(filename + ".arff");
+        assertTrue(arffFile.mkdir());
+        arffFile.deleteOnExit();
+
+        SegmentedFeatureExtractor extractor = new SegmentedFeatureExtractor(2);
+        extractor.processWAVFileForFeatures(filename, "", 2, SAMPLE_RATE, BUFFER_SIZE, BUFFER_OVERLAP, 13, 40, 64,
+                4000, User.CHILD);
+        extractor.shutdown();
+
+        assertTrue(arffFile.isDirectory());
+        assertFalse(new File(filename + ".arff.part0").exists());
+        assertFalse(new File(filename + ".arff.part1").exists());
+    }
+
+    /**
+     * @return the lines of the file, but for the time it was created
+     */
+    private static List<String> read(String filename) throws Exception {
+        File file = new File(filename);
+        file.deleteOnExit();
+        List<String> lines = new ArrayList<>(Files.readAllLines(file.toPath()));
+        lines.removeIf(line -> line.startsWith("% (a) Created"));
+        return lines;
+    }
+}
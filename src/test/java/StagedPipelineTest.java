@@ -0,0 +1,97 @@
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StagedPipelineTest {
+    private static final int SAMPLE_RATE = 8000, BUFFER_SIZE = 160, BUFFER_OVERLAP = 80;
+
+    @Test
+    public void logsLikeTheSequentialPipeline() throws Exception {
+        String filename = TestAudio.writeWAV(20, 1);
+        File log = new File(filename + " log.csv");
+        log.deleteOnExit();
+        AudioUtils.processRAWFileForLog(filename, new TestAudio.LoudnessClassifier(), SAMPLE_RATE, BUFFER_SIZE,
+                BUFFER_OVERLAP).run();
+        List<String> expected = Files.readAllLines(log.toPath());
+
+        AudioUtils.processRAWFileForLogInStages(filename, new TestAudio.LoudnessClassifier(), null, SAMPLE_RATE,
+                BUFFER_SIZE, BUFFER_OVERLAP).run();
+        assertEquals(expected, Files.readAllLines(log.toPath()));
+        assertTrue(expected.size() > 1000);
+    }
+
+    @Test
+    public void sessionInStagesHandsOnTheSameEvents() throws Exception {
+        byte[] pcm = AudioUtils.shorts2Bytes(TestAudio.conversation(15, 2));
+        final List<String> expected = new ArrayList<>();
+        StreamingSession session = new StreamingSession(new TestAudio.LoudnessClassifier(), null, false, null,
+                event -> expected.add(event.toString()));
+        session.write(pcm, 0, pcm.length);
+        session.finish();
+
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        StreamingSession staged = new StreamingSession(new TestAudio.LoudnessClassifier(), null, true, null,
+                event -> events.add(event.toString()));
+        Random random = new Random(3);
+        for (int offset = 0; offset < pcm.length; ) {
+            int length = Math.min(pcm.length - offset, random.nextInt(700));
+            staged.write(pcm, offset, length);
+            offset += length;
+        }
+        staged.finish();
+
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, events);
+        assertEquals(session.getFrames(), staged.getFrames());
+    }
+
+    @Test
+    public void dropsTheFrameAStageFailsOn() {
+        final AudioProcessingResult[] frame = new AudioProcessingResult[1];
+        StagedPipeline stages = new StagedPipeline("Test", SAMPLE_RATE, BUFFER_SIZE, 4, () -> frame[0]);
+        stages.addAudioProcessor(new AudioProcessor() {
+            @Override
+            public boolean process(AudioEvent audioEvent) {
+                frame[0] = new AudioProcessingResult();
+                frame[0].setStartTime((float) audioEvent.getTimeStamp());
+                return true;
+            }
+
+            @Override
+            public void processingFinished() {
+            }
+        });
+        final List<Float> handedOn = new ArrayList<>();
+        final boolean[] finished = new boolean[1];
+        stages.addStage("Failing", result -> {
+            if (Math.abs(result.getStartTime() - 0.5) < 1e-4) {
+                throw new IllegalStateException("Cannot process the frame at 0.5 s");
+            }
+        }, null);
+        stages.addStage("Output", result -> handedOn.add(result.getStartTime()), () -> finished[0] = true);
+
+        StreamDispatcher dispatcher = new StreamDispatcher(StreamingSession.FORMAT, BUFFER_SIZE, BUFFER_OVERLAP);
+        dispatcher.addAudioProcessor(stages);
+        byte[] pcm = AudioUtils.shorts2Bytes(TestAudio.conversation(1, 4));
+        dispatcher.write(pcm, 0, pcm.length);
+        dispatcher.finish();
+
+        assertTrue(finished[0]);
+        assertEquals(99, handedOn.size());
+        float previous = -1;
+        for (float startTime : handedOn) {
+            assertTrue(startTime > previous);
+            assertNotEquals(0.5, startTime, 1e-4);
+            previous = startTime;
+        }
+    }
+}
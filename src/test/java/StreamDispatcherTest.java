@@ -0,0 +1,113 @@
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StreamDispatcherTest {
+    private static final int BUFFER_SIZE = 160, BUFFER_OVERLAP = 80;
+
+    @Test
+    public void dispatchesFramesLikeAudioDispatcher() throws Exception {
+        for (int numSamples : new int[]{50, 160, 200, 1000, 8037}) {
+            byte[] pcm = AudioUtils.shorts2Bytes(noise(numSamples));
+            List<String> expected = dispatchFile(pcm);
+
+            StreamDispatcher dispatcher = new StreamDispatcher(StreamingSession.FORMAT, BUFFER_SIZE, BUFFER_OVERLAP);
+            FrameRecorder recorder = new FrameRecorder();
+            dispatcher.addAudioProcessor(recorder);
+            Random random = new Random(numSamples);
+            for (int offset = 0; offset < pcm.length; ) {
+                int length = Math.min(pcm.length - offset, random.nextInt(3) == 0 ? 1 : random.nextInt(500));
+                dispatcher.write(pcm, offset, length);
+                offset += length;
+            }
+            dispatcher.finish();
+
+            assertEquals(numSamples + " samples", expected, recorder.frames);
+            assertEquals(1, recorder.finished);
+        }
+    }
+
+    @Test
+    public void stopsPassingOnAFrameThatIsDropped() {
+        StreamDispatcher dispatcher = new StreamDispatcher(StreamingSession.FORMAT, BUFFER_SIZE, BUFFER_OVERLAP);
+        final int[] seen = new int[2];
+        dispatcher.addAudioProcessor(new AudioProcessor() {
+            @Override
+            public boolean process(AudioEvent audioEvent) {
+                return seen[0]++ % 2 == 0;
+            }
+
+            @Override
+            public void processingFinished() {
+            }
+        });
+        dispatcher.addAudioProcessor(new AudioProcessor() {
+            @Override
+            public boolean process(AudioEvent audioEvent) {
+                seen[1]++;
+                return true;
+            }
+
+            @Override
+            public void processingFinished() {
+            }
+        });
+        byte[] pcm = AudioUtils.shorts2Bytes(noise(BUFFER_SIZE + 3 * (BUFFER_SIZE - BUFFER_OVERLAP)));
+        dispatcher.write(pcm, 0, pcm.length);
+        assertEquals(4, seen[0]);
+        assertEquals(2, seen[1]);
+        assertEquals(0.05, dispatcher.getSecondsProcessed(), 1e-9);   // the first frame counts whole
+    }
+
+    /**
+     * Records the time stamp, overlap and samples of each frame.
+     */
+    private static class FrameRecorder implements AudioProcessor {
+        final List<String> frames = new ArrayList<>();
+        int finished = 0;
+
+        @Override
+        public boolean process(AudioEvent audioEvent) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(audioEvent.getTimeStamp()).append(' ').append(audioEvent.getOverlap());
+            for (float sample : audioEvent.getFloatBuffer()) {
+                sb.append(' ').append(sample);
+            }
+            frames.add(sb.toString());
+            return true;
+        }
+
+        @Override
+        public void processingFinished() {
+            finished++;
+        }
+    }
+
+    private static List<String> dispatchFile(byte[] pcm) throws Exception {
+        File file = File.createTempFile("stream", ".wav");
+        file.deleteOnExit();
+        AudioUtils.writeWAVFile(file.getPath(), pcm, (short) 1, (short) 1, 8000, (short) 16);
+        AudioDispatcher dispatcher = AudioUtils.audioDispatcherFromFile(file, 8000, BUFFER_SIZE, BUFFER_OVERLAP);
+        FrameRecorder recorder = new FrameRecorder();
+        dispatcher.addAudioProcessor(recorder);
+        dispatcher.run();
+        return recorder.frames;
+    }
+
+    private static short[] noise(int numSamples) {
+        Random random = new Random(numSamples);
+        short[] samples = new short[numSamples];
+        for (int i = 0; i < numSamples; i++) {
+            samples[i] = (short) random.nextInt();
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,134 @@
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class StreamingServerTest {
+    @Test
+    public void sessionLogsLikeTheFile() throws Exception {
+        byte[] pcm = AudioUtils.shorts2Bytes(TestAudio.conversation(30, 30));
+        String filename = TestAudio.writeWAV(30, 30);
+        File log = new File(filename + " log.csv");
+        log.deleteOnExit();
+        AudioUtils.processRAWFileForLog(filename, new TestAudio.LoudnessClassifier(), WAVProcessor.SAMPLE_RATE,
+                WAVProcessor.BUFFER_SIZE, WAVProcessor.BUFFER_OVERLAP).run();
+        List<String> expected = Files.readAllLines(log.toPath());
+
+        final List<String> logged = new ArrayList<>();
+        logged.add(AudioProcessingResult.getLogHeaderString());
+        final List<AudioProcessingResult> frames = new ArrayList<>();
+        final List<GuidanceEvent> events = new ArrayList<>();
+        StreamingSession session = new StreamingSession(new TestAudio.LoudnessClassifier(), null, null,
+                frame -> {
+                    logged.add(frame.getLogString());
+                    frames.add(frame);
+                }, events::add);
+        write(session, pcm, new Random(1));
+        session.finish();
+
+        assertEquals(expected, logged);
+        assertEquals(expected.size() - 1, session.getFrames());
+        assertFalse(events.isEmpty());
+
+        // stamped like the events the monitor keeps, with the end time of the frame they fire on
+        List<String> stamped = new ArrayList<>();
+        for (AudioProcessingResult frame : frames) {
+            int[] eventBuffer = frame.getEventBuffer();
+            for (int type = 0; type < eventBuffer.length; type++) {
+                if (eventBuffer[type] != 0) {
+                    stamped.add(frame.getEndTime() + "\t" + (frame.getEndTime() + AudioProcessingResult.frameLength)
+                            + "\t" + type);
+                }
+            }
+        }
+        List<String> streamed = new ArrayList<>();
+        for (GuidanceEvent event : events) {
+            streamed.add(event.toString());
+        }
+        assertEquals(stamped, streamed);
+    }
+
+    @Test
+    public void pushesEventsBackToEachConnection() throws Exception {
+        final int numClients = 24;
+        final List<byte[]> audio = new ArrayList<>();
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < numClients; i++) {
+            byte[] pcm = AudioUtils.shorts2Bytes(TestAudio.conversation(10 + i % 5, 10 + i % 5));
+            audio.add(pcm);
+            final StringBuilder events = new StringBuilder();
+            StreamingSession session = new StreamingSession(new TestAudio.LoudnessClassifier(), null,
+                    event -> events.append(event).append('\n'));
+            session.write(pcm, 0, pcm.length);
+            session.finish();
+            expected.add(events.toString());
+        }
+
+        StreamingServer server = new StreamingServer(new TestAudio.LoudnessClassifier(), null, 3);
+        final SocketAddress address = server.listenTCP(0);
+        server.start();
+        ExecutorService clients = Executors.newFixedThreadPool(numClients);
+        try {
+            List<Future<String>> received = new ArrayList<>();
+            for (int i = 0; i < numClients; i++) {
+                final byte[] pcm = audio.get(i);
+                final Random random = new Random(i);
+                received.add(clients.submit(() -> stream(address, pcm, random)));
+            }
+            for (int i = 0; i < numClients; i++) {
+                assertFalse(expected.get(i).isEmpty());
+                assertEquals("client " + i, expected.get(i), received.get(i).get());
+            }
+        } finally {
+            clients.shutdownNow();
+            server.close();
+        }
+        assertEquals(0, server.getNumSessions());
+    }
+
+    /**
+     * Sends the audio in pieces, then reads the events until the server closes the connection.
+     */
+    private static String stream(SocketAddress address, byte[] pcm, Random random) throws Exception {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            for (int offset = 0; offset < pcm.length; ) {
+                int length = Math.min(pcm.length - offset, 1 + random.nextInt(2000));
+                ByteBuffer buffer = ByteBuffer.wrap(pcm, offset, length);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                offset += length;
+            }
+            channel.shutdownOutput();
+
+            ByteArrayOutputStream events = new ByteArrayOutputStream();
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            while (channel.read(buffer) >= 0) {
+                events.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+            return new String(events.toByteArray(), StandardCharsets.US_ASCII);
+        }
+    }
+
+    private static void write(StreamingSession session, byte[] pcm, Random random) {
+        for (int offset = 0; offset < pcm.length; ) {
+            int length = Math.min(pcm.length - offset, random.nextInt(700));
+            session.write(pcm, offset, length);
+            offset += length;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import weka.classifiers.AbstractClassifier;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Generated audio for the tests, so that they need no recordings, and a classifier of it, so that they need no
+ * trained model.
+ */
+public class TestAudio {
+    public static final int SAMPLE_RATE = 8000;
+
+    /**
+     * @return short turns of a loud adult and a quieter child, with pauses, in an odd number of samples, so that the
+     * last frame is zero padded
+     */
+    public static short[] conversation(int seconds, long seed) {
+        Random random = new Random(seed);
+        short[] samples = new short[seconds * SAMPLE_RATE + 37];
+        for (int i = 0; i < samples.length; ) {
+            boolean adult = random.nextInt(3) != 0;
+            double amplitude = adult ? 12000 : 3000, pitch = adult ? 140 : 280;
+            int end = Math.min(samples.length, i + SAMPLE_RATE * (1 + random.nextInt(6)) / 10);
+            for (; i < end; i++) {
+                double t = (double) i / SAMPLE_RATE;
+                samples[i] = (short) (amplitude * (Math.sin(2 * Math.PI * pitch * t)
+                        + 0.5 * Math.sin(4 * Math.PI * pitch * t)) * (0.6 + 0.4 * Math.sin(2 * Math.PI * 4 * t))
+                        + random.nextGaussian() * 20);
+            }
+            end = Math.min(samples.length, i + SAMPLE_RATE * (2 + random.nextInt(10)) / 10);
+            for (; i < end; i++) {
+                samples[i] = (short) (random.nextGaussian() * 20);
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Writes a temporary WAV file of a {@link #conversation(int, long)}, deleted on exit.
+     *
+     * @return the file name, without extension
+     */
+    public static String writeWAV(int seconds, long seed) throws Exception {
+        File file = File.createTempFile("test", ".wav");
+        return writeWAV(file, conversation(seconds, seed));
+    }
+
+    /**
+     * Writes a WAV file of a {@link #conversation(int, long)} in a directory, deleted on exit.
+     *
+     * @param name file name, without extension
+     * @return the full path file name, without extension
+     */
+    public static String writeWAV(File directory, String name, int seconds, long seed) throws Exception {
+        return writeWAV(new File(directory, name + ".wav"), conversation(seconds, seed));
+    }
+
+    private static String writeWAV(File file, short[] samples) throws Exception {
+        file.deleteOnExit();
+        AudioUtils.writeWAVFile(file.getPath(), AudioUtils.shorts2Bytes(samples), (short) 1, (short) 1, SAMPLE_RATE,
+                (short) 16);
+        return file.getPath().substring(0, file.getPath().length() - ".wav".length());
+    }
+
+    /**
+     * Tells the loud adult of a {@link #conversation(int, long)} from the quieter child, and silence from both.
+     */
+    public static class LoudnessClassifier extends AbstractClassifier {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean slow;
+
+        public LoudnessClassifier() {
+            this(false);
+        }
+
+        /**
+         * @param slow whether to take a millisecond on every 7th frame by start time, so that batches of frames
+         *             finish out of order
+         */
+        public LoudnessClassifier(boolean slow) {
+            this.slow = slow;
+        }
+
+        @Override
+        public void buildClassifier(Instances data) {
+        }
+
+        @Override
+        public double classifyInstance(Instance instance) throws InterruptedException {
+            if (slow && ((int) instance.value(0)) % 7 == 0) {
+                Thread.sleep(1);
+            }
+            if (instance.value(1) == 0) {
+                return User.NONE.ordinal();
+            }
+            return instance.value(1) > 70 ? User.ADULT.ordinal() : User.CHILD.ordinal();
+        }
+    }
+}
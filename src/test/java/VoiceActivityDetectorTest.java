@@ -0,0 +1,28 @@
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VoiceActivityDetectorTest {
+    @Test
+    public void flatnessOfQuietNoiseDoesNotUnderflow() {
+        VoiceActivityDetector vad = new VoiceActivityDetector(8000, 160);
+        Random random = new Random(0);
+        float[] noise = new float[160], tone = new float[160], features = new float[3];
+        for (int i = 0; i < 160; i++) {
+            noise[i] = (float) (0.0001 * random.nextGaussian());
+            tone[i] = (float) (0.0001 * Math.sin(2 * Math.PI * 1000 * i / 8000));
+        }
+
+        // the product of these powers is far below Double.MIN_VALUE
+        vad.computeFeatures(noise, features);
+        float noiseFlatness = features[2];
+        assertTrue(noiseFlatness < 0);
+        assertTrue(noiseFlatness > -10);
+
+        vad.computeFeatures(tone, features);
+        assertTrue(features[2] < noiseFlatness);
+        assertEquals(1000, features[1] / 2, 50);   // bins are interleaved real and imaginary parts
+    }
+}
@@ -0,0 +1,129 @@
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class WAVFileInputStreamTest {
+    private static final short[] SAMPLES = {0, 1, -1, 1000, -1000, Short.MAX_VALUE, Short.MIN_VALUE};
+
+    @Test
+    public void readsPlainHeader() throws Exception {
+        File file = File.createTempFile("plain", ".wav");
+        file.deleteOnExit();
+        AudioUtils.writeWAVFile(file.getPath(), AudioUtils.shorts2Bytes(SAMPLES), (short) 1, (short) 1, 8000,
+                (short) 16);
+
+        WAVFileInputStream stream = new WAVFileInputStream(file);
+        assertEquals(44, stream.getDataOffset());
+        assertEquals(SAMPLES.length, stream.getFrameLength());
+        assertEquals(8000, stream.getFormat().getSampleRate(), 0);
+        assertEquals(16, stream.getFormat().getSampleSizeInBits());
+        assertArrayEquals(AudioUtils.shorts2Bytes(SAMPLES), readAll(stream));
+        stream.close();
+    }
+
+    @Test
+    public void skipsListAndFactChunks() throws Exception {
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        chunks.write(chunk("fmt ", fmt(WAVFileInputStream.WAVE_FORMAT_PCM, 16)));
+        chunks.write(chunk("LIST", "INFOISFT\u0003\u0000\u0000\u0000ab\u0000".getBytes("US-ASCII"))); // odd size
+        chunks.write(chunk("fact", new byte[]{7, 0, 0, 0}));
+        chunks.write(chunk("data", AudioUtils.shorts2Bytes(SAMPLES)));
+        File file = writeRIFF(chunks.toByteArray());
+
+        WAVFileInputStream stream = new WAVFileInputStream(file);
+        assertEquals(WAVFileInputStream.WAVE_FORMAT_PCM, stream.getFormatTag());
+        assertEquals(SAMPLES.length, stream.getFrameLength());
+        assertArrayEquals(AudioUtils.shorts2Bytes(SAMPLES), readAll(stream));
+        stream.close();
+    }
+
+    @Test
+    public void resolvesWaveFormatExtensible() throws Exception {
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        chunks.write(chunk("fmt ", fmt(WAVFileInputStream.WAVE_FORMAT_EXTENSIBLE, 40)));
+        chunks.write(chunk("data", AudioUtils.shorts2Bytes(SAMPLES)));
+        File file = writeRIFF(chunks.toByteArray());
+
+        WAVFileInputStream stream = new WAVFileInputStream(file);
+        assertEquals(WAVFileInputStream.WAVE_FORMAT_PCM, stream.getFormatTag());
+        assertEquals(SAMPLES.length, stream.getFrameLength());
+        assertEquals(SAMPLES.length / 8000.0, stream.getDurationInSeconds(), 1e-9);
+
+        // skip the first 2 samples, then read in small buffers
+        assertEquals(4, stream.skip(4));
+        byte[] b = new byte[3];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int read;
+        while ((read = stream.read(b, 0, b.length)) > 0) {
+            out.write(b, 0, read);
+        }
+        byte[] expected = AudioUtils.shorts2Bytes(SAMPLES);
+        byte[] actual = out.toByteArray();
+        assertEquals(expected.length - 4, actual.length);
+        for (int i = 0; i < actual.length; i++) {
+            assertEquals(expected[i + 4], actual[i]);
+        }
+        stream.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsNonWAV() throws Exception {
+        File file = File.createTempFile("notwav", ".wav");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("This is not a WAV file".getBytes("US-ASCII"));
+        out.close();
+        new WAVFileInputStream(file);
+    }
+
+    private static byte[] fmt(int tag, int size) {
+        ByteBuffer bb = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        bb.putShort((short) tag).putShort((short) 1).putInt(8000).putInt(16000).putShort((short) 2)
+                .putShort((short) 16);
+        if (tag == WAVFileInputStream.WAVE_FORMAT_EXTENSIBLE) {
+            // cbSize, valid bits, channel mask, then the sub-format GUID
+            bb.putShort((short) 22).putShort((short) 16).putInt(4).putShort((short) WAVFileInputStream.WAVE_FORMAT_PCM);
+        }
+        return bb.array();
+    }
+
+    private static byte[] chunk(String id, byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(id.getBytes("US-ASCII"));
+        out.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(body.length).array());
+        out.write(body);
+        if (body.length % 2 == 1) {
+            out.write(0);
+        }
+        return out.toByteArray();
+    }
+
+    private static File writeRIFF(byte[] chunks) throws IOException {
+        File file = File.createTempFile("chunks", ".wav");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("RIFF".getBytes("US-ASCII"));
+        out.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(chunks.length + 4).array());
+        out.write("WAVE".getBytes("US-ASCII"));
+        out.write(chunks);
+        out.close();
+        return file;
+    }
+
+    private static byte[] readAll(WAVFileInputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] b = new byte[1024];
+        int read;
+        while ((read = stream.read(b, 0, b.length)) > 0) {
+            out.write(b, 0, read);
+        }
+        return out.toByteArray();
+    }
+}